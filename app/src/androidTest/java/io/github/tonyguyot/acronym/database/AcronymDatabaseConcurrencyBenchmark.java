@@ -0,0 +1,143 @@
+/*
+ * Copyright (C) 2016 Tony Guyot
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.tonyguyot.acronym.database;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import java.io.File;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Benchmark of the history listing running concurrently with the service
+ * insertions, with the legacy rollback journal and with write-ahead logging.
+ * Results are reported in the log (tag "AcronymDbBenchmark").
+ */
+public class AcronymDatabaseConcurrencyBenchmark extends AndroidTestCase {
+
+    // tag for logging information
+    private static final String TAG = "AcronymDbBenchmark";
+
+    // how long each scenario runs (in milliseconds)
+    private static final long DURATION = 3000L;
+
+    // number of rows present in the table before the run
+    private static final int INITIAL_ROWS = 2000;
+
+    public void testRollbackJournalVersusWal() throws Exception {
+        Result journal = run("bench_journal.db", false);
+        Result wal = run("bench_wal.db", true);
+        Log.i(TAG, "rollback journal: " + journal);
+        Log.i(TAG, "write-ahead log:  " + wal);
+        assertTrue(wal.listings > 0);
+        assertTrue(wal.inserts > 0);
+    }
+
+    // throughput of one scenario
+    private static class Result {
+        long listings;
+        long inserts;
+
+        @Override
+        public String toString() {
+            return (listings * 1000L / DURATION) + " listings/s, "
+                    + (inserts * 1000L / DURATION) + " inserts/s";
+        }
+    }
+
+    private Result run(String fileName, boolean enableWal) throws InterruptedException {
+        File file = getContext().getDatabasePath(fileName);
+        SQLiteDatabase.deleteDatabase(file);
+        file.getParentFile().mkdirs();
+        int flags = SQLiteDatabase.CREATE_IF_NECESSARY;
+        if (enableWal) {
+            flags |= SQLiteDatabase.ENABLE_WRITE_AHEAD_LOGGING;
+        }
+        final SQLiteDatabase db = SQLiteDatabase.openDatabase(file.getPath(), null, flags);
+        try {
+            if (enableWal) {
+                AcronymDatabaseHelper.applyConnectionSettings(db);
+            }
+            AcronymTable.onCreate(db);
+            db.beginTransaction();
+            try {
+                for (int i = 0; i < INITIAL_ROWS; i++) {
+                    db.insert(AcronymTable.TABLE_ACRONYM, null, makeValues(i));
+                }
+                db.setTransactionSuccessful();
+            } finally {
+                db.endTransaction();
+            }
+
+            final Result result = new Result();
+            final AtomicBoolean running = new AtomicBoolean(true);
+            final CountDownLatch done = new CountDownLatch(2);
+
+            // the history screen: list the whole cache again and again
+            Thread reader = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    while (running.get()) {
+                        Cursor cursor = db.query(AcronymTable.TABLE_ACRONYM,
+                                new String[] { AcronymTable.COLUMN_NAME, AcronymTable.COLUMN_DEFINITION },
+                                null, null, null, null, null);
+                        while (cursor.moveToNext()) {
+                            cursor.getString(0);
+                        }
+                        cursor.close();
+                        result.listings++;
+                    }
+                    done.countDown();
+                }
+            });
+
+            // the service: one insertion per definition received
+            Thread writer = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    int i = INITIAL_ROWS;
+                    while (running.get()) {
+                        db.insert(AcronymTable.TABLE_ACRONYM, null, makeValues(i++));
+                        result.inserts++;
+                    }
+                    done.countDown();
+                }
+            });
+
+            reader.start();
+            writer.start();
+            Thread.sleep(DURATION);
+            running.set(false);
+            done.await();
+            return result;
+        } finally {
+            db.close();
+            SQLiteDatabase.deleteDatabase(file);
+        }
+    }
+
+    private static ContentValues makeValues(int i) {
+        ContentValues values = new ContentValues();
+        values.put(AcronymTable.COLUMN_NAME, "A" + (i % 500));
+        values.put(AcronymTable.COLUMN_DEFINITION, "Definition number " + i);
+        values.put(AcronymTable.COLUMN_INSERTION_DATE, System.currentTimeMillis());
+        return values;
+    }
+}
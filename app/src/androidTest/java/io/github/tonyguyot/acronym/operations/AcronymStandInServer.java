@@ -0,0 +1,248 @@
+/*
+ * Copyright (C) 2016 Tony Guyot
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.tonyguyot.acronym.operations;
+
+import android.util.Log;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-process HTTP server answering like the Silmaril server, for the tests
+ * and benchmarks which must not depend on the network. Each request is
+ * answered after a configurable latency (plus a random jitter), either with
+ * an error (at a configurable rate) or with a list of generated definitions
+ * of a configurable size. The connections are kept alive, like the real
+ * server does.
+ */
+public class AcronymStandInServer {
+
+    // tag for logging information
+    private static final String TAG = "AcronymStandInServer";
+
+    // path of the queries (the name of the acronym follows)
+    private static final String PATH = "/cgi-bin/xaa?";
+
+    // behavior of the server (may be changed while it is running)
+    private volatile long mLatency;          // minimum delay of an answer (ms)
+    private volatile long mJitter;           // maximum random delay added (ms)
+    private volatile double mErrorRate;      // share of requests failing with 503
+    private volatile int mDefinitionCount = 4;
+    private volatile int mCommentLength;     // padding of each definition (chars)
+
+    // number of requests received
+    private final AtomicLong mRequestCount = new AtomicLong();
+
+    // the listening socket, and the connections being served
+    private ServerSocket mServerSocket;
+    private ExecutorService mExecutor;
+    private final Set<Socket> mConnections = Collections.synchronizedSet(new HashSet<Socket>());
+
+    public void setLatency(long latency) {
+        mLatency = latency;
+    }
+
+    public void setJitter(long jitter) {
+        mJitter = jitter;
+    }
+
+    public void setErrorRate(double errorRate) {
+        mErrorRate = errorRate;
+    }
+
+    public void setDefinitionCount(int definitionCount) {
+        mDefinitionCount = definitionCount;
+    }
+
+    public void setCommentLength(int commentLength) {
+        mCommentLength = commentLength;
+    }
+
+    public long getRequestCount() {
+        return mRequestCount.get();
+    }
+
+    // the url to give to AcronymHttpMediator (valid once started)
+    public String getUrl() {
+        return "http://127.0.0.1:" + mServerSocket.getLocalPort() + PATH;
+    }
+
+    // listen on a free local port
+    public void start() throws IOException {
+        mServerSocket = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+        mExecutor = Executors.newCachedThreadPool();
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                accept();
+            }
+        });
+        Log.d(TAG, "listening on " + getUrl());
+    }
+
+    // close the listening socket and all the connections
+    public void stop() {
+        try {
+            mServerSocket.close();
+        } catch (IOException e) {
+            // ignore: closing anyway
+        }
+        synchronized (mConnections) {
+            for (Socket socket : mConnections) {
+                close(socket);
+            }
+        }
+        mExecutor.shutdownNow();
+    }
+
+    private void accept() {
+        while (!mServerSocket.isClosed()) {
+            try {
+                final Socket socket = mServerSocket.accept();
+                mConnections.add(socket);
+                mExecutor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        serve(socket);
+                    }
+                });
+            } catch (IOException e) {
+                // closed by stop()
+            }
+        }
+    }
+
+    // answer the requests of one connection, until it is closed
+    private void serve(Socket socket) {
+        Random random = new Random();
+        try {
+            InputStream in = socket.getInputStream();
+            OutputStream out = socket.getOutputStream();
+            String requestLine;
+            while ((requestLine = readLine(in)) != null) {
+                boolean doClose = false;
+                String header;
+                while ((header = readLine(in)) != null && !header.isEmpty()) {
+                    if (header.toLowerCase(Locale.ROOT).startsWith("connection:")
+                            && header.toLowerCase(Locale.ROOT).contains("close")) {
+                        doClose = true;
+                    }
+                }
+                mRequestCount.incrementAndGet();
+
+                long jitter = mJitter;
+                long delay = mLatency + (jitter > 0 ? (long) (random.nextDouble() * jitter) : 0L);
+                if (delay > 0) {
+                    Thread.sleep(delay);
+                }
+
+                if (random.nextDouble() < mErrorRate) {
+                    write(out, "503 Service Unavailable", "text/plain", "unavailable");
+                } else {
+                    write(out, "200 OK", "text/xml", makeResponse(getName(requestLine)));
+                }
+                if (doClose) {
+                    break;
+                }
+            }
+        } catch (IOException | InterruptedException e) {
+            // connection closed by the client or by stop()
+        } finally {
+            mConnections.remove(socket);
+            close(socket);
+        }
+    }
+
+    // the acronym of a request line ("GET /cgi-bin/xaa?NAME HTTP/1.1")
+    private static String getName(String requestLine) {
+        int start = requestLine.indexOf('?');
+        int end = requestLine.lastIndexOf(' ');
+        return start >= 0 && end > start ? requestLine.substring(start + 1, end) : "";
+    }
+
+    // a response in the format of the Silmaril server
+    private String makeResponse(String name) {
+        int count = mDefinitionCount;
+        StringBuilder comment = new StringBuilder();
+        for (int i = 0; i < mCommentLength; i++) {
+            comment.append((char) ('a' + i % 26));
+        }
+        StringBuilder xml = new StringBuilder();
+        xml.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        xml.append("<acronym>\n");
+        xml.append("<found n=\"").append(count).append("\">\n");
+        for (int i = 0; i < count; i++) {
+            xml.append("<acro nym=\"").append(name)
+                    .append("\" dewey=\"000\" added=\"2016-01-01\">");
+            xml.append("<expan>").append(name).append(" definition ").append(i).append("</expan>");
+            xml.append("<comment>").append(comment).append("</comment>");
+            xml.append("</acro>\n");
+        }
+        xml.append("</found>\n");
+        xml.append("</acronym>\n");
+        return xml.toString();
+    }
+
+    private static void write(OutputStream out, String status, String contentType,
+                              String body) throws IOException {
+        byte[] content = body.getBytes("UTF-8");
+        String head = "HTTP/1.1 " + status + "\r\n"
+                + "Content-Type: " + contentType + "; charset=UTF-8\r\n"
+                + "Content-Length: " + content.length + "\r\n"
+                + "Connection: keep-alive\r\n"
+                + "\r\n";
+        out.write(head.getBytes("US-ASCII"));
+        out.write(content);
+        out.flush();
+    }
+
+    // a line of the request (null at the end of the stream)
+    private static String readLine(InputStream in) throws IOException {
+        StringBuilder line = new StringBuilder();
+        int c;
+        while ((c = in.read()) != -1) {
+            if (c == '\n') {
+                int length = line.length();
+                if (length > 0 && line.charAt(length - 1) == '\r') {
+                    line.setLength(length - 1);
+                }
+                return line.toString();
+            }
+            line.append((char) c);
+        }
+        return line.length() > 0 ? line.toString() : null;
+    }
+
+    private static void close(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // ignore: closing anyway
+        }
+    }
+}
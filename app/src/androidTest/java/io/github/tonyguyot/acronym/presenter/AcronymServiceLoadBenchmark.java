@@ -0,0 +1,200 @@
+/*
+ * Copyright (C) 2016 Tony Guyot
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.tonyguyot.acronym.presenter;
+
+import android.app.Activity;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.test.AndroidTestCase;
+import android.util.Log;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.github.tonyguyot.acronym.operations.AcronymHttpMediator;
+import io.github.tonyguyot.acronym.operations.AcronymSource;
+import io.github.tonyguyot.acronym.operations.AcronymStandInServer;
+import io.github.tonyguyot.acronym.operations.AcronymTokenBucket;
+
+/**
+ * Load generator for the whole lookup pipeline (intent, service, cache,
+ * network, reply broadcast) against the local stand-in server, in several
+ * network conditions. A fixed number of lookups are kept in flight, each
+ * one for a new name (so that each one reaches the server). The cache of
+ * the application is cleared before and after each run. The requests to
+ * the server are not rate limited, except in the rate-limited run. Results
+ * are reported in the log (tag "AcronymLoadBenchmark").
+ */
+public class AcronymServiceLoadBenchmark extends AndroidTestCase {
+
+    // tag for logging information
+    private static final String TAG = "AcronymLoadBenchmark";
+
+    // number of lookups of a run, and number of lookups in flight
+    private static final int LOOKUPS = 300;
+    private static final int CONCURRENCY = 8;
+
+    // maximum duration of a run (in seconds)
+    private static final long TIMEOUT = 120L;
+
+    private AcronymStandInServer mServer;
+    private AcronymSource mPreviousSource;
+    private AcronymTokenBucket mPreviousTokens;
+    private HandlerThread mReceiverThread;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mServer = new AcronymStandInServer();
+        mServer.start();
+        mPreviousSource = AcronymService.setSource(new AcronymHttpMediator(mServer.getUrl()));
+        mPreviousTokens = AcronymService.setServerTokens(null);
+        mReceiverThread = new HandlerThread(TAG);
+        mReceiverThread.start();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        AcronymService.startClearCache(getContext());
+        AcronymService.setSource(mPreviousSource);
+        AcronymService.setServerTokens(mPreviousTokens);
+        mReceiverThread.quit();
+        mServer.stop();
+        super.tearDown();
+    }
+
+    public void testFastServer() throws Exception {
+        run("fast server", 5L, 0L, 0.0, 4, 0);
+    }
+
+    public void testSlowServerWithJitter() throws Exception {
+        run("slow server with jitter", 100L, 200L, 0.0, 4, 0);
+    }
+
+    public void testUnreliableServer() throws Exception {
+        run("unreliable server", 20L, 20L, 0.2, 4, 0);
+    }
+
+    public void testLargeResponses() throws Exception {
+        run("large responses", 20L, 0L, 0.0, 100, 200);
+    }
+
+    public void testRateLimitedServer() throws Exception {
+        // 20 requests per second, in bursts of 8: the lookups wait for
+        // their turn (the rate of the application would make the run last
+        // longer than the timeout)
+        AcronymService.setServerTokens(new AcronymTokenBucket(20.0, 8));
+        run("rate-limited server", 5L, 0L, 0.0, 4, 0);
+    }
+
+    // latencies and outcomes of one run
+    private static class Result {
+        final long[] latencies = new long[LOOKUPS]; // in microseconds
+        final AtomicInteger replies = new AtomicInteger();
+        final AtomicInteger failures = new AtomicInteger();
+        long duration; // in milliseconds
+
+        @Override
+        public String toString() {
+            long[] sorted = Arrays.copyOf(latencies, replies.get());
+            Arrays.sort(sorted);
+            return (sorted.length * 1000L / Math.max(1L, duration)) + " lookups/s, "
+                    + failures.get() + " failures, latency (ms) p50 "
+                    + percentile(sorted, 50) + " p90 " + percentile(sorted, 90)
+                    + " p99 " + percentile(sorted, 99)
+                    + " max " + percentile(sorted, 100);
+        }
+
+        private static String percentile(long[] sorted, int percent) {
+            if (sorted.length == 0) {
+                return "-";
+            }
+            int index = Math.min(sorted.length - 1, (sorted.length * percent + 99) / 100 - 1);
+            return String.format("%.1f", sorted[Math.max(0, index)] / 1000.0);
+        }
+    }
+
+    private void run(String scenario, long latency, long jitter, double errorRate,
+                     int definitionCount, int commentLength) throws Exception {
+        mServer.setLatency(latency);
+        mServer.setJitter(jitter);
+        mServer.setErrorRate(errorRate);
+        mServer.setDefinitionCount(definitionCount);
+        mServer.setCommentLength(commentLength);
+
+        // the service handles its intents in order: the cache is empty
+        // before the first lookup
+        final Context context = getContext();
+        AcronymService.startClearCache(context);
+
+        final Result result = new Result();
+        final Map<String, Long> startDates = new ConcurrentHashMap<>();
+        final AtomicInteger sent = new AtomicInteger();
+        final CountDownLatch done = new CountDownLatch(LOOKUPS);
+        BroadcastReceiver receiver = new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                if (AcronymService.ReplyIntent.isPartial(intent)) {
+                    return; // only the final replies are measured
+                }
+                Long start = startDates.remove(AcronymService.ReplyIntent.getAcronymName(intent));
+                if (start == null) {
+                    return; // not one of ours
+                }
+                int index = result.replies.getAndIncrement();
+                result.latencies[index] = (System.nanoTime() - start) / 1000L;
+                if (AcronymService.ReplyIntent.getResultStatus(intent) != Activity.RESULT_OK) {
+                    result.failures.incrementAndGet();
+                }
+                send(context, startDates, sent);
+                done.countDown();
+            }
+        };
+        context.registerReceiver(receiver, AcronymService.ReplyIntent.getIntentFilter(),
+                null, new Handler(mReceiverThread.getLooper()));
+        long requestsBefore = mServer.getRequestCount();
+        try {
+            long start = System.nanoTime();
+            for (int i = 0; i < CONCURRENCY; i++) {
+                send(context, startDates, sent);
+            }
+            assertTrue(scenario + ": timeout", done.await(TIMEOUT, TimeUnit.SECONDS));
+            result.duration = (System.nanoTime() - start) / 1000000L;
+        } finally {
+            context.unregisterReceiver(receiver);
+        }
+        Log.i(TAG, scenario + ": " + result + ", "
+                + (mServer.getRequestCount() - requestsBefore) + " server requests");
+        assertEquals(LOOKUPS, result.replies.get());
+    }
+
+    // start the next lookup, if any is left
+    private static void send(Context context, Map<String, Long> startDates, AtomicInteger sent) {
+        int index = sent.getAndIncrement();
+        if (index < LOOKUPS) {
+            String name = "LOAD" + index;
+            startDates.put(name, System.nanoTime());
+            AcronymService.startRetrieveAcronym(context, name);
+        }
+    }
+}
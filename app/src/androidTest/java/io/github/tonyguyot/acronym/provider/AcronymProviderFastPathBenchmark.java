@@ -0,0 +1,189 @@
+/*
+ * Copyright (C) 2016 Tony Guyot
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.tonyguyot.acronym.provider;
+
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.test.ProviderTestCase2;
+import android.util.Log;
+
+import io.github.tonyguyot.acronym.database.AcronymTable;
+
+/**
+ * Micro-benchmark of the per-call overhead of the generic provider paths
+ * (query builder, selection strings) against the precompiled fast paths.
+ * The provider runs on an isolated database. Results are reported in the
+ * log (tag "AcronymProviderBenchmark").
+ */
+public class AcronymProviderFastPathBenchmark extends ProviderTestCase2<AcronymProvider> {
+
+    // tag for logging information
+    private static final String TAG = "AcronymProviderBenchmark";
+
+    // number of distinct names and of definitions per name
+    private static final int NAMES = 500;
+    private static final int DEFINITIONS = 4;
+
+    // number of calls measured for each operation
+    private static final int CALLS = 2000;
+
+    private ContentResolver mResolver;
+
+    public AcronymProviderFastPathBenchmark() {
+        super(AcronymProvider.class, AcronymProvider.AUTHORITY);
+    }
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        mResolver = getMockContentResolver();
+        ContentValues[] values = new ContentValues[NAMES * DEFINITIONS];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = makeValues(name(i / DEFINITIONS), "Definition " + i);
+        }
+        mResolver.bulkInsert(AcronymProvider.CONTENT_URI, values);
+    }
+
+    public void testLookupByName() {
+        final String[] projection = {
+                AcronymProvider.Metadata.COLUMN_NAME,
+                AcronymProvider.Metadata.COLUMN_DEFINITION,
+                AcronymProvider.Metadata.COLUMN_COMMENT,
+                AcronymProvider.Metadata.COLUMN_INSERTION_DATE,
+        };
+        long generic = measure(new Call() {
+            @Override
+            public void run(int i) {
+                Cursor cursor = mResolver.query(AcronymProvider.CONTENT_URI, projection,
+                        AcronymProvider.Metadata.COLUMN_NAME + "= ?",
+                        new String[] { name(i % NAMES) }, null);
+                assertEquals(DEFINITIONS, cursor.getCount());
+                cursor.close();
+            }
+        });
+        long fast = measure(new Call() {
+            @Override
+            public void run(int i) {
+                Cursor cursor = mResolver.query(AcronymProvider.buildNameUri(name(i % NAMES)),
+                        null, null, null, null);
+                assertEquals(DEFINITIONS, cursor.getCount());
+                cursor.close();
+            }
+        });
+        report("lookup by name", generic, fast);
+    }
+
+    public void testFreshnessProbe() {
+        final String[] projection = { AcronymProvider.Metadata.COLUMN_INSERTION_DATE };
+        long generic = measure(new Call() {
+            @Override
+            public void run(int i) {
+                Cursor cursor = mResolver.query(AcronymProvider.CONTENT_URI, projection,
+                        AcronymProvider.Metadata.COLUMN_NAME + "= ?",
+                        new String[] { name(i % NAMES) }, null);
+                long oldest = Long.MAX_VALUE;
+                while (cursor.moveToNext()) {
+                    oldest = Math.min(oldest, cursor.getLong(0));
+                }
+                cursor.close();
+            }
+        });
+        long fast = measure(new Call() {
+            @Override
+            public void run(int i) {
+                Cursor cursor = mResolver.query(AcronymProvider.buildFreshnessUri(name(i % NAMES)),
+                        null, null, null, null);
+                assertTrue(cursor.moveToFirst());
+                cursor.close();
+            }
+        });
+        report("freshness probe", generic, fast);
+    }
+
+    public void testInsertDefinition() {
+        long generic = measure(new Call() {
+            @Override
+            public void run(int i) {
+                // explicit (null) identifier: forces the generic path
+                ContentValues values = makeValues("GENERIC", "Definition " + i);
+                values.putNull(AcronymTable.COLUMN_ID);
+                mResolver.insert(AcronymProvider.CONTENT_URI, values);
+            }
+        });
+        long fast = measure(new Call() {
+            @Override
+            public void run(int i) {
+                mResolver.insert(AcronymProvider.CONTENT_URI, makeValues("FAST", "Definition " + i));
+            }
+        });
+        report("insert definition", generic, fast);
+    }
+
+    public void testDeleteByName() {
+        long generic = measure(new Call() {
+            @Override
+            public void run(int i) {
+                mResolver.delete(AcronymProvider.CONTENT_URI,
+                        AcronymProvider.Metadata.COLUMN_NAME + "= ?",
+                        new String[] { "MISSING" + i });
+            }
+        });
+        long fast = measure(new Call() {
+            @Override
+            public void run(int i) {
+                mResolver.delete(AcronymProvider.buildNameUri("MISSING" + i), null, null);
+            }
+        });
+        report("delete by name", generic, fast);
+    }
+
+    // ------ HELPER METHODS -----
+
+    private interface Call {
+        void run(int i);
+    }
+
+    // average duration of one call, in nanoseconds
+    private static long measure(Call call) {
+        // warm up (statement compilation, caches...)
+        for (int i = 0; i < CALLS / 10; i++) {
+            call.run(i);
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < CALLS; i++) {
+            call.run(i);
+        }
+        return (System.nanoTime() - start) / CALLS;
+    }
+
+    private static void report(String operation, long generic, long fast) {
+        Log.i(TAG, operation + ": generic " + generic / 1000 + " us/call, fast path "
+                + fast / 1000 + " us/call");
+    }
+
+    private static String name(int i) {
+        return "ACR" + i;
+    }
+
+    private static ContentValues makeValues(String name, String definition) {
+        ContentValues values = new ContentValues();
+        values.put(AcronymProvider.Metadata.COLUMN_NAME, name);
+        values.put(AcronymProvider.Metadata.COLUMN_DEFINITION, definition);
+        values.put(AcronymProvider.Metadata.COLUMN_INSERTION_DATE, System.currentTimeMillis());
+        return values;
+    }
+}
@@ -0,0 +1,49 @@
+/*
+ * Copyright (C) 2016 Tony Guyot
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.tonyguyot.acronym.data;
+
+import java.util.Locale;
+import java.util.regex.Pattern;
+
+/**
+ * The canonical lookup key of an acronym: the variants of a name which only
+ * differ by the case or the punctuation ("U.S.A.", "usa", "USA") have the
+ * same key, so that they share the same entry of the cache.
+ */
+public final class AcronymKey {
+
+    // everything but the letters and digits (compiled once, the key is
+    // computed for each lookup and each insertion)
+    private static final Pattern IGNORED = Pattern.compile("[^\\p{L}\\p{Nd}]+");
+
+    // no instance
+    private AcronymKey() {
+    }
+
+    /**
+     * Compute the lookup key of a name.
+     *
+     * @param name  the name typed by the user or returned by the server
+     * @return      the letters and digits of the name, in upper case
+     *              (empty if there is none)
+     */
+    public static String of(String name) {
+        if (name == null) {
+            return "";
+        }
+        return IGNORED.matcher(name).replaceAll("").toUpperCase(Locale.ROOT);
+    }
+}
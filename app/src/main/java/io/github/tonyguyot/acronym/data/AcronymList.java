@@ -42,12 +42,21 @@ public class AcronymList {
         // retrieve information but could not interpret it
         public static final int STATUS_ERROR_PARSING = -4;
 
-        // some other kind of error occurred
-        @SuppressWarnings("unused")
+        // some other kind of error occurred (e.g. the request has been
+        // shed, or the server has received too many requests)
         public static final int STATUS_ERROR_OTHER = -5;
 
         // the query data were invalid
         public static final int STATUS_INVALID_DATA = -6;
+
+        // the cached list is still valid (conditional request): there is
+        // no content, only the validators
+        public static final int STATUS_NOT_MODIFIED = 1;
+
+        // the cached list has expired, but no fresher one has been received
+        // in time: there is no content, the cached definitions are to be
+        // used as they are (without renewing them)
+        public static final int STATUS_STALE = 2;
     }
 
 
@@ -70,6 +79,15 @@ public class AcronymList {
     // (when true)
     private boolean mIsExpired;
 
+    // the validators of the content, to revalidate it when it expires
+    // (null if unknown)
+    private AcronymValidators mValidators;
+
+    // when the content is only the first page of the definitions (the rest
+    // being read from the cache page by page), the number of definitions
+    // in all the pages; -1 when the content is complete
+    private int mTotalCount;
+
 
     // default constructor
     public AcronymList() {
@@ -78,6 +96,7 @@ public class AcronymList {
         mAdditionalStatus = -1;
         mRetrievedDate = 0L;
         mIsExpired = false;
+        mTotalCount = -1;
     }
 
     // getters and setters:
@@ -129,4 +148,20 @@ public class AcronymList {
     public void setAsNotExpired() {
         mIsExpired = false;
     }
+
+    public AcronymValidators getValidators() {
+        return mValidators;
+    }
+
+    public void setValidators(AcronymValidators validators) {
+        mValidators = validators;
+    }
+
+    public int getTotalCount() {
+        return mTotalCount;
+    }
+
+    public void setTotalCount(int totalCount) {
+        mTotalCount = totalCount;
+    }
 }
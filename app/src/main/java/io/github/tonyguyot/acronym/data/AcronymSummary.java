@@ -0,0 +1,80 @@
+/*
+ * Copyright (C) 2016 Tony Guyot
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.tonyguyot.acronym.data;
+
+import android.os.Parcel;
+import android.os.Parcelable;
+
+/**
+ * POJO to represent an acronym of the history: its name and the number of
+ * its distinct definitions, as grouped by the database (the definitions
+ * themselves are read only when the user wants to see them)
+ */
+public class AcronymSummary implements Parcelable {
+
+    // Attributes
+    private final String mName;   // the acronym itself
+    private final int mCount;     // the number of distinct definitions
+
+    // Constructors
+    public AcronymSummary(String name, int count) {
+        mName = name;
+        mCount = count;
+    }
+
+    // CREATOR object
+    public static final Parcelable.Creator CREATOR =
+            new Parcelable.Creator() {
+                public AcronymSummary createFromParcel(Parcel in) {
+                    return new AcronymSummary(in);
+                }
+
+                public AcronymSummary[] newArray(int size) {
+                    return new AcronymSummary[size];
+                }
+            };
+
+    public AcronymSummary(Parcel parcel) {
+        mName = parcel.readString();
+        mCount = parcel.readInt();
+    }
+
+    // override methods from parcelable interface
+    @Override
+    public int describeContents() {
+        return 0;
+    }
+
+    @Override
+    public void writeToParcel(Parcel parcel, int flags) {
+        parcel.writeString(mName);
+        parcel.writeInt(mCount);
+    }
+
+    // Getters
+    public String getName() {
+        return mName;
+    }
+
+    public int getCount() {
+        return mCount;
+    }
+
+    @Override
+    public String toString() {
+        return mName + " (" + mCount + ")";
+    }
+}
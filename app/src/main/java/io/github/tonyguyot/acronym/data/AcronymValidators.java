@@ -0,0 +1,60 @@
+/*
+ * Copyright (C) 2016 Tony Guyot
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.tonyguyot.acronym.data;
+
+/**
+ * POJO to represent the validators of a response of the server: the HTTP
+ * validators (entity tag and last modification date) when the server sends
+ * them, otherwise a hash of the content. They are stored with the cached
+ * definitions, so that the server can be asked whether they have changed.
+ */
+public class AcronymValidators {
+
+    // Attributes (each one may be null)
+    private final String mETag;          // ETag header of the response
+    private final String mLastModified;  // Last-Modified header, as received
+    private final String mHash;          // hash of the content of the response
+
+    // Constructors
+    public AcronymValidators(String eTag, String lastModified, String hash) {
+        mETag = eTag;
+        mLastModified = lastModified;
+        mHash = hash;
+    }
+
+    // Getters
+    public String getETag() {
+        return mETag;
+    }
+
+    public String getLastModified() {
+        return mLastModified;
+    }
+
+    public String getHash() {
+        return mHash;
+    }
+
+    // true if the server can answer a conditional request
+    public boolean isConditional() {
+        return mETag != null || mLastModified != null;
+    }
+
+    @Override
+    public String toString() {
+        return "ETag: " + mETag + ", Last-Modified: " + mLastModified + ", hash: " + mHash;
+    }
+}
@@ -0,0 +1,177 @@
+/*
+ * Copyright (C) 2016 Tony Guyot
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.tonyguyot.acronym.data;
+
+import android.os.Parcel;
+import android.os.Parcelable;
+
+/**
+ * POJO to represent the storage statistics of the cache, as computed by
+ * the database
+ */
+public class CacheStatistics implements Parcelable {
+
+    // age classes of the histogram
+    public static final int AGE_DAY = 0;    // inserted less than one day ago
+    public static final int AGE_WEEK = 1;   // between one day and one week
+    public static final int AGE_MONTH = 2;  // between one week and 30 days
+    public static final int AGE_OLDER = 3;  // more than 30 days
+    public static final int AGE_CLASSES = 4;
+
+    // Attributes
+    private final long mDefinitionCount;  // number of rows
+    private final long mAcronymCount;     // number of distinct names
+    private final long mTextBytes;        // size of the texts (UTF-8)
+    private final long[] mAgeHistogram;   // number of rows per age class
+    private final long mExpiredCount;     // number of expired rows
+    private final long mDatabaseBytes;    // size of the database file
+    private final long mFreeBytes;        // unused space in the database file
+
+    // Constructors
+    private CacheStatistics(long definitionCount, long acronymCount, long textBytes,
+                            long[] ageHistogram, long expiredCount, long databaseBytes,
+                            long freeBytes) {
+        mDefinitionCount = definitionCount;
+        mAcronymCount = acronymCount;
+        mTextBytes = textBytes;
+        mAgeHistogram = ageHistogram;
+        mExpiredCount = expiredCount;
+        mDatabaseBytes = databaseBytes;
+        mFreeBytes = freeBytes;
+    }
+
+    // CREATOR object
+    public static final Parcelable.Creator CREATOR =
+            new Parcelable.Creator() {
+                public CacheStatistics createFromParcel(Parcel in) {
+                    return new CacheStatistics(in);
+                }
+
+                public CacheStatistics[] newArray(int size) {
+                    return new CacheStatistics[size];
+                }
+            };
+
+    public CacheStatistics(Parcel parcel) {
+        mDefinitionCount = parcel.readLong();
+        mAcronymCount = parcel.readLong();
+        mTextBytes = parcel.readLong();
+        mAgeHistogram = parcel.createLongArray();
+        mExpiredCount = parcel.readLong();
+        mDatabaseBytes = parcel.readLong();
+        mFreeBytes = parcel.readLong();
+    }
+
+    // override methods from parcelable interface
+    @Override
+    public int describeContents() {
+        return 0;
+    }
+
+    @Override
+    public void writeToParcel(Parcel parcel, int flags) {
+        parcel.writeLong(mDefinitionCount);
+        parcel.writeLong(mAcronymCount);
+        parcel.writeLong(mTextBytes);
+        parcel.writeLongArray(mAgeHistogram);
+        parcel.writeLong(mExpiredCount);
+        parcel.writeLong(mDatabaseBytes);
+        parcel.writeLong(mFreeBytes);
+    }
+
+    // Getters
+    public long getDefinitionCount() {
+        return mDefinitionCount;
+    }
+
+    public long getAcronymCount() {
+        return mAcronymCount;
+    }
+
+    public long getTextBytes() {
+        return mTextBytes;
+    }
+
+    public long getAgeCount(int ageClass) {
+        return mAgeHistogram[ageClass];
+    }
+
+    public long getExpiredCount() {
+        return mExpiredCount;
+    }
+
+    // fraction of the rows which are expired (0 if the cache is empty)
+    public double getExpiredFraction() {
+        return mDefinitionCount == 0 ? 0.0 : (double) mExpiredCount / mDefinitionCount;
+    }
+
+    public long getDatabaseBytes() {
+        return mDatabaseBytes;
+    }
+
+    public long getFreeBytes() {
+        return mFreeBytes;
+    }
+
+    @Override
+    public String toString() {
+        return mDefinitionCount + " definitions of " + mAcronymCount + " acronyms, "
+                + mTextBytes + " bytes of text, " + mExpiredCount + " expired, "
+                + "database " + mDatabaseBytes + " bytes (" + mFreeBytes + " free)";
+    }
+
+    // Builder
+    public static class Builder {
+        private long mDefinitionCount;
+        private long mAcronymCount;
+        private long mTextBytes;
+        private long[] mAgeHistogram = new long[AGE_CLASSES];
+        private long mExpiredCount;
+        private long mDatabaseBytes;
+        private long mFreeBytes;
+
+        public Builder(long definitionCount, long acronymCount) {
+            mDefinitionCount = definitionCount;
+            mAcronymCount = acronymCount;
+        }
+
+        public Builder textBytes(long textBytes) {
+            mTextBytes = textBytes;
+            return this;
+        }
+
+        public Builder ageCount(int ageClass, long count) {
+            mAgeHistogram[ageClass] = count;
+            return this;
+        }
+
+        public Builder expiredCount(long expiredCount) {
+            mExpiredCount = expiredCount;
+            return this;
+        }
+
+        public Builder databaseBytes(long databaseBytes, long freeBytes) {
+            mDatabaseBytes = databaseBytes;
+            mFreeBytes = freeBytes;
+            return this;
+        }
+
+        public CacheStatistics create() {
+            return new CacheStatistics(mDefinitionCount, mAcronymCount, mTextBytes,
+                    mAgeHistogram.clone(), mExpiredCount, mDatabaseBytes, mFreeBytes);
+        }
+    }
+}
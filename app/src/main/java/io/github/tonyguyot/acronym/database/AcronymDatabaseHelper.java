@@ -16,31 +16,126 @@
 package io.github.tonyguyot.acronym.database;
 
 import android.content.Context;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
 
 /**
- *
+ * Open helper for the acronym cache database.
+ * The database runs in write-ahead logging mode so that the history listing
+ * (reads) and the service insertions (writes) do not block each other.
+ * It is also in incremental auto-vacuum mode: the pages freed by the
+ * deletions are kept in the file until a maintenance step reclaims them, a
+ * bounded number at a time. A new database is created in this mode; a
+ * database created by a previous version must be rebuilt once, which the
+ * maintenance only does while the device is charging and the service idle.
  */
 public class AcronymDatabaseHelper extends SQLiteOpenHelper {
 
     private static final String DATABASE_NAME = "acronym.db";
-    private static final int DATABASE_VERSION = 1;
+    private static final int DATABASE_VERSION = 7; // 2: full-text search index, 3: name index,
+                                                   // 4: lookup key, 5: unique definitions,
+                                                   // 6: validators, 7: ingestion journal
+
+    // with WAL, a commit only needs to be durable at checkpoint time:
+    // NORMAL avoids one fsync per insertion without risking corruption
+    private static final String PRAGMA_SYNCHRONOUS = "PRAGMA synchronous = NORMAL";
+
+    // page cache size per connection (negative value = size in KiB)
+    private static final String PRAGMA_CACHE_SIZE = "PRAGMA cache_size = -1024";
+
+    // the free pages are tracked, but only truncated on request (this only
+    // takes effect before the first page of the file is written, or when
+    // the database is vacuumed)
+    private static final String PRAGMA_AUTO_VACUUM = "PRAGMA auto_vacuum = INCREMENTAL";
+    private static final int AUTO_VACUUM_INCREMENTAL = 2;
 
     // constructor
     public AcronymDatabaseHelper(Context context) {
         super(context, DATABASE_NAME, null, DATABASE_VERSION);
     }
 
+    // this method is called each time the database is opened, before
+    // the creation or the upgrade: a new database is still empty, so its
+    // vacuum mode can be chosen for free, before switching to WAL (which
+    // writes the first page of the file)
+    @Override
+    public void onConfigure(SQLiteDatabase database) {
+        if (database.getVersion() == 0) {
+            database.execSQL(PRAGMA_AUTO_VACUUM);
+        }
+        database.enableWriteAheadLogging();
+        applyConnectionSettings(database);
+    }
+
+    // tune the connection settings (they apply to the primary connection,
+    // which is the one used for all the writes)
+    static void applyConnectionSettings(SQLiteDatabase database) {
+        database.execSQL(PRAGMA_SYNCHRONOUS);
+        database.execSQL(PRAGMA_CACHE_SIZE);
+    }
+
+    // ------ MAINTENANCE (never called within a transaction) ------
+
+    // true if the database file can be truncated incrementally, false if it
+    // has been created by a version without this mode, and must be vacuumed
+    // once
+    public static boolean isIncremental(SQLiteDatabase database) {
+        return DatabaseUtils.longForQuery(database, "PRAGMA auto_vacuum", null)
+                == AUTO_VACUUM_INCREMENTAL;
+    }
+
+    // rebuild the whole file once, to switch it to the incremental mode
+    // (the cost depends on the size of the file, and the writes wait
+    // meanwhile: only when nothing else has to be done)
+    public static void convertToIncremental(SQLiteDatabase database) {
+        database.execSQL(PRAGMA_AUTO_VACUUM);
+        database.execSQL("VACUUM");
+    }
+
+    // number of unused pages in the database file
+    public static long getFreePages(SQLiteDatabase database) {
+        return DatabaseUtils.longForQuery(database, "PRAGMA freelist_count", null);
+    }
+
+    // give back at most the given number of unused pages to the file system,
+    // and return the number of pages actually reclaimed
+    public static long reclaimFreePages(SQLiteDatabase database, int maxPages) {
+        long before = getFreePages(database);
+        if (before > 0) {
+            // the pragma frees one page per step: it must be stepped to the
+            // end, hence a query (filled by getCount()) and not execSQL()
+            Cursor cursor = database.rawQuery("PRAGMA incremental_vacuum(" + maxPages + ")", null);
+            try {
+                cursor.getCount();
+            } finally {
+                cursor.close();
+            }
+        }
+        return before - getFreePages(database);
+    }
+
+    // refresh the statistics used by the query planner to choose the indexes
+    public static void analyze(SQLiteDatabase database) {
+        database.execSQL("ANALYZE");
+    }
+
     // this method is called during the creation of the database
     @Override
     public void onCreate(SQLiteDatabase database) {
         AcronymTable.onCreate(database);
+        AcronymSearchTable.onCreate(database);
+        AcronymValidatorTable.onCreate(database);
+        AcronymIngestTable.onCreate(database);
     }
 
     // this method is called during an upgrade of the database
     @Override
     public void onUpgrade(SQLiteDatabase database, int oldVersion, int newVersion) {
         AcronymTable.onUpgrade(database, oldVersion, newVersion);
+        AcronymSearchTable.onUpgrade(database, oldVersion, newVersion);
+        AcronymValidatorTable.onUpgrade(database, oldVersion, newVersion);
+        AcronymIngestTable.onUpgrade(database, oldVersion, newVersion);
     }
 }
@@ -0,0 +1,69 @@
+/*
+ * Copyright (C) 2016 Tony Guyot
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.tonyguyot.acronym.database;
+
+import android.database.sqlite.SQLiteDatabase;
+
+/**
+ * Journal of the ingestions in progress: the definitions which were already
+ * cached and have been received again, by lookup key and date of the
+ * ingestion. They keep their previous date until the ingestion is complete,
+ * so that an ingestion which fails leaves them as they were.
+ */
+public class AcronymIngestTable {
+
+    // Table name
+    public static final String TABLE_INGEST = "acronym_ingest";
+
+    // Column names
+    public static final String COLUMN_KEY = AcronymTable.COLUMN_KEY;
+    public static final String COLUMN_MARK = "mark";
+    public static final String COLUMN_ACRONYM_ID = "acronym_id";
+
+    // SQL commands
+    public static final String TABLE_CREATION_CMD =
+            "create table " + TABLE_INGEST + "(" +
+            COLUMN_KEY + " text not null, " +
+            COLUMN_MARK + " integer not null, " +
+            COLUMN_ACRONYM_ID + " integer not null, " +
+            "primary key (" + COLUMN_KEY + ", " + COLUMN_MARK + ", " + COLUMN_ACRONYM_ID + "));";
+    public static final String TABLE_DELETION_CMD =
+            "drop table if exists " + TABLE_INGEST;
+    // record that the cached definition (key, name, definition) has been
+    // received again by the ingestion of the given date
+    public static final String RECORD_DEFINITION_CMD =
+            "insert or ignore into " + TABLE_INGEST + "(" + COLUMN_KEY + ", " +
+            COLUMN_MARK + ", " + COLUMN_ACRONYM_ID + ") select " +
+            AcronymTable.COLUMN_KEY + ", ?, " + AcronymTable.COLUMN_ID +
+            " from " + AcronymTable.TABLE_ACRONYM + " where " + AcronymTable.COLUMN_KEY +
+            " = ? and " + AcronymTable.COLUMN_NAME + " = ? and " +
+            AcronymTable.COLUMN_DEFINITION + " = ?";
+    // forget the ingestions of a key (including the ones left by a crash)
+    public static final String DELETE_BY_KEY_CMD =
+            "delete from " + TABLE_INGEST + " where " + COLUMN_KEY + " = ?";
+
+    // methods for operations on the database
+
+    public static void onCreate(SQLiteDatabase database) {
+        database.execSQL(TABLE_CREATION_CMD);
+    }
+
+    public static void onUpgrade(SQLiteDatabase database, int oldVersion, int newVersion) {
+        if (oldVersion < 7) {
+            onCreate(database);
+        }
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright (C) 2016 Tony Guyot
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.tonyguyot.acronym.database;
+
+import android.database.sqlite.SQLiteDatabase;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Full-text index over the definitions and comments of the acronym table.
+ * This is an external content FTS4 table: the text is not duplicated, only
+ * the index is stored. The triggers keep the index in sync with every
+ * insertion, deletion or modification of a definition.
+ */
+public class AcronymSearchTable {
+
+    // Table name
+    public static final String TABLE_SEARCH = "acronym_search";
+
+    // Column names (same names as in the content table)
+    public static final String COLUMN_DOCID = "docid";
+    public static final String COLUMN_DEFINITION = AcronymTable.COLUMN_DEFINITION;
+    public static final String COLUMN_COMMENT = AcronymTable.COLUMN_COMMENT;
+
+    // weight of a hit in each indexed column, in the column order
+    private static final double[] COLUMN_WEIGHTS = { 1.0, 0.5 };
+
+    // the words of a search (everything else is ignored)
+    private static final Pattern WORD = Pattern.compile("[\\p{L}\\p{N}]+");
+
+    // SQL commands
+    public static final String TABLE_CREATION_CMD =
+            "create virtual table " + TABLE_SEARCH + " using fts4(" +
+            "content=\"" + AcronymTable.TABLE_ACRONYM + "\", " +
+            COLUMN_DEFINITION + ", " +
+            COLUMN_COMMENT + ");";
+    public static final String TABLE_DELETION_CMD =
+            "drop table if exists " + TABLE_SEARCH;
+    public static final String TABLE_REBUILD_CMD =
+            "insert into " + TABLE_SEARCH + "(" + TABLE_SEARCH + ") values('rebuild')";
+
+    // triggers: remove the old text before a change, index the new text after it
+    private static final String REMOVE_OLD =
+            " begin delete from " + TABLE_SEARCH +
+            " where " + COLUMN_DOCID + "=old." + AcronymTable.COLUMN_ID + "; end;";
+    private static final String INDEX_NEW =
+            " begin insert into " + TABLE_SEARCH + "(" +
+            COLUMN_DOCID + ", " + COLUMN_DEFINITION + ", " + COLUMN_COMMENT + ") values(" +
+            "new." + AcronymTable.COLUMN_ID + ", " +
+            "new." + AcronymTable.COLUMN_DEFINITION + ", " +
+            "new." + AcronymTable.COLUMN_COMMENT + "); end;";
+    private static final String UPDATE_OF =
+            " update of " + AcronymTable.COLUMN_DEFINITION + ", " + AcronymTable.COLUMN_COMMENT +
+            " on " + AcronymTable.TABLE_ACRONYM;
+    private static final String[] TRIGGER_CREATION_CMDS = {
+            "create trigger " + TABLE_SEARCH + "_bd before delete on " +
+                    AcronymTable.TABLE_ACRONYM + REMOVE_OLD,
+            "create trigger " + TABLE_SEARCH + "_bu before" + UPDATE_OF + REMOVE_OLD,
+            "create trigger " + TABLE_SEARCH + "_ai after insert on " +
+                    AcronymTable.TABLE_ACRONYM + INDEX_NEW,
+            "create trigger " + TABLE_SEARCH + "_au after" + UPDATE_OF + INDEX_NEW,
+    };
+
+    // query returning the ranking information of all matching definitions
+    public static final String MATCH_QUERY =
+            "select " + COLUMN_DOCID + ", matchinfo(" + TABLE_SEARCH + ")" +
+            " from " + TABLE_SEARCH +
+            " where " + TABLE_SEARCH + " match ?";
+
+    // methods for operations on the database
+
+    public static void onCreate(SQLiteDatabase database) {
+        database.execSQL(TABLE_CREATION_CMD);
+        for (String cmd : TRIGGER_CREATION_CMDS) {
+            database.execSQL(cmd);
+        }
+    }
+
+    public static void onUpgrade(SQLiteDatabase database, int oldVersion, int newVersion) {
+        if (oldVersion < 2) {
+            // the index did not exist yet: create it and index the
+            // definitions already in the cache
+            onCreate(database);
+            database.execSQL(TABLE_REBUILD_CMD);
+        }
+    }
+
+    /**
+     * Convert the words typed by the user into an FTS query: all the words
+     * must be present, each one being possibly the prefix of a longer word.
+     * Only letters and digits are kept so that the user input can never be
+     * interpreted as an FTS operator.
+     *
+     * @param terms     the words to search
+     * @return          the FTS query, or null if there is nothing to search
+     */
+    public static String makeMatchExpression(String terms) {
+        if (terms == null) {
+            return null;
+        }
+        StringBuilder expression = new StringBuilder();
+        Matcher matcher = WORD.matcher(terms);
+        while (matcher.find()) {
+            if (expression.length() > 0) {
+                expression.append(' ');
+            }
+            expression.append('"').append(matcher.group()).append("*\"");
+        }
+        return expression.length() == 0 ? null : expression.toString();
+    }
+
+    /**
+     * Compute the relevance of a row from its matchinfo() blob (default
+     * "pcx" format). Each hit in a column counts proportionally to the
+     * rarity of the phrase in this column over the whole table, so that
+     * rare words and hits in the definition rank first.
+     *
+     * @param matchInfo     the matchinfo() blob of the row
+     * @return              the score of the row (higher is better)
+     */
+    public static double rank(byte[] matchInfo) {
+        ByteBuffer buffer = ByteBuffer.wrap(matchInfo).order(ByteOrder.nativeOrder());
+        int phraseCount = buffer.getInt(0);
+        int columnCount = buffer.getInt(4);
+        double score = 0.0;
+        for (int phrase = 0; phrase < phraseCount; phrase++) {
+            for (int column = 0; column < columnCount; column++) {
+                // 3 integers per (phrase, column) after the 2 header integers
+                int offset = 4 * (2 + 3 * (phrase * columnCount + column));
+                int hitsInRow = buffer.getInt(offset);
+                int hitsInTable = buffer.getInt(offset + 4);
+                if (hitsInRow > 0 && column < COLUMN_WEIGHTS.length) {
+                    score += COLUMN_WEIGHTS[column] * hitsInRow / hitsInTable;
+                }
+            }
+        }
+        return score;
+    }
+}
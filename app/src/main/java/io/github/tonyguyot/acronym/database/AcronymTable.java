@@ -15,7 +15,11 @@
  */
 package io.github.tonyguyot.acronym.database;
 
+import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteStatement;
+
+import io.github.tonyguyot.acronym.data.AcronymKey;
 
 /**
  *
@@ -31,6 +35,7 @@ public class AcronymTable {
     public static final String COLUMN_DEFINITION = "definition";
     public static final String COLUMN_COMMENT = "comment";
     public static final String COLUMN_INSERTION_DATE = "inserted";
+    public static final String COLUMN_KEY = "lookup_key"; // see AcronymKey
 
     // SQL commands
     public static final String TABLE_CREATION_CMD =
@@ -39,20 +44,242 @@ public class AcronymTable {
             COLUMN_NAME + " text not null, " +
             COLUMN_DEFINITION + " text not null, " +
             COLUMN_COMMENT + " text, " +
-            COLUMN_INSERTION_DATE + " integer not null);";
+            COLUMN_INSERTION_DATE + " integer not null, " +
+            COLUMN_KEY + " text not null default '');";
     public static final String TABLE_DELETION_CMD =
             "drop table if exists " + TABLE_ACRONYM;
+    public static final String NAME_INDEX_CREATION_CMD =
+            "create index " + TABLE_ACRONYM + "_" + COLUMN_NAME + " on " +
+            TABLE_ACRONYM + "(" + COLUMN_NAME + ");";
+    public static final String KEY_INDEX_CREATION_CMD =
+            "create index " + TABLE_ACRONYM + "_" + COLUMN_KEY + " on " +
+            TABLE_ACRONYM + "(" + COLUMN_KEY + ");";
+    public static final String KEY_INDEX_DELETION_CMD =
+            "drop index if exists " + TABLE_ACRONYM + "_" + COLUMN_KEY;
+    // a definition is cached only once under a given key: this index also
+    // serves the lookups by key (it starts with the key)
+    public static final String IDENTITY_INDEX_CREATION_CMD =
+            "create unique index " + TABLE_ACRONYM + "_identity on " + TABLE_ACRONYM + "(" +
+            COLUMN_KEY + ", " + COLUMN_NAME + ", " + COLUMN_DEFINITION + ");";
+    // keep only the first copy of each definition (before creating the
+    // unique index on a table which may contain duplicates)
+    public static final String DUPLICATES_DELETION_CMD =
+            "delete from " + TABLE_ACRONYM + " where " + COLUMN_ID + " not in (" +
+            "select min(" + COLUMN_ID + ") from " + TABLE_ACRONYM + " group by " +
+            COLUMN_KEY + ", " + COLUMN_NAME + ", " + COLUMN_DEFINITION + ")";
+    public static final String KEY_COLUMN_ADDITION_CMD =
+            "alter table " + TABLE_ACRONYM + " add column " +
+            COLUMN_KEY + " text not null default ''";
+    public static final String UPDATE_KEY_CMD =
+            "update " + TABLE_ACRONYM + " set " + COLUMN_KEY + " = ? where " + COLUMN_NAME + " = ?";
+    // (a definition already cached under the same key is not inserted again)
+    public static final String INSERT_DEFINITION_CMD =
+            "insert or ignore into " + TABLE_ACRONYM + "(" + COLUMN_NAME + ", " +
+            COLUMN_DEFINITION + ", " + COLUMN_COMMENT + ", " +
+            COLUMN_INSERTION_DATE + ", " + COLUMN_KEY + ") values(?, ?, ?, ?, ?)";
+    public static final String DELETE_BY_NAME_CMD =
+            "delete from " + TABLE_ACRONYM + " where " + COLUMN_NAME + " = ?";
+    public static final String DELETE_BY_KEY_CMD =
+            "delete from " + TABLE_ACRONYM + " where " + COLUMN_KEY + " = ?";
+    // mark all the definitions cached under a key as fresh (the index of the
+    // definitions and comments is not affected)
+    public static final String TOUCH_BY_KEY_CMD =
+            "update " + TABLE_ACRONYM + " set " + COLUMN_INSERTION_DATE + " = ? where " +
+            COLUMN_KEY + " = ?";
+    // change the comment of one definition, only if it is different (so that
+    // the index of the comments is not updated for nothing)
+    public static final String UPDATE_COMMENT_CMD =
+            "update " + TABLE_ACRONYM + " set " + COLUMN_COMMENT + " = ? where " +
+            COLUMN_KEY + " = ? and " + COLUMN_NAME + " = ? and " + COLUMN_DEFINITION + " = ?" +
+            " and " + COLUMN_COMMENT + " is not ?";
+    // mark the definitions of an ingestion as fresh: the ones it has
+    // inserted, staged with another date, and the ones already cached it
+    // has received again, recorded in the journal (see
+    // AcronymProvider.ingest(); parameters: date, key, staging date, key, date)
+    public static final String PUBLISH_STAGED_BY_KEY_CMD =
+            "update " + TABLE_ACRONYM + " set " + COLUMN_INSERTION_DATE + " = ? where " +
+            COLUMN_KEY + " = ? and (" + COLUMN_INSERTION_DATE + " = ? or " + COLUMN_ID +
+            " in (select " + AcronymIngestTable.COLUMN_ACRONYM_ID + " from " +
+            AcronymIngestTable.TABLE_INGEST + " where " + AcronymIngestTable.COLUMN_KEY +
+            " = ? and " + AcronymIngestTable.COLUMN_MARK + " = ?))";
+    // delete the definitions cached under a key with a given date (the
+    // definitions inserted by an ingestion which has failed)
+    public static final String DELETE_STAGED_BY_KEY_CMD =
+            "delete from " + TABLE_ACRONYM + " where " + COLUMN_KEY + " = ? and " +
+            COLUMN_INSERTION_DATE + " = ?";
+    // delete the definitions cached under a key which have not been marked
+    // as fresh since the given date (they are not returned any more)
+    public static final String DELETE_STALE_BY_KEY_CMD =
+            "delete from " + TABLE_ACRONYM + " where " + COLUMN_KEY + " = ? and " +
+            COLUMN_INSERTION_DATE + " < ?";
+
+    // SQL queries
+    // distinct names in [lower bound, upper bound[ (range scan of the name index)
+    public static final String SUGGESTION_QUERY =
+            "select distinct " + COLUMN_NAME + " from " + TABLE_ACRONYM +
+            " where " + COLUMN_NAME + " >= ? and " + COLUMN_NAME + " < ?" +
+            " order by " + COLUMN_NAME + " limit ?";
+    // all the definitions of a given name (lookup in the name index)
+    public static final String LOOKUP_BY_NAME_QUERY =
+            "select " + COLUMN_NAME + ", " + COLUMN_DEFINITION + ", " +
+            COLUMN_COMMENT + ", " + COLUMN_INSERTION_DATE +
+            " from " + TABLE_ACRONYM + " where " + COLUMN_NAME + " = ?";
+    // all the definitions cached under a given lookup key (lookup in the identity index)
+    public static final String LOOKUP_BY_KEY_QUERY =
+            "select " + COLUMN_NAME + ", " + COLUMN_DEFINITION + ", " +
+            COLUMN_COMMENT + ", " + COLUMN_INSERTION_DATE +
+            " from " + TABLE_ACRONYM + " where " + COLUMN_KEY + " = ?";
+    // a page of the same, in a stable order (scan of the identity index)
+    public static final String LOOKUP_PAGE_BY_KEY_QUERY =
+            "select " + COLUMN_NAME + ", " + COLUMN_DEFINITION + ", " +
+            COLUMN_COMMENT + ", " + COLUMN_INSERTION_DATE +
+            " from " + TABLE_ACRONYM + " where " + COLUMN_KEY + " = ?" +
+            " order by " + COLUMN_NAME + ", " + COLUMN_DEFINITION + " limit ? offset ?";
+    // number of definitions cached under a given lookup key
+    public static final String COUNT_BY_KEY_QUERY =
+            "select count(*) from " + TABLE_ACRONYM + " where " + COLUMN_KEY + " = ?";
+    // insertion date of the oldest definition cached under a given lookup key
+    public static final String FRESHNESS_QUERY =
+            "select min(" + COLUMN_INSERTION_DATE + ") from " + TABLE_ACRONYM +
+            " where " + COLUMN_KEY + " = ?";
+    // all the distinct lookup keys (scan of the identity index)
+    public static final String KEYS_QUERY =
+            "select distinct " + COLUMN_KEY + " from " + TABLE_ACRONYM;
+    // the definitions cached under a given lookup key, with their identifier
+    // (to compare them with the definitions retrieved again from the server)
+    public static final String ROWS_BY_KEY_QUERY =
+            "select " + COLUMN_ID + ", " + COLUMN_NAME + ", " + COLUMN_DEFINITION + ", " +
+            COLUMN_COMMENT + " from " + TABLE_ACRONYM + " where " + COLUMN_KEY + " = ?";
+    // the distinct names cached under a given lookup key
+    public static final String NAMES_BY_KEY_QUERY =
+            "select distinct " + COLUMN_NAME + " from " + TABLE_ACRONYM +
+            " where " + COLUMN_KEY + " = ?";
+    // the same for the definitions which would be deleted by
+    // DELETE_STALE_BY_KEY_CMD
+    public static final String STALE_NAMES_BY_KEY_QUERY =
+            "select distinct " + COLUMN_NAME + " from " + TABLE_ACRONYM +
+            " where " + COLUMN_KEY + " = ? and " + COLUMN_INSERTION_DATE + " < ?";
+    // the same for the definitions which would be deleted by
+    // DELETE_STAGED_BY_KEY_CMD
+    public static final String STAGED_NAMES_BY_KEY_QUERY =
+            "select distinct " + COLUMN_NAME + " from " + TABLE_ACRONYM +
+            " where " + COLUMN_KEY + " = ? and " + COLUMN_INSERTION_DATE + " = ?";
+    // all the distinct names, in alphabetical order (scan of the name index)
+    public static final String NAMES_QUERY =
+            "select distinct " + COLUMN_NAME + " from " + TABLE_ACRONYM +
+            " order by " + COLUMN_NAME;
+    // the distinct definitions of a given name, in alphabetical order
+    public static final String DEFINITIONS_BY_NAME_QUERY =
+            "select distinct " + COLUMN_DEFINITION + " from " + TABLE_ACRONYM +
+            " where " + COLUMN_NAME + " = ? order by " + COLUMN_DEFINITION;
+    // the first names after a given one, with their number of distinct
+    // definitions (keyset paging: the page is read from the name index,
+    // whatever its position, and the grouping is done by the database;
+    // the definitions themselves are read only when displayed)
+    public static final String HISTORY_PAGE_AFTER_QUERY = makeHistoryPageQuery(
+            COLUMN_NAME + " > ? order by " + COLUMN_NAME);
+    // the last names before a given one, grouped in the same way
+    public static final String HISTORY_PAGE_BEFORE_QUERY = makeHistoryPageQuery(
+            COLUMN_NAME + " < ? order by " + COLUMN_NAME + " desc");
+    // the first names from a given one (included), grouped in the same way
+    public static final String HISTORY_PAGE_FROM_QUERY = makeHistoryPageQuery(
+            COLUMN_NAME + " >= ? order by " + COLUMN_NAME);
+
+    // aggregate statistics of the table, in a single scan
+    // (parameters: expiration date, then the limits of the age classes:
+    // one day, one week and 30 days ago; the texts are measured in bytes)
+    public static final String STATISTICS_QUERY =
+            "select count(*), count(distinct " + COLUMN_NAME + "), " +
+            "total(length(cast(" + COLUMN_NAME + " as blob)) + " +
+            "length(cast(" + COLUMN_DEFINITION + " as blob)) + " +
+            "ifnull(length(cast(" + COLUMN_COMMENT + " as blob)), 0)), " +
+            "total(" + COLUMN_INSERTION_DATE + " < ?1), " +
+            "total(" + COLUMN_INSERTION_DATE + " >= ?2), " +
+            "total(" + COLUMN_INSERTION_DATE + " < ?2 and " + COLUMN_INSERTION_DATE + " >= ?3), " +
+            "total(" + COLUMN_INSERTION_DATE + " < ?3 and " + COLUMN_INSERTION_DATE + " >= ?4), " +
+            "total(" + COLUMN_INSERTION_DATE + " < ?4) " +
+            "from " + TABLE_ACRONYM;
+
+    // additional column of the history pages
+    public static final String COLUMN_COUNT = "count";
 
     // methods for operations on the database
 
     public static void onCreate(SQLiteDatabase database) {
         database.execSQL(TABLE_CREATION_CMD);
+        database.execSQL(NAME_INDEX_CREATION_CMD);
+        database.execSQL(IDENTITY_INDEX_CREATION_CMD);
     }
 
     public static void onUpgrade(SQLiteDatabase database, int oldVersion, int newVersion) {
-        if (oldVersion != newVersion) {
-            database.execSQL(TABLE_DELETION_CMD);
-            onCreate(database);
+        // the migrations are applied one version after the other, so that
+        // the content of the cache is kept during an upgrade
+        // version 2: no change to this table
+        if (oldVersion < 3) {
+            database.execSQL(NAME_INDEX_CREATION_CMD);
+        }
+        if (oldVersion < 4) {
+            // the key of the cached rows is computed from their name (the
+            // normalization is done in Java, once per distinct name)
+            database.execSQL(KEY_COLUMN_ADDITION_CMD);
+            Cursor cursor = database.rawQuery(NAMES_QUERY, null);
+            SQLiteStatement statement = database.compileStatement(UPDATE_KEY_CMD);
+            try {
+                while (cursor.moveToNext()) {
+                    String name = cursor.getString(0);
+                    statement.bindString(1, AcronymKey.of(name));
+                    statement.bindString(2, name);
+                    statement.executeUpdateDelete();
+                }
+            } finally {
+                statement.close();
+                cursor.close();
+            }
+            database.execSQL(KEY_INDEX_CREATION_CMD);
+        }
+        if (oldVersion < 5) {
+            // remove the duplicates inserted so far, then prevent new ones
+            // (the identity index replaces the key index)
+            database.execSQL(DUPLICATES_DELETION_CMD);
+            database.execSQL(IDENTITY_INDEX_CREATION_CMD);
+            database.execSQL(KEY_INDEX_DELETION_CMD);
+        }
+    }
+
+    // the given names, grouped in the same way as the history pages
+    // (one placeholder per name, followed by the limit = the number of names)
+    public static String makeHistoryNamesQuery(int count) {
+        StringBuilder placeholders = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            placeholders.append(i == 0 ? "?" : ", ?");
+        }
+        return makeHistoryPageQuery(COLUMN_NAME + " in (" + placeholders + ")");
+    }
+
+    // the names selected by the given condition, with their number of
+    // distinct definitions
+    private static String makeHistoryPageQuery(String nameCondition) {
+        return "select " + COLUMN_NAME + ", count(distinct " + COLUMN_DEFINITION + ") as " +
+                COLUMN_COUNT + " from " + TABLE_ACRONYM + " where " + COLUMN_NAME +
+                " in (select distinct " + COLUMN_NAME + " from " + TABLE_ACRONYM +
+                " where " + nameCondition + " limit ?)" +
+                " group by " + COLUMN_NAME + " order by " + COLUMN_NAME;
+    }
+
+    /**
+     * Compute the smallest string which is greater than all the strings
+     * starting with the given prefix, so that a prefix search can be
+     * expressed as a range: prefix <= name < upper bound.
+     *
+     * @param prefix    a non empty prefix
+     * @return          the exclusive upper bound of the range
+     */
+    public static String getPrefixUpperBound(String prefix) {
+        int last = prefix.length() - 1;
+        char c = prefix.charAt(last);
+        if (c == Character.MAX_VALUE || Character.isHighSurrogate(c) || Character.isLowSurrogate(c)) {
+            return prefix + Character.MAX_VALUE;
         }
+        return prefix.substring(0, last) + (char) (c + 1);
     }
 }
@@ -0,0 +1,67 @@
+/*
+ * Copyright (C) 2016 Tony Guyot
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.tonyguyot.acronym.database;
+
+import android.database.sqlite.SQLiteDatabase;
+
+/**
+ * Validators of the cached definitions, one row per lookup key: the ETag
+ * and Last-Modified headers of the last response of the server, or the
+ * hash of its content when the server sends neither of them.
+ */
+public class AcronymValidatorTable {
+
+    // Table name
+    public static final String TABLE_VALIDATOR = "acronym_validator";
+
+    // Column names
+    public static final String COLUMN_KEY = AcronymTable.COLUMN_KEY;
+    public static final String COLUMN_ETAG = "etag";
+    public static final String COLUMN_LAST_MODIFIED = "last_modified";
+    public static final String COLUMN_HASH = "hash";
+
+    // SQL commands
+    public static final String TABLE_CREATION_CMD =
+            "create table " + TABLE_VALIDATOR + "(" +
+            COLUMN_KEY + " text primary key, " +
+            COLUMN_ETAG + " text, " +
+            COLUMN_LAST_MODIFIED + " text, " +
+            COLUMN_HASH + " text);";
+    public static final String TABLE_DELETION_CMD =
+            "drop table if exists " + TABLE_VALIDATOR;
+    public static final String DELETE_BY_KEY_CMD =
+            "delete from " + TABLE_VALIDATOR + " where " + COLUMN_KEY + " = ?";
+
+    // SQL queries
+    // the validators of a given lookup key (lookup in the primary key)
+    public static final String LOOKUP_BY_KEY_QUERY =
+            "select " + COLUMN_ETAG + ", " + COLUMN_LAST_MODIFIED + ", " + COLUMN_HASH +
+            " from " + TABLE_VALIDATOR + " where " + COLUMN_KEY + " = ?";
+
+    // methods for operations on the database
+
+    public static void onCreate(SQLiteDatabase database) {
+        database.execSQL(TABLE_CREATION_CMD);
+    }
+
+    public static void onUpgrade(SQLiteDatabase database, int oldVersion, int newVersion) {
+        if (oldVersion < 6) {
+            // the definitions already cached have no validators: they will
+            // be fully retrieved again when they expire
+            onCreate(database);
+        }
+    }
+}
@@ -0,0 +1,263 @@
+/*
+ * Copyright (C) 2016 Tony Guyot
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.tonyguyot.acronym.operations;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Compact membership filter of the lookup keys of the cache (see AcronymKey).
+ * This is a Bloom filter: when it answers that a key is absent, the key is
+ * certainly not in the cache and the cache does not need to be queried;
+ * when it answers that a key may be present, the cache must be queried.
+ * The filter is saved in a file after each change, and read from this file
+ * on first use (it is rebuilt from the key index of the cache if the file
+ * is missing or if it is too full to be useful).
+ */
+public class AcronymBloomFilter {
+
+    // tag for logging information
+    private static final String TAG = "AcronymBloomFilter";
+
+    // name of the file, in the private directory of the application
+    private static final String FILE_NAME = "acronym_keys.bloom";
+
+    // format of the file (to be changed with the hash functions)
+    private static final int FILE_VERSION = 1;
+
+    // minimum number of keys the filter is sized for
+    private static final int MIN_CAPACITY = 1024;
+
+    // with 10 bits and 7 hash functions per key, about 1% of the absent keys
+    // are reported as possibly present (as long as the capacity is respected)
+    private static final int BITS_PER_KEY = 10;
+    private static final int HASH_COUNT = 7;
+
+    // the only instance, shared by all the cache mediators
+    private static final AcronymBloomFilter sInstance = new AcronymBloomFilter();
+
+    // the bits of the filter, and the number of keys it is sized for
+    private long[] mBits;
+    private int mCapacity;
+
+    // number of keys added since the filter has been built
+    private int mCount;
+
+    // false until the filter has been read or built
+    private boolean mIsLoaded;
+
+    // this is a singleton (the tests create their own instances)
+    AcronymBloomFilter() {
+    }
+
+    public static AcronymBloomFilter getInstance() {
+        return sInstance;
+    }
+
+    /**
+     * Check whether a lookup key may be in the cache.
+     *
+     * @param context   context used to load the filter on first use
+     * @param key       the lookup key
+     * @return          false if the key is certainly not in the cache
+     */
+    public synchronized boolean mightContain(Context context, String key) {
+        if (!mIsLoaded) {
+            load(context);
+        }
+        int bitCount = mBits.length * 64;
+        int h1 = key.hashCode();
+        int h2 = secondHash(key);
+        for (int i = 0; i < HASH_COUNT; i++) {
+            int bit = ((h1 + i * h2) & Integer.MAX_VALUE) % bitCount;
+            if ((mBits[bit >>> 6] & (1L << bit)) == 0L) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // add the keys of new cached definitions, and save the filter
+    // (no effect if the filter has not been loaded yet since the keys will
+    // be read from the cache or the file when loading)
+    public synchronized void add(Context context, Iterable<String> keys) {
+        if (!mIsLoaded) {
+            return;
+        }
+        boolean isChanged = false;
+        for (String key : keys) {
+            isChanged |= insert(key);
+        }
+        if (mCount > mCapacity) {
+            // too many false positives: rebuilt on next use, with more room
+            mIsLoaded = false;
+            new File(context.getFilesDir(), FILE_NAME).delete();
+        } else if (isChanged) {
+            save(context);
+        }
+    }
+
+    // forget all the keys (the cache is now empty)
+    public synchronized void clear(Context context) {
+        reset(MIN_CAPACITY);
+        mIsLoaded = true;
+        save(context);
+    }
+
+    // read the filter from its file, or rebuild it from the cache
+    private void load(Context context) {
+        File file = new File(context.getFilesDir(), FILE_NAME);
+        if (file.exists()) {
+            try {
+                read(file);
+                Log.d(TAG, mCount + " keys read from " + FILE_NAME);
+                return;
+            } catch (IOException e) {
+                Log.d(TAG, "Error when reading the filter: " + e.getMessage());
+            }
+        }
+        List<String> keys = new AcronymCacheMediator(context).retrieveAllKeysFromCache();
+        build(keys);
+        save(context);
+        Log.d(TAG, keys.size() + " keys loaded in the filter");
+    }
+
+    // a new filter of the given keys, with room for as many more
+    void build(List<String> keys) {
+        reset(Math.max(MIN_CAPACITY, 2 * keys.size()));
+        for (String key : keys) {
+            insert(key);
+        }
+        mIsLoaded = true;
+    }
+
+    // false if the filter must be read or built on next use
+    boolean isLoaded() {
+        return mIsLoaded;
+    }
+
+    // the number of keys the filter is sized for
+    int getCapacity() {
+        return mCapacity;
+    }
+
+    // an empty filter sized for the given number of keys
+    private void reset(int capacity) {
+        int bitCount = capacity * BITS_PER_KEY;
+        mBits = new long[(bitCount + 63) / 64];
+        mCapacity = capacity;
+        mCount = 0;
+    }
+
+    // set the bits of a key, and return true if at least one has changed
+    // (the count is an estimate: two keys may share all their bits)
+    private boolean insert(String key) {
+        int bitCount = mBits.length * 64;
+        int h1 = key.hashCode();
+        int h2 = secondHash(key);
+        boolean isChanged = false;
+        for (int i = 0; i < HASH_COUNT; i++) {
+            int bit = ((h1 + i * h2) & Integer.MAX_VALUE) % bitCount;
+            long mask = 1L << bit;
+            if ((mBits[bit >>> 6] & mask) == 0L) {
+                mBits[bit >>> 6] |= mask;
+                isChanged = true;
+            }
+        }
+        if (isChanged) {
+            mCount++;
+        }
+        return isChanged;
+    }
+
+    // FNV-1a, independent enough of String.hashCode() for double hashing
+    // (forced odd, so that the successive probes never stay on one bit)
+    static int secondHash(String key) {
+        int hash = 0x811c9dc5;
+        for (int i = 0; i < key.length(); i++) {
+            hash ^= key.charAt(i);
+            hash *= 0x01000193;
+        }
+        return hash | 1;
+    }
+
+    // the filter saved in the given file (unchanged on error)
+    void read(File file) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+        try {
+            if (in.readInt() != FILE_VERSION) {
+                throw new IOException("unknown version");
+            }
+            int capacity = in.readInt();
+            int count = in.readInt();
+            if (capacity < MIN_CAPACITY || count < 0 || count > capacity) {
+                throw new IOException("invalid header");
+            }
+            long[] bits = new long[(capacity * BITS_PER_KEY + 63) / 64];
+            for (int i = 0; i < bits.length; i++) {
+                bits[i] = in.readLong();
+            }
+            mBits = bits;
+            mCapacity = capacity;
+            mCount = count;
+            mIsLoaded = true;
+        } finally {
+            in.close();
+        }
+    }
+
+    // save the filter in the given file
+    void write(File file) throws IOException {
+        DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(file)));
+        try {
+            out.writeInt(FILE_VERSION);
+            out.writeInt(mCapacity);
+            out.writeInt(mCount);
+            for (long word : mBits) {
+                out.writeLong(word);
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    // write a temporary file, then replace the previous one: a crash while
+    // writing leaves the previous filter (or none), never a truncated one
+    private void save(Context context) {
+        File file = new File(context.getFilesDir(), FILE_NAME);
+        File temporary = new File(context.getFilesDir(), FILE_NAME + ".tmp");
+        try {
+            write(temporary);
+            if (!temporary.renameTo(file)) {
+                throw new IOException("cannot rename " + temporary);
+            }
+        } catch (IOException e) {
+            Log.d(TAG, "Error when saving the filter: " + e.getMessage());
+            file.delete(); // better no filter than an outdated one
+        }
+    }
+}
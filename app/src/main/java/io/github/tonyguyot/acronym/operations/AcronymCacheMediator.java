@@ -18,16 +18,26 @@ package io.github.tonyguyot.acronym.operations;
 import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
+import android.net.Uri;
+import android.os.Bundle;
+import android.os.CancellationSignal;
 import android.text.TextUtils;
 import android.util.Log;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 import java.util.Set;
 import java.util.TreeSet;
 
 import io.github.tonyguyot.acronym.data.Acronym;
+import io.github.tonyguyot.acronym.data.AcronymKey;
 import io.github.tonyguyot.acronym.data.AcronymList;
+import io.github.tonyguyot.acronym.data.AcronymSummary;
+import io.github.tonyguyot.acronym.data.AcronymValidators;
+import io.github.tonyguyot.acronym.data.CacheStatistics;
 import io.github.tonyguyot.acronym.provider.AcronymProvider;
 
 /**
@@ -41,6 +51,9 @@ public class AcronymCacheMediator {
     // tag for logging information
     private static final String TAG = "AcronymCacheMediator";
 
+    // returned by the freshness probe when the acronym is not in the cache
+    public static final long NOT_IN_CACHE = -1L;
+
     // the application context
     private Context mContext;
 
@@ -54,7 +67,93 @@ public class AcronymCacheMediator {
         return retrieveFromCache(null, -1L);
     }
 
+    // list the distinct names of all acronyms in the cache
+    public List<String> retrieveAllNamesFromCache() {
+        List<String> names = new ArrayList<>();
+        Cursor cursor = mContext.getContentResolver().query(
+                AcronymProvider.NAMES_URI,
+                null, // projection: always the name only
+                null, // selection: everything
+                null, // selectionArgs
+                null); // sortOrder: always alphabetical
+        if (cursor == null) {
+            Log.d(TAG, "Error when retrieving names from content provider");
+        } else {
+            while (cursor.moveToNext()) {
+                names.add(cursor.getString(0));
+            }
+            cursor.close();
+        }
+        return names;
+    }
+
+    // list the distinct lookup keys of all acronyms in the cache
+    public List<String> retrieveAllKeysFromCache() {
+        List<String> keys = new ArrayList<>();
+        Cursor cursor = mContext.getContentResolver().query(
+                AcronymProvider.KEYS_URI,
+                null, // projection: always the key only
+                null, // selection: everything
+                null, // selectionArgs
+                null); // sortOrder
+        if (cursor == null) {
+            Log.d(TAG, "Error when retrieving keys from content provider");
+        } else {
+            while (cursor.moveToNext()) {
+                keys.add(cursor.getString(0));
+            }
+            cursor.close();
+        }
+        return keys;
+    }
+
+    // true if the acronym has certainly never been cached, in which case
+    // there is no need to probe the cache; false if it may be cached
+    public boolean isCertainlyNotCached(String acronymName) {
+        return !AcronymBloomFilter.getInstance().mightContain(mContext, AcronymKey.of(acronymName));
+    }
+
+    // retrieve the insertion date of the oldest cached definition of the
+    // acronym, without reading the definitions themselves
+    // (all the spellings of the name with the same lookup key are equivalent)
+    public long probeFromCache(String acronymName) {
+        long oldestDate = NOT_IN_CACHE;
+        Cursor cursor = mContext.getContentResolver().query(
+                AcronymProvider.buildFreshnessUri(AcronymKey.of(acronymName)),
+                null, // projection: always the insertion date only
+                null, // selection: defined by the URI
+                null, // selectionArgs
+                null); // sortOrder
+        if (cursor == null) {
+            Log.d(TAG, "Error when probing data from content provider");
+        } else {
+            if (cursor.moveToFirst()) {
+                oldestDate = cursor.getLong(0);
+            }
+            cursor.close();
+        }
+        return oldestDate;
+    }
+
+    // count the definitions cached for the acronym (-1 in case of error)
+    public int countInCache(String acronymName) {
+        Cursor cursor = mContext.getContentResolver().query(
+                AcronymProvider.buildCountUri(AcronymKey.of(acronymName)),
+                null, // projection: always the count only
+                null, // selection: defined by the URI
+                null, // selectionArgs
+                null); // sortOrder: a single row
+        if (cursor == null) {
+            Log.d(TAG, "Error when counting data in content provider");
+            return -1;
+        }
+        int count = cursor.moveToFirst() ? cursor.getInt(0) : 0;
+        cursor.close();
+        return count;
+    }
+
     // search the acronym in the cache and check that it is still valid
+    // (all the spellings of the name with the same lookup key are equivalent)
     public AcronymList retrieveFromCache(String acronymName, long expirationPeriod) {
         AcronymList results = new AcronymList();
 
@@ -66,21 +165,18 @@ public class AcronymCacheMediator {
                 AcronymProvider.Metadata.COLUMN_COMMENT,
                 AcronymProvider.Metadata.COLUMN_INSERTION_DATE,
         };
-        String selection = AcronymProvider.Metadata.COLUMN_NAME + "= ?";
-        String[] selectionArgs = {
-                acronymName,
-        };
-        if (TextUtils.isEmpty(acronymName)) {
-            selection = null;
-            selectionArgs = null;
+        Uri uri = AcronymProvider.CONTENT_URI;
+        if (!TextUtils.isEmpty(acronymName)) {
+            // fast path: no selection to build and parse
+            uri = AcronymProvider.buildKeyUri(AcronymKey.of(acronymName));
         }
 
         // perform the query
         Cursor cursor = mContext.getContentResolver().query(
-                AcronymProvider.CONTENT_URI,
+                uri,
                 projection,
-                selection,
-                selectionArgs,
+                null, // selection: defined by the URI
+                null, // selectionArgs
                 null); // sortOrder
 
         // process results
@@ -128,6 +224,204 @@ public class AcronymCacheMediator {
         return results;
     }
 
+    // retrieve a page of the definitions cached for the acronym, ordered by
+    // name and definition (the same order as the pages which follow)
+    public AcronymList retrievePageFromCache(String acronymName, int offset, int limit) {
+        AcronymList results = new AcronymList();
+        Cursor cursor = mContext.getContentResolver().query(
+                AcronymProvider.buildKeyPageUri(AcronymKey.of(acronymName), offset, limit),
+                null, // projection: always name, definition, comment, date
+                null, // selection: defined by the URI
+                null, // selectionArgs
+                null); // sortOrder: always by name and definition
+        if (cursor == null) {
+            Log.d(TAG, "Error when retrieving a page from content provider");
+            results.setStatus(AcronymList.Status.STATUS_ERROR_SYSTEM);
+            return results;
+        }
+        ArrayList<Acronym> list = new ArrayList<>(cursor.getCount());
+        int nameIndex = cursor.getColumnIndex(AcronymProvider.Metadata.COLUMN_NAME);
+        int expansionIndex = cursor.getColumnIndex(AcronymProvider.Metadata.COLUMN_DEFINITION);
+        int commentIndex = cursor.getColumnIndex(AcronymProvider.Metadata.COLUMN_COMMENT);
+        while (cursor.moveToNext()) {
+            list.add(new Acronym.Builder(cursor.getString(nameIndex), cursor.getString(expansionIndex))
+                    .comment(cursor.getString(commentIndex))
+                    .create());
+        }
+        cursor.close();
+        results.setContent(list);
+        return results;
+    }
+
+    // retrieve a page of the history: the names which follow (or precede)
+    // the given one in alphabetical order, with their number of definitions
+    // (null in case of error)
+    public ArrayList<AcronymSummary> retrieveHistoryPage(String anchorName, boolean isForward,
+                                                         int pageSize) {
+        return retrieveHistory(isForward
+                ? AcronymProvider.buildHistoryPageAfterUri(anchorName, pageSize)
+                : AcronymProvider.buildHistoryPageBeforeUri(anchorName, pageSize));
+    }
+
+    // retrieve the names of the history from the given one (included)
+    // (null in case of error)
+    public ArrayList<AcronymSummary> retrieveHistoryFrom(String firstName, int count) {
+        return retrieveHistory(AcronymProvider.buildHistoryPageFromUri(firstName, count));
+    }
+
+    // retrieve the given names of the history, in alphabetical order
+    // (the names which are not in the cache any more are absent)
+    public ArrayList<AcronymSummary> retrieveHistoryOf(Collection<String> names) {
+        return retrieveHistory(AcronymProvider.buildHistoryNamesUri(names));
+    }
+
+    private ArrayList<AcronymSummary> retrieveHistory(Uri uri) {
+        Cursor cursor = mContext.getContentResolver().query(
+                uri,
+                null, // projection: always name and count
+                null, // selection: defined by the URI
+                null, // selectionArgs
+                null); // sortOrder: always by name
+
+        if (cursor == null) {
+            Log.d(TAG, "Error when retrieving history from content provider");
+            return null;
+        }
+        ArrayList<AcronymSummary> page = new ArrayList<>(cursor.getCount());
+        while (cursor.moveToNext()) {
+            page.add(new AcronymSummary(cursor.getString(0), cursor.getInt(1)));
+        }
+        cursor.close();
+        return page;
+    }
+
+    // list the digits and letters with which at least one cached name
+    // starts, in alphabetical order (one range probe of the name index
+    // per candidate, whatever the size of the cache)
+    public List<Character> retrieveSectionsFromCache() {
+        List<Character> sections = new ArrayList<>();
+        for (char c = '0'; c <= 'Z'; c = (c == '9') ? 'A' : (char) (c + 1)) {
+            if (!suggestNames(String.valueOf(c), 1, null).isEmpty()) {
+                sections.add(c);
+            }
+        }
+        return sections;
+    }
+
+    // retrieve the storage statistics of the cache, computed by the database
+    // (null in case of error)
+    public CacheStatistics retrieveStatisticsFromCache(long expirationPeriod) {
+        Cursor cursor = mContext.getContentResolver().query(
+                AcronymProvider.buildStatisticsUri(expirationPeriod),
+                null, // projection: always all the statistics
+                null, // selection: the whole cache
+                null, // selectionArgs
+                null); // sortOrder: a single row
+        if (cursor == null) {
+            Log.d(TAG, "Error when retrieving statistics from content provider");
+            return null;
+        }
+        CacheStatistics statistics = null;
+        if (cursor.moveToFirst()) {
+            statistics = new CacheStatistics.Builder(
+                    getLong(cursor, AcronymProvider.Metadata.COLUMN_DEFINITION_COUNT),
+                    getLong(cursor, AcronymProvider.Metadata.COLUMN_ACRONYM_COUNT))
+                    .textBytes(getLong(cursor, AcronymProvider.Metadata.COLUMN_TEXT_BYTES))
+                    .ageCount(CacheStatistics.AGE_DAY,
+                            getLong(cursor, AcronymProvider.Metadata.COLUMN_AGE_DAY))
+                    .ageCount(CacheStatistics.AGE_WEEK,
+                            getLong(cursor, AcronymProvider.Metadata.COLUMN_AGE_WEEK))
+                    .ageCount(CacheStatistics.AGE_MONTH,
+                            getLong(cursor, AcronymProvider.Metadata.COLUMN_AGE_MONTH))
+                    .ageCount(CacheStatistics.AGE_OLDER,
+                            getLong(cursor, AcronymProvider.Metadata.COLUMN_AGE_OLDER))
+                    .expiredCount(getLong(cursor, AcronymProvider.Metadata.COLUMN_EXPIRED_COUNT))
+                    .databaseBytes(getLong(cursor, AcronymProvider.Metadata.COLUMN_DATABASE_BYTES),
+                            getLong(cursor, AcronymProvider.Metadata.COLUMN_FREE_BYTES))
+                    .create();
+        }
+        cursor.close();
+        return statistics;
+    }
+
+    private static long getLong(Cursor cursor, String column) {
+        return cursor.getLong(cursor.getColumnIndexOrThrow(column));
+    }
+
+    // retrieve the distinct definitions of an acronym, in alphabetical order
+    // (null in case of error)
+    public ArrayList<String> retrieveDefinitionsFromCache(String acronymName) {
+        Cursor cursor = mContext.getContentResolver().query(
+                AcronymProvider.buildDefinitionsUri(acronymName),
+                null, // projection: always the definition only
+                null, // selection: defined by the URI
+                null, // selectionArgs
+                null); // sortOrder: always alphabetical
+        if (cursor == null) {
+            Log.d(TAG, "Error when retrieving definitions from content provider");
+            return null;
+        }
+        ArrayList<String> definitions = new ArrayList<>(cursor.getCount());
+        while (cursor.moveToNext()) {
+            definitions.add(cursor.getString(0));
+        }
+        cursor.close();
+        return definitions;
+    }
+
+    // search the definitions and comments containing all the given words
+    // the results are ordered by decreasing relevance
+    public AcronymList searchInCache(String terms, int limit) {
+        AcronymList results = new AcronymList();
+        Cursor cursor = mContext.getContentResolver().query(
+                AcronymProvider.buildSearchUri(terms, limit),
+                null, // projection: always name, definition, comment, score
+                null, // selection: defined by the URI
+                null, // selectionArgs
+                null); // sortOrder: always by relevance
+
+        if (cursor == null) {
+            Log.d(TAG, "Error when searching data in content provider");
+            results.setStatus(AcronymList.Status.STATUS_ERROR_SYSTEM);
+        } else {
+            Log.d(TAG, cursor.getCount() + " results found when searching: " + terms);
+            ArrayList<Acronym> list = new ArrayList<>(cursor.getCount());
+            int nameIndex = cursor.getColumnIndex(AcronymProvider.Metadata.COLUMN_NAME);
+            int expansionIndex = cursor.getColumnIndex(AcronymProvider.Metadata.COLUMN_DEFINITION);
+            int commentIndex = cursor.getColumnIndex(AcronymProvider.Metadata.COLUMN_COMMENT);
+            while (cursor.moveToNext()) {
+                list.add(new Acronym.Builder(cursor.getString(nameIndex), cursor.getString(expansionIndex))
+                        .comment(cursor.getString(commentIndex))
+                        .create());
+            }
+            cursor.close();
+            results.setContent(list);
+        }
+        return results;
+    }
+
+    // find the distinct names starting with the given prefix
+    // (the query is aborted with an OperationCanceledException if the
+    // signal is cancelled before the end)
+    public ArrayList<String> suggestNames(String prefix, int limit,
+                                          CancellationSignal cancellationSignal) {
+        ArrayList<String> names = new ArrayList<>();
+        Cursor cursor = mContext.getContentResolver().query(
+                AcronymProvider.buildSuggestUri(prefix, limit),
+                null, // projection: always the name only
+                null, // selection: defined by the URI
+                null, // selectionArgs
+                null, // sortOrder: always alphabetical
+                cancellationSignal);
+        if (cursor != null) {
+            while (cursor.moveToNext()) {
+                names.add(cursor.getString(0));
+            }
+            cursor.close();
+        }
+        return names;
+    }
+
     // remove the acronym list from the cache
     public void removeFromCache(Collection<Acronym> acronyms) {
         int deleted = 0;
@@ -147,49 +441,279 @@ public class AcronymCacheMediator {
                 AcronymProvider.CONTENT_URI,
                 null, // no selection = everything
                 null); // no selection args
+        AcronymFuzzyIndex.getInstance().clear();
+        AcronymBloomFilter.getInstance().clear(mContext);
         Log.d(TAG, deleted + " element(s) deleted from content provider");
     }
 
+    // give back at most the given number of unused pages of the cache to the
+    // file system, and return the number of pages actually reclaimed (none
+    // until the file has been converted, see convertCache)
+    public long reclaimSpaceInCache(int maxPages) {
+        Bundle result = mContext.getContentResolver().call(AcronymProvider.CONTENT_URI,
+                AcronymProvider.Metadata.METHOD_RECLAIM_SPACE, String.valueOf(maxPages), null);
+        if (result == null) {
+            return 0L;
+        }
+        long reclaimed = result.getLong(AcronymProvider.Metadata.RESULT_RECLAIMED_PAGES);
+        Log.d(TAG, reclaimed + " page(s) reclaimed from content provider, "
+                + result.getLong(AcronymProvider.Metadata.RESULT_FREE_PAGES) + " still unused");
+        return reclaimed;
+    }
+
+    // rebuild the cache file once if it has been created by a previous
+    // version, so that its unused pages can then be reclaimed a few at a
+    // time (long: only when the device is idle)
+    public void convertCache() {
+        Bundle result = mContext.getContentResolver().call(AcronymProvider.CONTENT_URI,
+                AcronymProvider.Metadata.METHOD_CONVERT, null, null);
+        if (result != null && result.getLong(AcronymProvider.Metadata.RESULT_RECLAIMED_PAGES) > 0L) {
+            Log.d(TAG, result.getLong(AcronymProvider.Metadata.RESULT_RECLAIMED_PAGES)
+                    + " page(s) reclaimed by the conversion of the cache");
+        }
+    }
+
+    // refresh the statistics used by the database to plan the queries
+    public void analyzeCache() {
+        mContext.getContentResolver().call(AcronymProvider.CONTENT_URI,
+                AcronymProvider.Metadata.METHOD_ANALYZE, null, null);
+    }
+
     // delete elements from the content provider
     private int deleteByName(String name) {
-        String[] selectionArgs = { name };
         return mContext.getContentResolver().delete(
-                AcronymProvider.CONTENT_URI,
-                AcronymProvider.Metadata.COLUMN_NAME + "= ?",
-                selectionArgs);
+                AcronymProvider.buildNameUri(name),
+                null, // selection: defined by the URI
+                null); // selectionArgs
     }
 
-    // add the acronym list to the cache
-    public void addToCache(Collection<Acronym> acronyms, boolean doDeletePrevious) {
+    // the acronym list retrieved for a given name, to be added to the cache
+    // (or to replace the previous definitions of the name), with the
+    // validators of the response of the server (if known)
+    public static class CacheWrite {
+        private final String mAcronymName;
+        private final Collection<Acronym> mAcronyms;
+        private final boolean mDoDeletePrevious;
+        private final AcronymValidators mValidators;
+
+        public CacheWrite(String acronymName, Collection<Acronym> acronyms,
+                          boolean doDeletePrevious) {
+            this(acronymName, acronyms, doDeletePrevious, null);
+        }
+
+        public CacheWrite(String acronymName, Collection<Acronym> acronyms,
+                          boolean doDeletePrevious, AcronymValidators validators) {
+            mAcronymName = acronymName;
+            mAcronyms = acronyms;
+            mDoDeletePrevious = doDeletePrevious;
+            mValidators = validators;
+        }
+
+        public String getAcronymName() {
+            return mAcronymName;
+        }
+
+        public Collection<Acronym> getAcronyms() {
+            return mAcronyms;
+        }
+
+        public boolean doDeletePrevious() {
+            return mDoDeletePrevious;
+        }
 
-        if (acronyms == null) {
+        public AcronymValidators getValidators() {
+            return mValidators;
+        }
+    }
+
+    // add the acronym list, retrieved for the given name, to the cache: the
+    // definitions are cached under the lookup key of that name, whatever the
+    // names returned by the server
+    public void addToCache(String acronymName, Collection<Acronym> acronyms,
+                           boolean doDeletePrevious) {
+        addAllToCache(Collections.singletonList(
+                new CacheWrite(acronymName, acronyms, doDeletePrevious)));
+    }
+
+    // add the acronym lists of several names to the cache, in a single
+    // transaction (when the previous definitions of a name are replaced,
+    // only the differences are written and notified)
+    public void addAllToCache(Collection<CacheWrite> writes) {
+        long now = System.currentTimeMillis();
+        ArrayList<String> keys = new ArrayList<>();
+        boolean[] replace = new boolean[writes.size()];
+        Bundle extras = new Bundle();
+        for (CacheWrite write : writes) {
+            Collection<Acronym> acronyms = write.getAcronyms();
+            if (acronyms == null || acronyms.isEmpty()) {
+                continue;
+            }
+            String key = AcronymKey.of(write.getAcronymName());
+            ContentValues[] values = new ContentValues[acronyms.size()];
+            int i = 0;
+            for (Acronym acronym : acronyms) {
+                values[i++] = makeValues(acronym, key, now);
+            }
+            extras.putParcelableArray(AcronymProvider.Metadata.EXTRA_VALUES + keys.size(), values);
+            if (write.getValidators() != null) {
+                extras.putParcelable(AcronymProvider.Metadata.EXTRA_VALIDATORS + keys.size(),
+                        makeValues(write.getValidators()));
+            }
+            replace[keys.size()] = write.doDeletePrevious();
+            keys.add(key);
+        }
+        if (keys.isEmpty()) {
             return;
         }
+        extras.putStringArrayList(AcronymProvider.Metadata.EXTRA_KEYS, keys);
+        extras.putBooleanArray(AcronymProvider.Metadata.EXTRA_REPLACE,
+                Arrays.copyOf(replace, keys.size()));
+        Bundle result = mContext.getContentResolver().call(AcronymProvider.CONTENT_URI,
+                AcronymProvider.Metadata.METHOD_WRITE, null, extras);
+
+        AcronymFuzzyIndex index = AcronymFuzzyIndex.getInstance();
+        for (CacheWrite write : writes) {
+            if (write.getAcronyms() != null) {
+                for (Acronym acronym : write.getAcronyms()) {
+                    index.add(acronym.getName());
+                }
+            }
+        }
+        AcronymBloomFilter.getInstance().add(mContext, keys);
+        if (result != null) {
+            Log.d(TAG, result.getInt(AcronymProvider.Metadata.RESULT_CHANGED_ROWS)
+                    + " element(s) changed in content provider for " + keys.size() + " name(s)");
+        }
+    }
 
-        // delete previous items
-        if (doDeletePrevious) {
-            removeFromCache(acronyms);
+    // add a batch of the definitions retrieved for the given name to the
+    // cache while the rest is still being retrieved, marked with the given
+    // date (the same for all the batches of a response; they are staged
+    // until sweepCache(), or dropped by abortIngestInCache())
+    public void ingestInCache(String acronymName, Collection<Acronym> acronyms, long mark) {
+        if (acronyms.isEmpty()) {
+            return;
+        }
+        String key = AcronymKey.of(acronymName);
+        ContentValues[] values = new ContentValues[acronyms.size()];
+        int i = 0;
+        for (Acronym acronym : acronyms) {
+            values[i++] = makeValues(acronym, key, mark);
         }
+        Bundle extras = new Bundle();
+        extras.putString(AcronymProvider.Metadata.EXTRA_KEY, key);
+        extras.putLong(AcronymProvider.Metadata.EXTRA_MARK, mark);
+        extras.putParcelableArray(AcronymProvider.Metadata.EXTRA_VALUES, values);
+        Bundle result = mContext.getContentResolver().call(AcronymProvider.CONTENT_URI,
+                AcronymProvider.Metadata.METHOD_INGEST, null, extras);
 
-        // add the new ones
+        AcronymFuzzyIndex index = AcronymFuzzyIndex.getInstance();
         for (Acronym acronym : acronyms) {
-            addElement(acronym);
+            index.add(acronym.getName());
+        }
+        AcronymBloomFilter.getInstance().add(mContext, Collections.singletonList(key));
+        if (result != null) {
+            Log.d(TAG, result.getInt(AcronymProvider.Metadata.RESULT_CHANGED_ROWS)
+                    + " element(s) changed in content provider for " + acronymName);
         }
     }
 
-    // add one element to the content provider
-    private void addElement(Acronym acronym) {
-        // create the values
+    // once all the definitions retrieved for the given name have been
+    // ingested, delete the ones which were cached before but have not been
+    // retrieved again, and store the validators of the response (if known);
+    // returns the number of definitions cached for the name (-1 on error)
+    public int sweepCache(String acronymName, long mark, AcronymValidators validators) {
+        Bundle extras = new Bundle();
+        extras.putString(AcronymProvider.Metadata.EXTRA_KEY, AcronymKey.of(acronymName));
+        extras.putLong(AcronymProvider.Metadata.EXTRA_MARK, mark);
+        extras.putBoolean(AcronymProvider.Metadata.EXTRA_SWEEP, true);
+        if (validators != null) {
+            extras.putParcelable(AcronymProvider.Metadata.EXTRA_VALIDATORS, makeValues(validators));
+        }
+        Bundle result = mContext.getContentResolver().call(AcronymProvider.CONTENT_URI,
+                AcronymProvider.Metadata.METHOD_INGEST, null, extras);
+        if (result == null) {
+            return -1;
+        }
+        Log.d(TAG, result.getInt(AcronymProvider.Metadata.RESULT_CHANGED_ROWS)
+                + " element(s) deleted from content provider for " + acronymName);
+        return result.getInt(AcronymProvider.Metadata.RESULT_COUNT);
+    }
+
+    // the definitions retrieved for the given name could not all be
+    // retrieved: delete the new ones ingested with the given date (the ones
+    // already cached keep their previous date, as if nothing was received)
+    public void abortIngestInCache(String acronymName, long mark) {
+        Bundle extras = new Bundle();
+        extras.putString(AcronymProvider.Metadata.EXTRA_KEY, AcronymKey.of(acronymName));
+        extras.putLong(AcronymProvider.Metadata.EXTRA_MARK, mark);
+        extras.putBoolean(AcronymProvider.Metadata.EXTRA_ABORT, true);
+        Bundle result = mContext.getContentResolver().call(AcronymProvider.CONTENT_URI,
+                AcronymProvider.Metadata.METHOD_INGEST, null, extras);
+        if (result != null) {
+            Log.d(TAG, result.getInt(AcronymProvider.Metadata.RESULT_CHANGED_ROWS)
+                    + " element(s) deleted from content provider for " + acronymName);
+        }
+    }
+
+    // mark all the definitions cached for the acronym as fresh, without
+    // reading them (the server has not changed them), and store the new
+    // validators; returns the number of definitions (-1 on error)
+    public int renewInCache(String acronymName, AcronymValidators validators) {
+        Bundle extras = new Bundle();
+        extras.putString(AcronymProvider.Metadata.EXTRA_KEY, AcronymKey.of(acronymName));
+        extras.putLong(AcronymProvider.Metadata.EXTRA_MARK, System.currentTimeMillis());
+        extras.putBoolean(AcronymProvider.Metadata.EXTRA_RENEW, true);
+        extras.putBoolean(AcronymProvider.Metadata.EXTRA_SWEEP, true);
+        if (validators != null) {
+            extras.putParcelable(AcronymProvider.Metadata.EXTRA_VALIDATORS, makeValues(validators));
+        }
+        Bundle result = mContext.getContentResolver().call(AcronymProvider.CONTENT_URI,
+                AcronymProvider.Metadata.METHOD_INGEST, null, extras);
+        return result == null ? -1 : result.getInt(AcronymProvider.Metadata.RESULT_COUNT);
+    }
+
+    // retrieve the validators of the cached definitions of the acronym
+    // (null if they are not known)
+    public AcronymValidators retrieveValidatorsFromCache(String acronymName) {
+        Cursor cursor = mContext.getContentResolver().query(
+                AcronymProvider.buildValidatorUri(AcronymKey.of(acronymName)),
+                null, // projection: always the validators
+                null, // selection: defined by the URI
+                null, // selectionArgs
+                null); // sortOrder: a single row
+        if (cursor == null) {
+            Log.d(TAG, "Error when retrieving validators from content provider");
+            return null;
+        }
+        AcronymValidators validators = null;
+        if (cursor.moveToFirst()) {
+            validators = new AcronymValidators(cursor.getString(0), cursor.getString(1),
+                    cursor.getString(2));
+        }
+        cursor.close();
+        return validators;
+    }
+
+    // create the values of the validators of one lookup key
+    private static ContentValues makeValues(AcronymValidators validators) {
         ContentValues values = new ContentValues();
+        values.put(AcronymProvider.Metadata.COLUMN_ETAG, validators.getETag());
+        values.put(AcronymProvider.Metadata.COLUMN_LAST_MODIFIED, validators.getLastModified());
+        values.put(AcronymProvider.Metadata.COLUMN_HASH, validators.getHash());
+        return values;
+    }
+
+    // create the values of one element of the content provider
+    private static ContentValues makeValues(Acronym acronym, String key, long insertionDate) {
+        ContentValues values = new ContentValues();
+        values.put(AcronymProvider.Metadata.COLUMN_KEY, key);
         values.put(AcronymProvider.Metadata.COLUMN_NAME, acronym.getName());
         values.put(AcronymProvider.Metadata.COLUMN_DEFINITION, acronym.getExpansion());
         if (!TextUtils.isEmpty(acronym.getComment())) {
             values.put(AcronymProvider.Metadata.COLUMN_COMMENT, acronym.getComment());
         }
-        values.put(AcronymProvider.Metadata.COLUMN_INSERTION_DATE, System.currentTimeMillis());
-
-        // insert the values
-        mContext.getContentResolver().insert(AcronymProvider.CONTENT_URI, values);
-        Log.d(TAG, "inserted " + acronym.getName() + " (" + acronym.getExpansion() + ")");
+        values.put(AcronymProvider.Metadata.COLUMN_INSERTION_DATE, insertionDate);
+        return values;
     }
 }
@@ -0,0 +1,228 @@
+/*
+ * Copyright (C) 2016 Tony Guyot
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.tonyguyot.acronym.operations;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * In-memory index of the cached acronym names, used to propose the names
+ * which are close to a mistyped one ("did you mean...?").
+ * The names are stored in a BK-tree ordered by Levenshtein distance, so a
+ * search only visits the branches which may contain close names.
+ * The index is loaded from the cache on first use, then kept up to date
+ * by the cache mediator each time a name is inserted.
+ */
+public class AcronymFuzzyIndex {
+
+    // tag for logging information
+    private static final String TAG = "AcronymFuzzyIndex";
+
+    // names shorter than this have too many neighbours to be useful
+    private static final int MIN_LENGTH = 2;
+
+    // names up to this length only tolerate a single typo
+    private static final int SHORT_LENGTH = 4;
+
+    // the only instance, shared by all the cache mediators
+    private static final AcronymFuzzyIndex sInstance = new AcronymFuzzyIndex();
+
+    // a node of the BK-tree: the children are indexed by their distance
+    // to the word of the node (a distance is at most the length of the
+    // longer name, so the array stays short; null for a leaf)
+    private static class Node {
+        final String word;
+        Node[] children;
+
+        Node(String word) {
+            this.word = word;
+        }
+
+        Node getChild(int distance) {
+            return children != null && distance < children.length ? children[distance] : null;
+        }
+
+        void putChild(int distance, Node child) {
+            if (children == null) {
+                children = new Node[distance + 1];
+            } else if (distance >= children.length) {
+                children = Arrays.copyOf(children, distance + 1);
+            }
+            children[distance] = child;
+        }
+    }
+
+    // a name found by a search, with its distance to the searched name
+    private static class Match {
+        final String word;
+        final int distance;
+
+        Match(String word, int distance) {
+            this.word = word;
+            this.distance = distance;
+        }
+    }
+
+    // closest matches first, then in alphabetical order
+    private static final Comparator<Match> MATCH_ORDER = new Comparator<Match>() {
+        @Override
+        public int compare(Match lhs, Match rhs) {
+            if (lhs.distance != rhs.distance) {
+                return lhs.distance < rhs.distance ? -1 : 1;
+            }
+            return lhs.word.compareTo(rhs.word);
+        }
+    };
+
+    // root of the tree (null when empty)
+    private Node mRoot;
+
+    // false until the names have been loaded from the cache
+    private boolean mIsLoaded;
+
+    // this is a singleton (the tests create their own instances)
+    AcronymFuzzyIndex() {
+    }
+
+    public static AcronymFuzzyIndex getInstance() {
+        return sInstance;
+    }
+
+    // add a new name in the index (no effect if already present, or if
+    // the index has not been loaded yet since the name will be read
+    // from the cache when loading)
+    public synchronized void add(String name) {
+        if (mIsLoaded && name != null) {
+            insert(name);
+        }
+    }
+
+    // forget all the names (the cache is now empty)
+    public synchronized void clear() {
+        mRoot = null;
+        mIsLoaded = true;
+    }
+
+    /**
+     * Find the cached names which are close to the given one.
+     *
+     * @param context       context used to load the index on first use
+     * @param name          the (possibly mistyped) name
+     * @param maxResults    the maximum number of names to return
+     * @return              the close names, closest first (never the name itself)
+     */
+    public synchronized List<String> findClosest(Context context, String name, int maxResults) {
+        List<String> results = new ArrayList<>();
+        if (name == null || name.length() < MIN_LENGTH) {
+            return results;
+        }
+        if (!mIsLoaded) {
+            load(context);
+        }
+        if (mRoot == null) {
+            return results;
+        }
+
+        // search the tree
+        int maxDistance = name.length() <= SHORT_LENGTH ? 1 : 2;
+        List<Match> matches = new ArrayList<>();
+        List<Node> toVisit = new ArrayList<>();
+        toVisit.add(mRoot);
+        while (!toVisit.isEmpty()) {
+            Node node = toVisit.remove(toVisit.size() - 1);
+            int distance = distance(name, node.word);
+            if (distance > 0 && distance <= maxDistance) {
+                matches.add(new Match(node.word, distance));
+            }
+            // triangle inequality: only the children whose distance to this
+            // node is in [distance - max, distance + max] may be close enough
+            if (node.children != null) {
+                int last = Math.min(distance + maxDistance, node.children.length - 1);
+                for (int key = Math.max(1, distance - maxDistance); key <= last; key++) {
+                    if (node.children[key] != null) {
+                        toVisit.add(node.children[key]);
+                    }
+                }
+            }
+        }
+
+        Collections.sort(matches, MATCH_ORDER);
+        for (int i = 0; i < matches.size() && i < maxResults; i++) {
+            results.add(matches.get(i).word);
+        }
+        return results;
+    }
+
+    // read all the names from the cache
+    private void load(Context context) {
+        AcronymCacheMediator cache = new AcronymCacheMediator(context);
+        List<String> names = cache.retrieveAllNamesFromCache();
+        for (String name : names) {
+            insert(name);
+        }
+        mIsLoaded = true;
+        Log.d(TAG, names.size() + " names loaded in the index");
+    }
+
+    // insert a name in the tree
+    private void insert(String name) {
+        if (mRoot == null) {
+            mRoot = new Node(name);
+            return;
+        }
+        Node node = mRoot;
+        while (true) {
+            int distance = distance(name, node.word);
+            if (distance == 0) {
+                return; // already present
+            }
+            Node child = node.getChild(distance);
+            if (child == null) {
+                node.putChild(distance, new Node(name));
+                return;
+            }
+            node = child;
+        }
+    }
+
+    // Levenshtein distance between two strings
+    static int distance(String a, String b) {
+        int[] previous = new int[b.length() + 1];
+        int[] current = new int[b.length() + 1];
+        for (int j = 0; j <= b.length(); j++) {
+            previous[j] = j;
+        }
+        for (int i = 1; i <= a.length(); i++) {
+            current[0] = i;
+            char ca = a.charAt(i - 1);
+            for (int j = 1; j <= b.length(); j++) {
+                int cost = (ca == b.charAt(j - 1)) ? 0 : 1;
+                current[j] = Math.min(Math.min(current[j - 1] + 1, previous[j] + 1),
+                        previous[j - 1] + cost);
+            }
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+        return previous[b.length()];
+    }
+}
@@ -0,0 +1,400 @@
+/*
+ * Copyright (C) 2016 Tony Guyot
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.tonyguyot.acronym.operations;
+
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import io.github.tonyguyot.acronym.data.Acronym;
+import io.github.tonyguyot.acronym.data.AcronymList;
+import io.github.tonyguyot.acronym.data.AcronymValidators;
+
+/**
+ * Source of definitions which queries several other sources (mirrors of the
+ * server, other dictionaries...), given in order of preference.
+ * By default, the first source is queried, and the next one is only queried
+ * if the previous ones fail, or if they are slower than usual: the backup
+ * request is sent when the usual response time of the previous source has
+ * elapsed (hedged requests). The first complete answer is used.
+ * In merge mode, all the sources are queried at once, and the definitions
+ * they return before the deadline are merged (without duplicates).
+ * While the definitions are retrieved, only the first source which gives
+ * some of them to the listener keeps giving them, and its answer is the one
+ * used: no backup request is sent after that (in merge mode, the merged list
+ * is given to the listener at the end).
+ * The health of each source is tracked: a source which keeps failing is
+ * skipped for a while (a source which only has no definition to give, such
+ * as the stale cache, see AcronymStaleCacheSource, is not failing).
+ */
+public class AcronymHedgedSource implements AcronymSource {
+
+    // tag for logging information
+    private static final String TAG = "AcronymHedgedSource";
+
+    // number of response times kept for each source
+    private static final int LATENCY_SAMPLES = 64;
+
+    // the backup request is sent when this share of the responses of the
+    // previous source would have been received
+    private static final int HEDGE_PERCENTILE = 95;
+
+    // bounds of the delay before a backup request (in milliseconds), and
+    // the delay used until enough response times are known
+    private static final long MIN_HEDGE_DELAY = 50L;
+    private static final long DEFAULT_HEDGE_DELAY = 1000L;
+    private static final int MIN_LATENCY_SAMPLES = 8;
+
+    // after this number of consecutive failures, a source is skipped for
+    // the given period (then tried again, once, before being skipped again)
+    private static final int MAX_FAILURES = 3;
+    private static final long QUARANTINE_PERIOD = 30 * 1000L; // 30 seconds
+
+    // the sources, in order of preference
+    private final List<Member> mMembers = new ArrayList<>();
+
+    // maximum time to wait for the answers (in milliseconds)
+    private final long mDeadline;
+
+    // true to merge the answers of all the sources
+    private final boolean mDoMerge;
+
+    // runs the requests (the threads stop when they are idle)
+    private final ExecutorService mExecutor = Executors.newCachedThreadPool();
+
+    public AcronymHedgedSource(List<AcronymSource> sources, long deadline, boolean doMerge) {
+        for (AcronymSource source : sources) {
+            mMembers.add(new Member(source));
+        }
+        mDeadline = deadline;
+        mDoMerge = doMerge;
+    }
+
+    public AcronymHedgedSource(long deadline, boolean doMerge, AcronymSource... sources) {
+        this(Arrays.asList(sources), deadline, doMerge);
+    }
+
+    @Override
+    public AcronymList retrieve(String acronymName, AcronymValidators conditional,
+                                AcronymListener listener) {
+        List<Member> candidates = getCandidates();
+        if (candidates.size() == 1) {
+            // nothing to hedge or to merge: no need for another thread
+            return candidates.get(0).retrieve(acronymName, conditional, listener).mList;
+        }
+        try {
+            return mDoMerge
+                    ? retrieveMerged(candidates, acronymName, listener)
+                    : retrieveFirst(candidates, acronymName, conditional, listener);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            AcronymList response = new AcronymList();
+            response.setStatus(AcronymList.Status.STATUS_ERROR_NETWORK);
+            return response;
+        }
+    }
+
+    // the sources which are not skipped (all of them if they are all
+    // skipped: trying is better than failing right away)
+    private List<Member> getCandidates() {
+        long now = System.currentTimeMillis();
+        List<Member> candidates = new ArrayList<>();
+        for (Member member : mMembers) {
+            if (member.isAvailable(now)) {
+                candidates.add(member);
+            }
+        }
+        return candidates.isEmpty() ? mMembers : candidates;
+    }
+
+    // query the sources one after the other, without waiting for the
+    // previous ones to answer if they are slow, until one of them answers
+    private AcronymList retrieveFirst(List<Member> candidates, String acronymName,
+                                      AcronymValidators conditional, AcronymListener listener)
+            throws InterruptedException {
+        CompletionService<Answer> requests = new ExecutorCompletionService<>(mExecutor);
+        AtomicReference<Member> speaker = new AtomicReference<>();
+        long deadline = System.currentTimeMillis() + mDeadline;
+        int launched = 0;
+        int pending = 0;
+        AcronymList failure = null;
+        while (true) {
+            // send the next request (first one, backup, or retry after a
+            // failure), unless a source has started to give definitions
+            Member next = candidates.get(launched++);
+            requests.submit(next.request(acronymName, conditional,
+                    filter(listener, speaker, next)));
+            pending++;
+
+            // then wait for an answer, until the next request is due
+            long delay = next.getHedgeDelay();
+            boolean isNextDue = false;
+            while (pending > 0 && !isNextDue) {
+                long now = System.currentTimeMillis();
+                if (now >= deadline) {
+                    Log.d(TAG, acronymName + ": no answer before the deadline");
+                    return failure != null ? failure : timeout();
+                }
+                boolean canLaunch = launched < candidates.size() && speaker.get() == null;
+                long wait = deadline - now;
+                if (canLaunch) {
+                    wait = Math.min(wait, delay);
+                }
+                Future<Answer> done = requests.poll(wait, TimeUnit.MILLISECONDS);
+                if (done == null) {
+                    isNextDue = canLaunch && speaker.get() == null;
+                    continue;
+                }
+                pending--;
+                Answer answer = get(done);
+                if (listener != null && !isHeard(speaker, answer)) {
+                    // another source has given some definitions already:
+                    // only its answer matches what the listener has received
+                    if (pending == 0) {
+                        return answer.mList; // nothing else to wait for
+                    }
+                    continue;
+                }
+                if (answer.isSuccess()) {
+                    if (launched > 1) {
+                        Log.d(TAG, acronymName + ": answered by source #"
+                                + mMembers.indexOf(answer.mMember));
+                    }
+                    return answer.mList;
+                }
+                failure = answer.mList;
+                if (listener != null && speaker.get() == answer.mMember) {
+                    return failure; // failed after giving some definitions
+                }
+                isNextDue = launched < candidates.size() && speaker.get() == null;
+            }
+            if (!isNextDue) {
+                return failure; // all the sources have failed
+            }
+        }
+    }
+
+    // query all the sources at once and merge their definitions
+    // (unconditionally: the validators of one source do not apply to the
+    // merged list); the merged list is held in memory, and given to the
+    // listener (if not null) at the end
+    private AcronymList retrieveMerged(List<Member> candidates, String acronymName,
+                                       AcronymListener listener)
+            throws InterruptedException {
+        CompletionService<Answer> requests = new ExecutorCompletionService<>(mExecutor);
+        for (Member member : candidates) {
+            requests.submit(member.request(acronymName, null, null));
+        }
+        long deadline = System.currentTimeMillis() + mDeadline;
+        Map<String, Acronym> merged = new LinkedHashMap<>();
+        boolean isAnswered = false;
+        AcronymList failure = null;
+        for (int pending = candidates.size(); pending > 0; pending--) {
+            long wait = deadline - System.currentTimeMillis();
+            Future<Answer> done = wait > 0 ? requests.poll(wait, TimeUnit.MILLISECONDS) : null;
+            if (done == null) {
+                Log.d(TAG, acronymName + ": " + pending + " source(s) too slow");
+                break;
+            }
+            Answer answer = get(done);
+            if (answer.isSuccess() && answer.mList.getContent() != null) {
+                isAnswered = true;
+                for (Acronym acronym : answer.mList.getContent()) {
+                    String identity = acronym.getName() + '\n' + acronym.getExpansion();
+                    if (!merged.containsKey(identity)) {
+                        merged.put(identity, acronym);
+                    }
+                }
+            } else {
+                failure = answer.mList;
+            }
+        }
+        if (!isAnswered) {
+            return failure != null ? failure : timeout();
+        }
+        AcronymList response = new AcronymList();
+        if (listener != null) {
+            for (Acronym acronym : merged.values()) {
+                listener.onAcronym(acronym);
+            }
+        } else {
+            response.setContent(new ArrayList<>(merged.values()));
+        }
+        return response;
+    }
+
+    // true if the answer comes from the source heard by the listener, or
+    // if no source has been heard yet (the source of a successful answer
+    // is then the one heard: it may have had no definition to give)
+    private static boolean isHeard(AtomicReference<Member> speaker, Answer answer) {
+        if (answer.isSuccess()) {
+            speaker.compareAndSet(null, answer.mMember);
+        }
+        Member heard = speaker.get();
+        return heard == null || heard == answer.mMember;
+    }
+
+    // the listener of the requests to a member: only the first member which
+    // calls it is heard (null if there is no listener)
+    private static AcronymListener filter(final AcronymListener listener,
+                                          final AtomicReference<Member> speaker,
+                                          final Member member) {
+        if (listener == null) {
+            return null;
+        }
+        return new AcronymListener() {
+            @Override
+            public void onAcronym(Acronym acronym) {
+                if (speaker.compareAndSet(null, member) || speaker.get() == member) {
+                    listener.onAcronym(acronym);
+                }
+            }
+        };
+    }
+
+    private static Answer get(Future<Answer> done) {
+        try {
+            return done.get();
+        } catch (InterruptedException | ExecutionException e) {
+            throw new IllegalStateException(e); // the future is done, and never throws
+        }
+    }
+
+    private static AcronymList timeout() {
+        AcronymList response = new AcronymList();
+        response.setStatus(AcronymList.Status.STATUS_ERROR_NETWORK);
+        return response;
+    }
+
+    // the answer of one source
+    private static class Answer {
+        final Member mMember;
+        final AcronymList mList;
+
+        Answer(Member member, AcronymList list) {
+            mMember = member;
+            mList = list;
+        }
+
+        boolean isSuccess() {
+            return mList.getStatus() == AcronymList.Status.STATUS_OK
+                    || mList.getStatus() == AcronymList.Status.STATUS_NOT_MODIFIED
+                    || mList.getStatus() == AcronymList.Status.STATUS_STALE;
+        }
+
+        // true if the source could not be reached, or did not answer
+        // properly (rather than having no answer to give)
+        boolean isFailure() {
+            switch (mList.getStatus()) {
+                case AcronymList.Status.STATUS_ERROR_NETWORK:
+                case AcronymList.Status.STATUS_ERROR_COMMUNICATION:
+                case AcronymList.Status.STATUS_ERROR_SYSTEM:
+                case AcronymList.Status.STATUS_ERROR_PARSING:
+                    return true;
+                default:
+                    return false;
+            }
+        }
+    }
+
+    // one source, and its health
+    private static class Member {
+        final AcronymSource mSource;
+
+        // the last response times (in milliseconds), in a circular buffer
+        private final long[] mLatencies = new long[LATENCY_SAMPLES];
+        private int mLatencyCount;
+
+        // number of failures since the last success, and end of the
+        // period during which the source is skipped
+        private int mFailureCount;
+        private long mRetryDate;
+
+        Member(AcronymSource source) {
+            mSource = source;
+        }
+
+        // query the source, and record the outcome (the outcome of the
+        // requests which have been overtaken is recorded as well)
+        Answer retrieve(String acronymName, AcronymValidators conditional,
+                        AcronymListener listener) {
+            long start = System.currentTimeMillis();
+            Answer answer = new Answer(this,
+                    mSource.retrieve(acronymName, conditional, listener));
+            if (answer.isSuccess()) {
+                recordSuccess(System.currentTimeMillis() - start);
+            } else if (answer.isFailure()) {
+                recordFailure();
+            }
+            return answer;
+        }
+
+        Callable<Answer> request(final String acronymName, final AcronymValidators conditional,
+                                 final AcronymListener listener) {
+            return new Callable<Answer>() {
+                @Override
+                public Answer call() {
+                    return retrieve(acronymName, conditional, listener);
+                }
+            };
+        }
+
+        synchronized boolean isAvailable(long now) {
+            return mFailureCount < MAX_FAILURES || now >= mRetryDate;
+        }
+
+        // the delay after which a backup of a request to this source is sent
+        synchronized long getHedgeDelay() {
+            int count = Math.min(mLatencyCount, LATENCY_SAMPLES);
+            if (count < MIN_LATENCY_SAMPLES) {
+                return DEFAULT_HEDGE_DELAY;
+            }
+            long[] sorted = Arrays.copyOf(mLatencies, count);
+            Arrays.sort(sorted);
+            int index = Math.max(0, (count * HEDGE_PERCENTILE + 99) / 100 - 1);
+            return Math.max(MIN_HEDGE_DELAY, sorted[index]);
+        }
+
+        private synchronized void recordSuccess(long latency) {
+            mLatencies[mLatencyCount++ % LATENCY_SAMPLES] = latency;
+            if (mLatencyCount == 2 * LATENCY_SAMPLES) {
+                mLatencyCount = LATENCY_SAMPLES; // keeps the same position
+            }
+            mFailureCount = 0;
+        }
+
+        private synchronized void recordFailure() {
+            mFailureCount++;
+            if (mFailureCount >= MAX_FAILURES) {
+                mRetryDate = System.currentTimeMillis() + QUARANTINE_PERIOD;
+                Log.d(TAG, mSource + ": skipped after " + mFailureCount + " failures");
+            }
+        }
+    }
+}
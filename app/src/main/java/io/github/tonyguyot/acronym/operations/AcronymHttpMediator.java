@@ -20,18 +20,34 @@ import android.util.Log;
 import org.xmlpull.v1.XmlPullParserException;
 
 import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.HttpURLConnection;
 import java.net.URL;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
 
 import io.github.tonyguyot.acronym.data.AcronymList;
+import io.github.tonyguyot.acronym.data.AcronymValidators;
 
 /**
  * This class provides the actual HTTP-related actions
  * which are possible on an acronym.
+ * The responses are requested compressed, and decompressed while they are
+ * parsed. The connections are kept alive between the lookups: the responses
+ * are always read to the end and closed, never disconnected, so that the
+ * connection can be reused by the next request to the server.
+ * The expired definitions are revalidated with conditional requests, so
+ * that the server does not send them again when they have not changed.
  */
-public class AcronymHttpMediator {
+public class AcronymHttpMediator implements AcronymSource {
 
     // Tag for logging information
     private static final String TAG = "AcronymMediator";
@@ -39,18 +55,123 @@ public class AcronymHttpMediator {
     // Url of the acronym server
     public static final String SILMARIL_SERVER = "http://acronyms.silmaril.ie/cgi-bin/xaa?";
 
+    // content encodings understood by the decoder below (setting this header
+    // also disables the transparent decompression of HttpURLConnection,
+    // which would hide the size of the compressed response)
+    private static final String ACCEPTED_ENCODINGS = "gzip, deflate";
+
+    // size of the buffer used to read the end of a response
+    private static final int DRAIN_BUFFER_SIZE = 4096;
+
+    // Url of the server actually queried (the name of the acronym is
+    // appended to it)
+    private final String mServerUrl;
+
+    // totals since the start of the application: number of requests, bytes
+    // received from the network, and bytes after decompression
+    private static final AtomicLong sRequestCount = new AtomicLong();
+    private static final AtomicLong sReceivedBytes = new AtomicLong();
+    private static final AtomicLong sDecodedBytes = new AtomicLong();
+
+    public AcronymHttpMediator() {
+        this(SILMARIL_SERVER);
+    }
+
+    // query another server with the same protocol (e.g. a local stand-in)
+    public AcronymHttpMediator(String serverUrl) {
+        mServerUrl = serverUrl;
+    }
+
+    @Override
+    public AcronymList retrieve(String acronymName, AcronymValidators conditional,
+                                AcronymListener listener) {
+        return retrieveFromServer(acronymName, conditional, listener);
+    }
+
     // connect to the server to retrieve the list of definitions for the
     // given acronym
     public AcronymList retrieveFromServer(String acronym) {
+        return retrieveFromServer(acronym, null, null);
+    }
+
+    // same, but only if the definitions have changed since they have been
+    // retrieved with the given validators (if not null): otherwise the
+    // status of the response is STATUS_NOT_MODIFIED, without content
+    // (if the listener is not null, the definitions are given to it while
+    // the response is parsed, instead of being collected in the content:
+    // the response is then never kept in memory as a whole)
+    public AcronymList retrieveFromServer(String acronym, AcronymValidators conditional,
+                                          AcronymListener listener) {
         AcronymList response = new AcronymList();
         try {
-            final URL url = new URL(SILMARIL_SERVER + acronym);
+            final URL url = new URL(mServerUrl + acronym);
             Log.d(TAG, "fetching " + url.toString());
             HttpURLConnection conn = (HttpURLConnection) url.openConnection();
+            conn.setRequestProperty("Accept-Encoding", ACCEPTED_ENCODINGS);
+            if (conditional != null && conditional.getETag() != null) {
+                conn.setRequestProperty("If-None-Match", conditional.getETag());
+            }
+            if (conditional != null && conditional.getLastModified() != null) {
+                conn.setRequestProperty("If-Modified-Since", conditional.getLastModified());
+            }
+            CountingInputStream received = null;
+            CountingInputStream decoded = null;
             try {
                 response.setAdditionalStatus(conn.getResponseCode());
-                InputStream in = new BufferedInputStream(conn.getInputStream());
-                response.setContent(AcronymXmlParser.parse(in));
+                String eTag = conn.getHeaderField("ETag");
+                String lastModified = conn.getHeaderField("Last-Modified");
+                received = new CountingInputStream(conn.getInputStream());
+                if (conn.getResponseCode() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                    // empty response: the cached definitions are still valid
+                    Log.d(TAG, acronym + ": not modified");
+                    response.setStatus(AcronymList.Status.STATUS_NOT_MODIFIED);
+                    response.setValidators(eTag != null || lastModified != null
+                            ? new AcronymValidators(eTag, lastModified, null) : conditional);
+                    return response;
+                }
+                decoded = new CountingInputStream(decode(received, conn.getContentEncoding()));
+                if (listener != null) {
+                    // the definitions are streamed to the listener: hash the
+                    // content while it is parsed when the server gives no
+                    // validator (the listener has received the definitions
+                    // anyway, but an unchanged hash is still reported, so
+                    // that they are only renewed in the cache)
+                    MessageDigest digest = eTag == null && lastModified == null
+                            ? newDigest() : null;
+                    InputStream in = digest != null
+                            ? new DigestInputStream(decoded, digest) : decoded;
+                    int count = AcronymXmlParser.parse(new BufferedInputStream(in), listener);
+                    Log.d(TAG, acronym + ": " + count + " definitions streamed");
+                    if (digest != null) {
+                        drainTo(in); // the hash must cover the whole response
+                        String hash = toHex(digest.digest());
+                        if (conditional != null && hash.equals(conditional.getHash())) {
+                            Log.d(TAG, acronym + ": same content");
+                            response.setStatus(AcronymList.Status.STATUS_NOT_MODIFIED);
+                        }
+                        response.setValidators(new AcronymValidators(null, null, hash));
+                    } else {
+                        response.setValidators(new AcronymValidators(eTag, lastModified, null));
+                    }
+                } else if (eTag != null || lastModified != null) {
+                    // the server validates the next requests itself
+                    response.setContent(AcronymXmlParser.parse(new BufferedInputStream(decoded)));
+                    response.setValidators(new AcronymValidators(eTag, lastModified, null));
+                } else {
+                    // no validator: compare a hash of the content with the
+                    // previous one, to avoid parsing and rewriting the same
+                    // definitions (the content is read first to be hashed)
+                    byte[] content = readAll(decoded);
+                    String hash = hash(content);
+                    if (conditional != null && hash.equals(conditional.getHash())) {
+                        Log.d(TAG, acronym + ": same content");
+                        response.setStatus(AcronymList.Status.STATUS_NOT_MODIFIED);
+                    } else {
+                        response.setContent(AcronymXmlParser.parse(
+                                new ByteArrayInputStream(content)));
+                    }
+                    response.setValidators(new AcronymValidators(null, null, hash));
+                }
             } catch (XmlPullParserException e) {
                 Log.d(TAG, "Error: cannot parse XML response.");
                 response.setStatus(AcronymList.Status.STATUS_ERROR_PARSING);
@@ -58,7 +179,14 @@ public class AcronymHttpMediator {
                 Log.d(TAG, "Error: did not receive response from server.");
                 response.setStatus(AcronymList.Status.STATUS_ERROR_COMMUNICATION);
             } finally {
-                conn.disconnect();
+                // give the connection back (or close it if it is unusable)
+                // (through the decoder, to count the whole decoded size)
+                InputStream rest = decoded != null ? decoded
+                        : received != null ? received : conn.getErrorStream();
+                if (rest == null || !drain(rest)) {
+                    conn.disconnect();
+                }
+                account(acronym, received, decoded);
             }
 
         } catch (IOException e) {
@@ -67,4 +195,112 @@ public class AcronymHttpMediator {
         }
         return response;
     }
+
+    @Override
+    public String toString() {
+        return mServerUrl;
+    }
+
+    // number of requests sent to the server
+    public static long getRequestCount() {
+        return sRequestCount.get();
+    }
+
+    // number of bytes received from the server (compressed)
+    public static long getReceivedBytes() {
+        return sReceivedBytes.get();
+    }
+
+    // number of bytes of the responses, once decompressed
+    public static long getDecodedBytes() {
+        return sDecodedBytes.get();
+    }
+
+    // decompress the response while it is read, according to its encoding
+    private static InputStream decode(InputStream in, String encoding) throws IOException {
+        if ("gzip".equalsIgnoreCase(encoding)) {
+            return new GZIPInputStream(in);
+        }
+        if ("deflate".equalsIgnoreCase(encoding)) {
+            // normally zlib-wrapped, but some servers send raw deflate data:
+            // look at the zlib header to know
+            BufferedInputStream buffered = new BufferedInputStream(in);
+            buffered.mark(2);
+            int cmf = buffered.read();
+            int flg = buffered.read();
+            buffered.reset();
+            boolean isZlib = cmf != -1 && flg != -1
+                    && (cmf & 0x0f) == 8 && ((cmf << 8) | flg) % 31 == 0;
+            return new InflaterInputStream(buffered, new Inflater(!isZlib));
+        }
+        return in; // identity
+    }
+
+    // read a whole response
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[DRAIN_BUFFER_SIZE];
+        int n;
+        while ((n = in.read(buffer)) != -1) {
+            out.write(buffer, 0, n);
+        }
+        return out.toByteArray();
+    }
+
+    // read the end of a response without keeping it
+    private static void drainTo(InputStream in) throws IOException {
+        byte[] buffer = new byte[DRAIN_BUFFER_SIZE];
+        while (in.read(buffer) != -1) {
+            // discard
+        }
+    }
+
+    // SHA-1 of a response, in hexadecimal
+    private static String hash(byte[] content) {
+        return toHex(newDigest().digest(content));
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e); // always available on Android
+        }
+    }
+
+    private static String toHex(byte[] digest) {
+        StringBuilder hex = new StringBuilder(2 * digest.length);
+        for (byte b : digest) {
+            hex.append(Character.forDigit((b >> 4) & 0x0f, 16));
+            hex.append(Character.forDigit(b & 0x0f, 16));
+        }
+        return hex.toString();
+    }
+
+    // read the end of a response and close it, so that its connection can
+    // be reused (returns false if the connection must be closed instead)
+    private static boolean drain(InputStream in) {
+        try {
+            byte[] buffer = new byte[DRAIN_BUFFER_SIZE];
+            while (in.read(buffer) != -1) {
+                // discard
+            }
+            in.close();
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    // record the size of a response
+    private static void account(String acronym, CountingInputStream received,
+                                CountingInputStream decoded) {
+        long receivedBytes = received != null ? received.getCount() : 0L;
+        long decodedBytes = decoded != null ? decoded.getCount() : 0L;
+        sRequestCount.incrementAndGet();
+        sReceivedBytes.addAndGet(receivedBytes);
+        sDecodedBytes.addAndGet(decodedBytes);
+        Log.d(TAG, acronym + ": " + receivedBytes + " bytes received, "
+                + decodedBytes + " bytes decoded");
+    }
 }
@@ -0,0 +1,28 @@
+/*
+ * Copyright (C) 2016 Tony Guyot
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.tonyguyot.acronym.operations;
+
+import io.github.tonyguyot.acronym.data.Acronym;
+
+/**
+ * Receives the definitions of a response one at a time, as soon as each one
+ * has been parsed (while the rest of the response is still downloading).
+ * Called from the thread reading the response.
+ */
+public interface AcronymListener {
+
+    void onAcronym(Acronym acronym);
+}
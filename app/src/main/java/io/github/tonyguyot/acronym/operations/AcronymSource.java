@@ -0,0 +1,50 @@
+/*
+ * Copyright (C) 2016 Tony Guyot
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.tonyguyot.acronym.operations;
+
+import io.github.tonyguyot.acronym.data.AcronymList;
+import io.github.tonyguyot.acronym.data.AcronymValidators;
+
+/**
+ * A source of acronym definitions: the Silmaril server in the application
+ * (see AcronymHttpMediator), backed by the expired content of the cache
+ * (see AcronymStaleCacheSource), or a stand-in server in the tests and the
+ * benchmarks. The implementations are called from the background thread of
+ * the service, and must be thread-safe.
+ */
+public interface AcronymSource {
+
+    /**
+     * Retrieve the definitions of an acronym.
+     *
+     * @param acronymName   the name to look up
+     * @param conditional   the validators of the cached definitions, or null
+     *                      to retrieve the definitions unconditionally
+     * @param listener      receives the definitions while they are retrieved
+     *                      (may be null); they are then given to it only, and
+     *                      not returned, so that the whole list never has to
+     *                      be held in memory
+     * @return              the definitions (or, with a listener, no content
+     *                      with the status STATUS_OK), or no content with the
+     *                      status STATUS_NOT_MODIFIED if the cached
+     *                      definitions are still valid (a listener may have
+     *                      received them again before this is known), or
+     *                      STATUS_STALE if the expired cached definitions are
+     *                      to be used as they are, or an error status
+     */
+    AcronymList retrieve(String acronymName, AcronymValidators conditional,
+                         AcronymListener listener);
+}
@@ -0,0 +1,59 @@
+/*
+ * Copyright (C) 2016 Tony Guyot
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.tonyguyot.acronym.operations;
+
+import android.content.Context;
+
+import io.github.tonyguyot.acronym.data.AcronymList;
+import io.github.tonyguyot.acronym.data.AcronymValidators;
+
+/**
+ * Last resort source of definitions: the expired definitions still in the
+ * cache. It is the backup of the servers (see AcronymHedgedSource) when
+ * they fail or are slower than usual; its answer only tells that the
+ * cached definitions are to be used as they are (STATUS_STALE), so that
+ * they are not renewed, and the servers are asked again on the next lookup.
+ * An acronym which is not in the cache is answered with STATUS_ERROR_OTHER.
+ */
+public class AcronymStaleCacheSource implements AcronymSource {
+
+    private final Context mContext;
+
+    public AcronymStaleCacheSource(Context context) {
+        mContext = context.getApplicationContext();
+    }
+
+    @Override
+    public AcronymList retrieve(String acronymName, AcronymValidators conditional,
+                                AcronymListener listener) {
+        // the definitions are never given to the listener: they are already
+        // in the cache
+        AcronymCacheMediator cache = new AcronymCacheMediator(mContext);
+        AcronymList response = new AcronymList();
+        if (!cache.isCertainlyNotCached(acronymName)
+                && cache.probeFromCache(acronymName) != AcronymCacheMediator.NOT_IN_CACHE) {
+            response.setStatus(AcronymList.Status.STATUS_STALE);
+        } else {
+            response.setStatus(AcronymList.Status.STATUS_ERROR_OTHER);
+        }
+        return response;
+    }
+
+    @Override
+    public String toString() {
+        return "stale cache";
+    }
+}
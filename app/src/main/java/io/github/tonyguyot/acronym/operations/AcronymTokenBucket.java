@@ -0,0 +1,92 @@
+/*
+ * Copyright (C) 2016 Tony Guyot
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.tonyguyot.acronym.operations;
+
+/**
+ * Token bucket limiting the rate of the requests sent to a server: the
+ * bucket is refilled at a constant rate, up to its capacity (the largest
+ * burst allowed), and each request takes one token.
+ * A part of the tokens may be reserved: the requests which can wait (such as
+ * the prefetches) only take a token when more than the reserve is left, so
+ * that they never delay the requests of the user.
+ */
+public class AcronymTokenBucket {
+
+    // tokens added per second, and maximum number of tokens
+    private final double mRate;
+    private final int mCapacity;
+
+    // current number of tokens (fractional between two refills), and date
+    // of the last refill (in nanoseconds)
+    private double mTokens;
+    private long mRefillDate;
+
+    public AcronymTokenBucket(double rate, int capacity) {
+        mRate = rate;
+        mCapacity = capacity;
+        mTokens = capacity;
+        mRefillDate = System.nanoTime();
+    }
+
+    /**
+     * Take a token if one is available, leaving at least the reserve.
+     *
+     * @param reserve   number of tokens which must be left in the bucket
+     * @return          true if a token has been taken
+     */
+    public synchronized boolean tryAcquire(int reserve) {
+        refill();
+        if (mTokens >= reserve + 1) {
+            mTokens -= 1;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Take a token, waiting for one if needed.
+     *
+     * @param maxWait   maximum time to wait (in milliseconds)
+     * @return          true if a token has been taken, false if none has been
+     *                  available in time (or if the thread is interrupted)
+     */
+    public synchronized boolean acquire(long maxWait) {
+        long deadline = System.nanoTime() + maxWait * 1000000L;
+        refill();
+        while (mTokens < 1) {
+            long missing = (long) Math.ceil((1 - mTokens) / mRate * 1000.0);
+            long left = (deadline - System.nanoTime()) / 1000000L;
+            if (left <= 0) {
+                return false;
+            }
+            try {
+                wait(Math.max(1L, Math.min(missing, left)));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+            refill();
+        }
+        mTokens -= 1;
+        return true;
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        mTokens = Math.min(mCapacity, mTokens + (now - mRefillDate) * mRate / 1e9);
+        mRefillDate = now;
+    }
+}
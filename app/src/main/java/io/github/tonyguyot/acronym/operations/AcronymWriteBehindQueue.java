@@ -0,0 +1,101 @@
+/*
+ * Copyright (C) 2016 Tony Guyot
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.tonyguyot.acronym.operations;
+
+import android.content.Context;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import io.github.tonyguyot.acronym.data.Acronym;
+import io.github.tonyguyot.acronym.data.AcronymKey;
+import io.github.tonyguyot.acronym.data.AcronymValidators;
+
+/**
+ * Write-behind queue of the definitions retrieved from the server.
+ * The definitions are published to the user first, then queued here, and
+ * the queue is written to the cache later, in a single transaction for all
+ * the queued names. The writes are coalesced by lookup key: only the last
+ * list retrieved for a key is written. Until the queue is flushed, the
+ * queued definitions must be read from here, not from the cache.
+ */
+public class AcronymWriteBehindQueue {
+
+    // tag for logging information
+    private static final String TAG = "AcronymWriteBehindQueue";
+
+    // the queued writes, by lookup key, in the order of their first write
+    private final Map<String, AcronymCacheMediator.CacheWrite> mWrites = new LinkedHashMap<>();
+
+    // above this number of keys, the queue should be flushed
+    private final int mCapacity;
+
+    public AcronymWriteBehindQueue(int capacity) {
+        mCapacity = capacity;
+    }
+
+    // queue the definitions retrieved for a name, with the validators of the
+    // response: they supersede the ones already queued for the same key (the
+    // previous definitions are then replaced if one of the writes had to
+    // replace them)
+    public synchronized void enqueue(String acronymName, Collection<Acronym> acronyms,
+                                     boolean doDeletePrevious, AcronymValidators validators) {
+        if (acronyms == null || acronyms.isEmpty()) {
+            return; // nothing to cache
+        }
+        String key = AcronymKey.of(acronymName);
+        AcronymCacheMediator.CacheWrite previous = mWrites.get(key);
+        if (previous != null) {
+            doDeletePrevious |= previous.doDeletePrevious();
+        }
+        mWrites.put(key, new AcronymCacheMediator.CacheWrite(
+                acronymName, new ArrayList<>(acronyms), doDeletePrevious, validators));
+    }
+
+    // the definitions queued for a name (null if nothing is queued)
+    public synchronized ArrayList<Acronym> get(String acronymName) {
+        AcronymCacheMediator.CacheWrite write = mWrites.get(AcronymKey.of(acronymName));
+        return write == null ? null : new ArrayList<>(write.getAcronyms());
+    }
+
+    public synchronized boolean isEmpty() {
+        return mWrites.isEmpty();
+    }
+
+    public synchronized boolean isFull() {
+        return mWrites.size() >= mCapacity;
+    }
+
+    // forget the queued writes (the cache is being cleared)
+    public synchronized void discard() {
+        mWrites.clear();
+    }
+
+    // write all the queued definitions to the cache, in a single transaction
+    // (the lock is held during the write, so that the definitions are always
+    // found either here or in the cache)
+    public synchronized void flush(Context context) {
+        if (mWrites.isEmpty()) {
+            return;
+        }
+        Log.d(TAG, "writing " + mWrites.size() + " name(s) to the cache");
+        new AcronymCacheMediator(context).addAllToCache(mWrites.values());
+        mWrites.clear();
+    }
+}
@@ -48,6 +48,21 @@ public class AcronymXmlParser {
     // the main parse method
     public static ArrayList<Acronym> parse(InputStream input)
         throws XmlPullParserException, IOException {
+        final ArrayList<Acronym> acronyms = new ArrayList<>();
+        parse(input, new AcronymListener() {
+            @Override
+            public void onAcronym(Acronym acronym) {
+                acronyms.add(acronym);
+            }
+        });
+        return acronyms;
+    }
+
+    // same, but giving each definition to the listener as soon as its
+    // element is complete, instead of collecting them (the memory used does
+    // not depend on the size of the response); returns their number
+    public static int parse(InputStream input, AcronymListener listener)
+        throws XmlPullParserException, IOException {
 
         // create and configure a new parser factory
         XmlPullParserFactory factory = XmlPullParserFactory.newInstance();
@@ -69,7 +84,7 @@ public class AcronymXmlParser {
         String currentDate = null;
 
         // parse the stream
-        ArrayList<Acronym> acronyms = new ArrayList<>();
+        int count = 0;
         int eventType = parser.getEventType();
         while (eventType != XmlPullParser.END_DOCUMENT) {
 
@@ -103,12 +118,13 @@ public class AcronymXmlParser {
                 } else if (tagName.equals(ITEM_ELEMENT)) {
                     // end of acronym item => store the variables
                     if (currentName != null && currentExpansion != null) {
-                        acronyms.add(
-                                new Acronym.Builder(currentName, currentExpansion)
-                                        .comment(currentComment)
-                                        .dewey(currentDewey)
-                                        .added(currentDate)
-                                        .create());
+                        Acronym acronym = new Acronym.Builder(currentName, currentExpansion)
+                                .comment(currentComment)
+                                .dewey(currentDewey)
+                                .added(currentDate)
+                                .create();
+                        listener.onAcronym(acronym);
+                        count++;
                     }
                 }
 
@@ -118,6 +134,6 @@ public class AcronymXmlParser {
             eventType = parser.next();
         }
 
-        return acronyms;
+        return count;
     }
 }
@@ -0,0 +1,194 @@
+/*
+ * Copyright (C) 2016 Tony Guyot
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.tonyguyot.acronym.presenter;
+
+import android.content.Intent;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Queue of the requests of the service, by priority class (then in order of
+ * arrival), with a bounded length.
+ * The IntentService only gives the order in which the requests are handled:
+ * each request is queued here as it arrives, and the service then handles
+ * the most urgent request of this queue, whichever intent it has been given.
+ * Under load:
+ *   - a request identical to a queued one is dropped (the queued one will
+ *     answer both, since the replies are broadcast), and the queued one is
+ *     promoted if the new one is more urgent;
+ *   - when the queue is full, the least urgent request is shed (the oldest
+ *     one, among the user requests: it has been superseded by the next ones).
+ * A barrier request (a cache clear) is never merged, and the requests queued
+ * before it are never merged with the ones queued after it.
+ */
+public class AcronymRequestScheduler {
+
+    // priority classes, most urgent first
+    public static final int PRIORITY_INTERACTIVE = 0;  // the user is waiting
+    public static final int PRIORITY_PREFETCH = 1;     // may be useful soon
+    public static final int PRIORITY_MAINTENANCE = 2;  // whenever possible
+
+    // one queued request
+    private static class Entry implements Comparable<Entry> {
+        Intent mIntent;
+        int mPriority;
+        final String mKey;
+        final long mSequence;
+
+        Entry(Intent intent, int priority, String key, long sequence) {
+            mIntent = intent;
+            mPriority = priority;
+            mKey = key;
+            mSequence = sequence;
+        }
+
+        @Override
+        public int compareTo(Entry other) {
+            if (mPriority != other.mPriority) {
+                return mPriority < other.mPriority ? -1 : 1;
+            }
+            return mSequence < other.mSequence ? -1 : mSequence == other.mSequence ? 0 : 1;
+        }
+    }
+
+    // maximum number of queued requests
+    private final int mCapacity;
+
+    // the queued requests, and the ones which can be merged, by key
+    private final PriorityQueue<Entry> mQueue = new PriorityQueue<>();
+    private final Map<String, Entry> mMergeable = new HashMap<>();
+
+    // order of arrival of the next request
+    private long mSequence;
+
+    public AcronymRequestScheduler(int capacity) {
+        mCapacity = capacity;
+    }
+
+    /**
+     * Queue a request.
+     *
+     * @param intent    the request
+     * @param priority  its priority class
+     * @param key       identifies the requests which have the same result
+     *                  (null for a barrier request)
+     * @return          the request which has been shed to make room (maybe
+     *                  the new one), or null if none has been shed (the new
+     *                  one may have been merged with a queued one)
+     */
+    public synchronized Intent offer(Intent intent, int priority, String key) {
+        if (key == null) {
+            // nothing queued before the barrier can be merged with what follows
+            mMergeable.clear();
+        } else {
+            Entry queued = mMergeable.get(key);
+            if (queued != null) {
+                if (priority < queued.mPriority) {
+                    mQueue.remove(queued);
+                    queued.mIntent = intent;
+                    queued.mPriority = priority;
+                    mQueue.add(queued);
+                }
+                return null;
+            }
+        }
+
+        Intent shed = null;
+        if (mQueue.size() >= mCapacity) {
+            Entry victim = findVictim(priority);
+            if (victim == null) {
+                return intent; // everything queued is more urgent
+            }
+            remove(victim);
+            shed = victim.mIntent;
+        }
+        Entry entry = new Entry(intent, priority, key, mSequence++);
+        mQueue.add(entry);
+        if (key != null) {
+            mMergeable.put(key, entry);
+        }
+        return shed;
+    }
+
+    // the next request to handle (null if none is left: the requests which
+    // have been merged or shed still have their turn in the IntentService)
+    public synchronized Intent poll() {
+        Entry entry = mQueue.poll();
+        if (entry == null) {
+            return null;
+        }
+        if (entry.mKey != null && mMergeable.get(entry.mKey) == entry) {
+            mMergeable.remove(entry.mKey);
+        }
+        return entry.mIntent;
+    }
+
+    // true if no request is queued
+    public synchronized boolean isEmpty() {
+        return mQueue.isEmpty();
+    }
+
+    // true if a request more urgent than the given priority class is queued
+    public synchronized boolean hasQueuedAbove(int priority) {
+        Entry first = mQueue.peek();
+        return first != null && first.mPriority < priority;
+    }
+
+    // true if a request with the given action is queued
+    public synchronized boolean hasQueued(String action) {
+        for (Entry entry : mQueue) {
+            if (action.equals(entry.mIntent.getAction())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // the request to shed for a new request of the given priority: the
+    // least urgent one if it is less urgent than the new one, otherwise
+    // the oldest one for user requests (null: shed the new one)
+    // (a barrier is never shed)
+    private Entry findVictim(int priority) {
+        Entry worst = null;
+        Entry oldest = null;
+        for (Entry entry : mQueue) {
+            if (entry.mKey == null) {
+                continue;
+            }
+            if (worst == null || entry.mPriority > worst.mPriority
+                    || (entry.mPriority == worst.mPriority && entry.mSequence > worst.mSequence)) {
+                worst = entry;
+            }
+            if (entry.mPriority == priority
+                    && (oldest == null || entry.mSequence < oldest.mSequence)) {
+                oldest = entry;
+            }
+        }
+        if (worst != null && worst.mPriority > priority) {
+            return worst;
+        }
+        return priority == PRIORITY_INTERACTIVE ? oldest : null;
+    }
+
+    private void remove(Entry entry) {
+        mQueue.remove(entry);
+        if (entry.mKey != null && mMergeable.get(entry.mKey) == entry) {
+            mMergeable.remove(entry.mKey);
+        }
+    }
+}
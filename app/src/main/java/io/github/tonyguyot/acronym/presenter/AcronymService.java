@@ -20,17 +20,30 @@ import android.app.IntentService;
 import android.content.Intent;
 import android.content.Context;
 import android.content.IntentFilter;
+import android.os.BatteryManager;
 import android.os.Bundle;
+import android.os.Process;
 import android.text.TextUtils;
 import android.util.Log;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 
 import io.github.tonyguyot.acronym.data.Acronym;
+import io.github.tonyguyot.acronym.data.AcronymKey;
 import io.github.tonyguyot.acronym.data.AcronymList;
+import io.github.tonyguyot.acronym.data.AcronymValidators;
+import io.github.tonyguyot.acronym.data.CacheStatistics;
 import io.github.tonyguyot.acronym.operations.AcronymCacheMediator;
+import io.github.tonyguyot.acronym.operations.AcronymFuzzyIndex;
+import io.github.tonyguyot.acronym.operations.AcronymHedgedSource;
 import io.github.tonyguyot.acronym.operations.AcronymHttpMediator;
+import io.github.tonyguyot.acronym.operations.AcronymListener;
+import io.github.tonyguyot.acronym.operations.AcronymSource;
+import io.github.tonyguyot.acronym.operations.AcronymStaleCacheSource;
+import io.github.tonyguyot.acronym.operations.AcronymTokenBucket;
+import io.github.tonyguyot.acronym.operations.AcronymWriteBehindQueue;
 
 /**
  * An {@link IntentService} subclass for handling asynchronous task requests in
@@ -48,6 +61,74 @@ public class AcronymService extends IntentService {
     // expiration period for the data in the cache (in milliseconds)
     private static final long EXPIRATION_PERIOD = 5*24*60*60*1000; // 5 days
 
+    // maintenance of the cache file: unused pages reclaimed per step, and at
+    // most per run (the steps are short, so that a lookup waits little)
+    private static final int MAINTENANCE_STEP_PAGES = 32;
+    private static final int MAINTENANCE_MAX_PAGES = 512;
+
+    // minimum delay between two refreshes of the planner statistics
+    private static final long ANALYZE_PERIOD = 24*60*60*1000; // 1 day
+
+    // date of the last refresh of the planner statistics (by this process)
+    private static long sLastAnalyzeDate = 0L;
+
+    // the requests waiting in the queue of the service, by priority class:
+    // the maintenance gives way to the other requests (it never runs
+    // concurrently with them, since the service handles one intent at a
+    // time, but it must not delay them either)
+    private static final int MAX_QUEUED_REQUESTS = 64;
+    private static final AcronymRequestScheduler sScheduler =
+            new AcronymRequestScheduler(MAX_QUEUED_REQUESTS);
+
+    // the definitions retrieved from the server are written to the cache
+    // after the reply, several names at a time (at most this number)
+    private static final int MAX_QUEUED_WRITES = 16;
+    private static final AcronymWriteBehindQueue sWriteQueue =
+            new AcronymWriteBehindQueue(MAX_QUEUED_WRITES);
+
+    // servers queried for the definitions which are not in the cache, in
+    // order of preference (a backup server is only queried if the previous
+    // ones fail or are slower than usual); the expired definitions still in
+    // the cache are the last resort
+    private static final String[] SERVERS = { AcronymHttpMediator.SILMARIL_SERVER };
+
+    // maximum time to wait for the servers (in milliseconds)
+    private static final long SERVER_DEADLINE = 15 * 1000L; // 15 seconds
+
+    // where the definitions which are not in the cache are retrieved from
+    // (the servers above, unless replaced by a test or a benchmark; created
+    // on first use, as the stale cache needs a context)
+    private static AcronymSource sSource;
+
+    // rate limit of the requests to the servers: 2 per second, in bursts of
+    // at most 8; the prefetches leave 4 of them to the lookups of the user,
+    // which wait at most 5 seconds for one
+    private static final double SERVER_RATE = 2.0;
+    private static final int SERVER_BURST = 8;
+    private static final int RESERVED_TOKENS = 4;
+    private static final long MAX_TOKEN_WAIT = 5 * 1000L;
+    private static volatile AcronymTokenBucket sServerTokens =
+            new AcronymTokenBucket(SERVER_RATE, SERVER_BURST);
+
+    // default maximum number of results of a full-text search
+    private static final int DEFAULT_SEARCH_LIMIT = 50;
+
+    // maximum number of close names proposed for an unknown acronym
+    private static final int MAX_SUGGESTIONS = 3;
+
+    // the definitions received from the server are sent to the user in
+    // batches of at most this number, or after this delay (in milliseconds)
+    // since the previous batch (the first one is sent right away)
+    private static final int PARTIAL_BATCH_SIZE = 8;
+    private static final long PARTIAL_BATCH_DELAY = 200L;
+
+    // the replies contain at most this number of definitions: when more are
+    // received from the server, they are written to the cache while they
+    // are received, in transactions of the given number of definitions,
+    // and the rest is read from the cache one page at a time
+    private static final int PAGE_SIZE = 50;
+    private static final int INGEST_BATCH_SIZE = 200;
+
     // ------ STATIC HELPER INNER CLASSES FOR THE INTENTS ------
 
     // provide useful methods to deal with the calling intent.
@@ -55,22 +136,43 @@ public class AcronymService extends IntentService {
     //   * action: ACTION_GET_ACRONYM -> ask to retrieve one acronym definition
     //   * action: ACTION_GET_ACRONYMS -> retrieve all acronyms from cache
     //   * action: ACTION_CLEAR_CACHE -> clear all acronyms in the cache
+    //   * action: ACTION_SEARCH_DEFINITIONS -> search words in cached definitions
+    //   * action: ACTION_GET_STATISTICS -> compute the storage statistics of the cache
+    //   * action: ACTION_MAINTAIN_CACHE -> compact the cache file in the background
+    //   * action: ACTION_GET_ACRONYM_PAGE -> read the next definitions of a
+    //     large acronym from the cache
     //   * extra: EXTRA_ACRONYM_NAME -> name of the acronym to retrieve
+    //   * extra: EXTRA_OFFSET -> position of the first definition of the page
+    //   * extra: EXTRA_SEARCH_TERMS -> words to search in the definitions
+    //   * extra: EXTRA_SEARCH_LIMIT -> maximum number of search results
+    //   * extra: EXTRA_PRIORITY -> priority class of an acronym retrieval
     public static class CallingIntent {
 
         // expected action in the calling intent
         private static final String ACTION_GET_ACRONYM = PREFIX + "action.GET_ACRONYM";
         private static final String ACTION_GET_ACRONYMS = PREFIX + "action.GET_ACRONYMS";
         private static final String ACTION_CLEAR_CACHE = PREFIX + "action.CLEAR_CACHE";
+        private static final String ACTION_SEARCH_DEFINITIONS = PREFIX + "action.SEARCH_DEFINITIONS";
+        private static final String ACTION_GET_STATISTICS = PREFIX + "action.GET_STATISTICS";
+        private static final String ACTION_MAINTAIN_CACHE = PREFIX + "action.MAINTAIN_CACHE";
+        private static final String ACTION_GET_ACRONYM_PAGE = PREFIX + "action.GET_ACRONYM_PAGE";
 
         // expected parameter in the calling intent
         private static final String EXTRA_ACRONYM_NAME = PREFIX + "extra.ACRONYM_NAME";
+        private static final String EXTRA_SEARCH_TERMS = PREFIX + "extra.SEARCH_TERMS";
+        private static final String EXTRA_SEARCH_LIMIT = PREFIX + "extra.SEARCH_LIMIT";
+        private static final String EXTRA_PRIORITY = PREFIX + "extra.PRIORITY";
+        private static final String EXTRA_OFFSET = PREFIX + "extra.OFFSET";
 
         // check that the intent is a calling intent
         private static boolean checkIntent(Intent intent) {
             return ACTION_GET_ACRONYM.equals(intent.getAction())
                     || ACTION_GET_ACRONYMS.equals(intent.getAction())
-                    || ACTION_CLEAR_CACHE.equals(intent.getAction());
+                    || ACTION_CLEAR_CACHE.equals(intent.getAction())
+                    || ACTION_SEARCH_DEFINITIONS.equals(intent.getAction())
+                    || ACTION_GET_STATISTICS.equals(intent.getAction())
+                    || ACTION_MAINTAIN_CACHE.equals(intent.getAction())
+                    || ACTION_GET_ACRONYM_PAGE.equals(intent.getAction());
         }
 
         // create a new calling intent to perform the acronym search operation
@@ -81,6 +183,24 @@ public class AcronymService extends IntentService {
             return intent;
         }
 
+        // create a new calling intent to retrieve an acronym in advance (in
+        // the cache, without reply)
+        public static Intent makePrefetchIntent(Context context, String acronymName) {
+            Intent intent = makeIntent(context, acronymName);
+            intent.putExtra(EXTRA_PRIORITY, AcronymRequestScheduler.PRIORITY_PREFETCH);
+            return intent;
+        }
+
+        // create a new calling intent to read the definitions of an acronym
+        // which follow the given position (see ReplyIntent.getTotalCount())
+        public static Intent makePageIntent(Context context, String acronymName, int offset) {
+            Intent intent = new Intent(context, AcronymService.class);
+            intent.setAction(ACTION_GET_ACRONYM_PAGE);
+            intent.putExtra(EXTRA_ACRONYM_NAME, acronymName);
+            intent.putExtra(EXTRA_OFFSET, offset);
+            return intent;
+        }
+
         // create a new calling intent to perform the acronym history list operation
         public static Intent makeIntent(Context context) {
             Intent intent = new Intent(context, AcronymService.class);
@@ -95,6 +215,29 @@ public class AcronymService extends IntentService {
             return intent;
         }
 
+        // create a new calling intent to perform the full-text search operation
+        public static Intent makeSearchIntent(Context context, String terms, int limit) {
+            Intent intent = new Intent(context, AcronymService.class);
+            intent.setAction(ACTION_SEARCH_DEFINITIONS);
+            intent.putExtra(EXTRA_SEARCH_TERMS, terms);
+            intent.putExtra(EXTRA_SEARCH_LIMIT, limit);
+            return intent;
+        }
+
+        // create a new calling intent to compute the statistics of the cache
+        public static Intent makeStatisticsIntent(Context context) {
+            Intent intent = new Intent(context, AcronymService.class);
+            intent.setAction(ACTION_GET_STATISTICS);
+            return intent;
+        }
+
+        // create a new calling intent to perform the cache maintenance
+        public static Intent makeMaintenanceIntent(Context context) {
+            Intent intent = new Intent(context, AcronymService.class);
+            intent.setAction(ACTION_MAINTAIN_CACHE);
+            return intent;
+        }
+
         // extract the acronym name from the calling intent
         public static String getAcronymName(Intent intent) {
             if (checkIntent(intent)) {
@@ -104,6 +247,64 @@ public class AcronymService extends IntentService {
                 return null;
             }
         }
+
+        // extract the position of the first definition of the requested page
+        public static int getOffset(Intent intent) {
+            if (checkIntent(intent)) {
+                return intent.getIntExtra(EXTRA_OFFSET, 0);
+            } else {
+                return 0;
+            }
+        }
+
+        // the priority class of the calling intent
+        public static int getPriority(Intent intent) {
+            if (ACTION_MAINTAIN_CACHE.equals(intent.getAction())) {
+                return AcronymRequestScheduler.PRIORITY_MAINTENANCE;
+            } else if (ACTION_GET_ACRONYM.equals(intent.getAction())) {
+                return intent.getIntExtra(EXTRA_PRIORITY,
+                        AcronymRequestScheduler.PRIORITY_INTERACTIVE);
+            } else {
+                return AcronymRequestScheduler.PRIORITY_INTERACTIVE;
+            }
+        }
+
+        // identifies the calling intents which have the same result (null
+        // for a cache clear: the requests before and after it differ)
+        public static String getMergeKey(Intent intent) {
+            if (ACTION_CLEAR_CACHE.equals(intent.getAction())) {
+                return null;
+            } else if (ACTION_GET_ACRONYM.equals(intent.getAction())) {
+                return ACTION_GET_ACRONYM + ':' + AcronymKey.of(getAcronymName(intent));
+            } else if (ACTION_GET_ACRONYM_PAGE.equals(intent.getAction())) {
+                return ACTION_GET_ACRONYM_PAGE + ':' + getOffset(intent)
+                        + ':' + AcronymKey.of(getAcronymName(intent));
+            } else if (ACTION_SEARCH_DEFINITIONS.equals(intent.getAction())) {
+                return ACTION_SEARCH_DEFINITIONS + ':' + getSearchLimit(intent)
+                        + ':' + getSearchTerms(intent);
+            } else {
+                return intent.getAction();
+            }
+        }
+
+        // extract the words to search from the calling intent
+        public static String getSearchTerms(Intent intent) {
+            if (checkIntent(intent)) {
+                Bundle bundle = intent.getExtras();
+                return bundle.getString(EXTRA_SEARCH_TERMS);
+            } else {
+                return null;
+            }
+        }
+
+        // extract the maximum number of search results from the calling intent
+        public static int getSearchLimit(Intent intent) {
+            if (checkIntent(intent)) {
+                return intent.getIntExtra(EXTRA_SEARCH_LIMIT, DEFAULT_SEARCH_LIMIT);
+            } else {
+                return DEFAULT_SEARCH_LIMIT;
+            }
+        }
     }
 
 
@@ -117,6 +318,13 @@ public class AcronymService extends IntentService {
     //   * extra: EXTRA_RESULT_STATUS -> Android status of the result (OK, Cancelled)
     //   * extra: EXTRA_ERROR_CODE -> if error, indicates which one
     //   * extra: EXTRA_HTTP_RESPONSE -> if HTTP error, indicates which one
+    //   * extra: EXTRA_IS_PARTIAL -> true for the first definitions, sent
+    //     while the others are retrieved (the final reply has them all)
+    //   * extra: EXTRA_TOTAL_COUNT -> if the list is only the first page of
+    //     the definitions, their total number (the next pages are requested
+    //     with CallingIntent.makePageIntent())
+    //   * extra: EXTRA_OFFSET -> for the reply to a page request, position
+    //     of the first definition of the list
     public static class ReplyIntent {
 
         // notification id for the answer
@@ -137,6 +345,13 @@ public class AcronymService extends IntentService {
         // additional error code in case of HTTP error
         private static final String EXTRA_HTTP_RESPONSE = PREFIX + "extra.HTTP_RESPONSE";
 
+        // set for the intermediate replies
+        private static final String EXTRA_IS_PARTIAL = PREFIX + "extra.IS_PARTIAL";
+
+        // set when the definitions are sent page by page
+        private static final String EXTRA_TOTAL_COUNT = PREFIX + "extra.TOTAL_COUNT";
+        private static final String EXTRA_OFFSET = PREFIX + "extra.OFFSET";
+
         // check that the intent is a reply intent
         private static boolean checkIntent(Intent intent) {
             return (ACTION_NOTIFICATION.equals(intent.getAction()));
@@ -156,6 +371,40 @@ public class AcronymService extends IntentService {
             return intent;
         }
 
+        // same, when the results are only the first page of the definitions
+        public static Intent makeIntentSuccess(String acronymName, ArrayList<Acronym> results,
+                                               int totalCount) {
+            Intent intent = makeIntentSuccess(acronymName, results);
+            if (totalCount >= 0) {
+                intent.putExtra(EXTRA_TOTAL_COUNT, totalCount);
+            }
+            return intent;
+        }
+
+        // create a new reply intent to notify a page of the definitions
+        public static Intent makeIntentPage(String acronymName, int offset,
+                                            ArrayList<Acronym> results) {
+            Intent intent = makeIntentSuccess(acronymName, results);
+            intent.putExtra(EXTRA_OFFSET, offset);
+            return intent;
+        }
+
+        // create a new reply intent to notify that a page could not be read
+        public static Intent makeIntentPageFailure(String acronymName, int offset) {
+            Intent intent = makeIntentFailure(acronymName,
+                    AcronymList.Status.STATUS_ERROR_OTHER, 0);
+            intent.putExtra(EXTRA_OFFSET, offset);
+            return intent;
+        }
+
+        // create a new reply intent to notify some of the definitions, before
+        // the final reply
+        public static Intent makeIntentPartial(String acronymName, ArrayList<Acronym> results) {
+            Intent intent = makeIntentSuccess(acronymName, results);
+            intent.putExtra(EXTRA_IS_PARTIAL, true);
+            return intent;
+        }
+
         // create a new reply intent to notify failure
         public static Intent makeIntentFailure(String acronymName, int errorCode,
                                                int additionalErrorCode) {
@@ -198,6 +447,35 @@ public class AcronymService extends IntentService {
             }
         }
 
+        // true for an intermediate reply
+        public static boolean isPartial(Intent intent) {
+            return checkIntent(intent) && intent.getBooleanExtra(EXTRA_IS_PARTIAL, false);
+        }
+
+        // true for the reply to a page request
+        public static boolean isPage(Intent intent) {
+            return checkIntent(intent) && intent.hasExtra(EXTRA_OFFSET);
+        }
+
+        // extract the position of the first definition of a page
+        public static int getOffset(Intent intent) {
+            if (checkIntent(intent)) {
+                return intent.getIntExtra(EXTRA_OFFSET, 0);
+            } else {
+                return 0;
+            }
+        }
+
+        // extract the total number of definitions (-1 if the list of the
+        // reply has them all)
+        public static int getTotalCount(Intent intent) {
+            if (checkIntent(intent)) {
+                return intent.getIntExtra(EXTRA_TOTAL_COUNT, -1);
+            } else {
+                return -1;
+            }
+        }
+
         // extract error code from the reply intent
         public static boolean isInvalidDataError(Intent intent) {
             return checkIntent(intent)
@@ -289,6 +567,197 @@ public class AcronymService extends IntentService {
         }
     }
 
+    // provide useful methods to deal with the search intent.
+    // the search intent is used to report an answer when the action "search
+    // words in the cached definitions" has been sent.
+    // the search intent has the following structure:
+    //   * action: ACTION_SEARCH_RESULTS -> notify a result
+    //   * extra: EXTRA_SEARCH_TERMS -> the searched words
+    //   * extra: EXTRA_ACRONYM_LIST -> matching definitions, best first
+    //   * extra: EXTRA_RESULT_STATUS -> Android status of the result (OK, Cancelled)
+    public static class SearchIntent {
+
+        // notification id for the answer
+        private static final String ACTION_SEARCH_RESULTS = PREFIX + "action.search_results";
+
+        // same parameter as the calling intent
+        private static final String EXTRA_SEARCH_TERMS = PREFIX + "extra.SEARCH_TERMS";
+
+        // parameter for the response content (optional)
+        private static final String EXTRA_ACRONYM_LIST = PREFIX + "extra.ACRONYM_LIST";
+
+        // parameter for the response status (mandatory)
+        private static final String EXTRA_RESULT_STATUS = PREFIX + "extra.RESULT_STATUS";
+
+        // check that the intent is a search intent
+        private static boolean checkIntent(Intent intent) {
+            return (ACTION_SEARCH_RESULTS.equals(intent.getAction()));
+        }
+
+        // produce an intent filter for the broadcast receiver
+        public static IntentFilter getIntentFilter() {
+            return new IntentFilter(ACTION_SEARCH_RESULTS);
+        }
+
+        // create a new intent to notify a result
+        public static Intent makeIntent(String terms, ArrayList<Acronym> results) {
+            Intent intent = new Intent(ACTION_SEARCH_RESULTS);
+            intent.putExtra(EXTRA_SEARCH_TERMS, terms);
+            if (results == null) {
+                // an error occurred
+                intent.putExtra(EXTRA_RESULT_STATUS, Activity.RESULT_CANCELED);
+            } else {
+                intent.putExtra(EXTRA_ACRONYM_LIST, results);
+                intent.putExtra(EXTRA_RESULT_STATUS, Activity.RESULT_OK);
+            }
+            return intent;
+        }
+
+        // extract the searched words from the search intent
+        public static String getSearchTerms(Intent intent) {
+            if (checkIntent(intent)) {
+                Bundle bundle = intent.getExtras();
+                return bundle.getString(EXTRA_SEARCH_TERMS);
+            } else {
+                return null;
+            }
+        }
+
+        // extract the list of acronyms from the search intent
+        public static ArrayList<Acronym> getResultList(Intent intent) {
+            if (checkIntent(intent)) {
+                Bundle bundle = intent.getExtras();
+                return bundle.getParcelableArrayList(EXTRA_ACRONYM_LIST);
+            } else {
+                return null;
+            }
+        }
+
+        // extract the result status from the search intent
+        public static int getResultStatus(Intent intent) {
+            if (checkIntent(intent)) {
+                return intent.getIntExtra(EXTRA_RESULT_STATUS, Activity.RESULT_CANCELED);
+            } else {
+                return Activity.RESULT_CANCELED;
+            }
+        }
+    }
+
+    // provide useful methods to deal with the suggestion intent.
+    // the suggestion intent is sent, before the reply intent, when the
+    // searched acronym is not in the cache but close names are.
+    // the suggestion intent has the following structure:
+    //   * action: ACTION_SUGGESTIONS -> notify the close names
+    //   * extra: EXTRA_ACRONYM_NAME -> name of the processed acronym
+    //   * extra: EXTRA_SUGGESTIONS -> the close names, closest first
+    public static class SuggestionIntent {
+
+        // notification id for the close names
+        private static final String ACTION_SUGGESTIONS = PREFIX + "action.suggestions";
+
+        // same parameter as the calling intent
+        private static final String EXTRA_ACRONYM_NAME = PREFIX + "extra.ACRONYM_NAME";
+
+        // parameter for the close names
+        private static final String EXTRA_SUGGESTIONS = PREFIX + "extra.SUGGESTIONS";
+
+        // check that the intent is a suggestion intent
+        private static boolean checkIntent(Intent intent) {
+            return (ACTION_SUGGESTIONS.equals(intent.getAction()));
+        }
+
+        // produce an intent filter for the broadcast receiver
+        public static IntentFilter getIntentFilter() {
+            return new IntentFilter(ACTION_SUGGESTIONS);
+        }
+
+        // create a new intent to notify the close names
+        public static Intent makeIntent(String acronymName, ArrayList<String> suggestions) {
+            Intent intent = new Intent(ACTION_SUGGESTIONS);
+            intent.putExtra(EXTRA_ACRONYM_NAME, acronymName);
+            intent.putStringArrayListExtra(EXTRA_SUGGESTIONS, suggestions);
+            return intent;
+        }
+
+        // extract the acronym name from the suggestion intent
+        public static String getAcronymName(Intent intent) {
+            if (checkIntent(intent)) {
+                Bundle bundle = intent.getExtras();
+                return bundle.getString(EXTRA_ACRONYM_NAME);
+            } else {
+                return null;
+            }
+        }
+
+        // extract the close names from the suggestion intent
+        public static ArrayList<String> getSuggestions(Intent intent) {
+            if (checkIntent(intent)) {
+                return intent.getStringArrayListExtra(EXTRA_SUGGESTIONS);
+            } else {
+                return null;
+            }
+        }
+    }
+
+    // provide useful methods to deal with the statistics intent.
+    // the statistics intent is used to report an answer when the action
+    // "compute the statistics of the cache" has been sent.
+    // the statistics intent has the following structure:
+    //   * action: ACTION_STATISTICS -> notify the statistics
+    //   * extra: EXTRA_STATISTICS -> the statistics (if success)
+    //   * extra: EXTRA_RESULT_STATUS -> Android status of the result (OK, Cancelled)
+    public static class StatisticsIntent {
+
+        // notification id for the statistics
+        private static final String ACTION_STATISTICS = PREFIX + "action.statistics";
+
+        // parameter for the statistics
+        private static final String EXTRA_STATISTICS = PREFIX + "extra.STATISTICS";
+
+        // parameter for the response status
+        private static final String EXTRA_RESULT_STATUS = PREFIX + "extra.RESULT_STATUS";
+
+        // check that the intent is a statistics intent
+        private static boolean checkIntent(Intent intent) {
+            return (ACTION_STATISTICS.equals(intent.getAction()));
+        }
+
+        // produce an intent filter for the broadcast receiver
+        public static IntentFilter getIntentFilter() {
+            return new IntentFilter(ACTION_STATISTICS);
+        }
+
+        // create a new intent to notify the statistics (null = failure)
+        public static Intent makeIntent(CacheStatistics statistics) {
+            Intent intent = new Intent(ACTION_STATISTICS);
+            if (statistics != null) {
+                intent.putExtra(EXTRA_STATISTICS, statistics);
+                intent.putExtra(EXTRA_RESULT_STATUS, Activity.RESULT_OK);
+            } else {
+                intent.putExtra(EXTRA_RESULT_STATUS, Activity.RESULT_CANCELED);
+            }
+            return intent;
+        }
+
+        // extract the statistics from the statistics intent
+        public static CacheStatistics getStatistics(Intent intent) {
+            if (checkIntent(intent)) {
+                return intent.getParcelableExtra(EXTRA_STATISTICS);
+            } else {
+                return null;
+            }
+        }
+
+        // extract the result status from the statistics intent
+        public static int getResultStatus(Intent intent) {
+            if (checkIntent(intent)) {
+                return intent.getIntExtra(EXTRA_RESULT_STATUS, Activity.RESULT_CANCELED);
+            } else {
+                return Activity.RESULT_CANCELED;
+            }
+        }
+    }
+
     // mandatory constructor for a service
     public AcronymService() {
         super("AcronymService");
@@ -307,45 +776,183 @@ public class AcronymService extends IntentService {
         context.startService(intent);
     }
 
+    public static void startRetrieveAcronymPage(Context context, String acronymName, int offset) {
+        Intent intent = CallingIntent.makePageIntent(context, acronymName, offset);
+        context.startService(intent);
+    }
+
     public static void startListContentOfCache(Context context) {
         Intent intent = CallingIntent.makeIntent(context);
         context.startService(intent);
     }
 
+    public static void startPrefetchAcronym(Context context, String acronymName) {
+        Intent intent = CallingIntent.makePrefetchIntent(context, acronymName);
+        context.startService(intent);
+    }
+
     public static void startClearCache(Context context) {
         Intent intent = CallingIntent.makeCacheClearIntent(context);
         context.startService(intent);
     }
 
+    public static void startSearchDefinitions(Context context, String terms, int limit) {
+        Intent intent = CallingIntent.makeSearchIntent(context, terms, limit);
+        context.startService(intent);
+    }
+
+    public static void startGetStatistics(Context context) {
+        Intent intent = CallingIntent.makeStatisticsIntent(context);
+        context.startService(intent);
+    }
+
+    public static void startMaintainCache(Context context) {
+        Intent intent = CallingIntent.makeMaintenanceIntent(context);
+        context.startService(intent);
+    }
+
+    // the configured servers, then the stale cache, with their health
+    // tracking
+    private static AcronymSource makeSource(Context context) {
+        List<AcronymSource> sources = new ArrayList<>();
+        for (String url : SERVERS) {
+            sources.add(new AcronymHttpMediator(url));
+        }
+        sources.add(new AcronymStaleCacheSource(context));
+        return new AcronymHedgedSource(sources, SERVER_DEADLINE, false);
+    }
+
+    // the source of the definitions (the configured one, unless replaced)
+    private AcronymSource getSource() {
+        synchronized (AcronymService.class) {
+            if (sSource == null) {
+                sSource = makeSource(getApplicationContext());
+            }
+            return sSource;
+        }
+    }
+
+    // replace the source of the definitions (for the tests and benchmarks:
+    // the service runs in their process), and return the previous one
+    // (null restores the configured one; the rate limit is kept, see
+    // setServerTokens)
+    static AcronymSource setSource(AcronymSource source) {
+        synchronized (AcronymService.class) {
+            AcronymSource previous = sSource;
+            sSource = source;
+            return previous;
+        }
+    }
+
+    // replace the rate limit of the requests to the source (null for no
+    // limit), and return the previous one, so that it can be restored
+    static AcronymTokenBucket setServerTokens(AcronymTokenBucket tokens) {
+        synchronized (AcronymService.class) {
+            AcronymTokenBucket previous = sServerTokens;
+            sServerTokens = tokens;
+            return previous;
+        }
+    }
+
     // ------ LIFECYCLE METHODS ------
 
-    // perform the action in a background thread
+    // queue the requests by priority as soon as they arrive (the intent
+    // given to the IntentService only gives its turn to the most urgent
+    // request, see onHandleIntent)
+    @Override
+    public int onStartCommand(Intent intent, int flags, int startId) {
+        if (intent != null) {
+            Intent shed = sScheduler.offer(intent,
+                    CallingIntent.getPriority(intent), CallingIntent.getMergeKey(intent));
+            if (shed != null) {
+                onShed(shed);
+            }
+        }
+        return super.onStartCommand(intent, flags, startId);
+    }
+
+    // the service stops when it has nothing left to do: the write-behind
+    // queue has been flushed at the end of the last request (see
+    // onHandleIntent); this is only a safety net, as it runs on the main
+    // thread
+    @Override
+    public void onDestroy() {
+        if (!sWriteQueue.isEmpty()) {
+            Log.d(TAG, "writes left in the queue");
+            sWriteQueue.flush(getApplicationContext());
+        }
+        super.onDestroy();
+    }
+
+    // perform the action in a background thread: the most urgent queued
+    // request, rather than the one delivered (nothing is left if some
+    // requests have been merged or shed)
     @Override
-    protected void onHandleIntent(Intent intent) {
+    protected void onHandleIntent(Intent delivered) {
+        Intent intent = sScheduler.poll();
         if (intent != null) {
+            // the other actions use the content of the cache: the queued
+            // writes must be done first (or forgotten, if it is cleared)
+            if (CallingIntent.ACTION_CLEAR_CACHE.equals(intent.getAction())) {
+                sWriteQueue.discard();
+            } else if (!CallingIntent.ACTION_GET_ACRONYM.equals(intent.getAction())) {
+                sWriteQueue.flush(getApplicationContext());
+            }
+
             switch (intent.getAction()) {
 
                 // retrieve a given acronym
                 case CallingIntent.ACTION_GET_ACRONYM:
 
                     // retrieve the name & sanitize it
+                    // (a prefetch only fills the cache: there is no reply)
                     String acronymName = CallingIntent.getAcronymName(intent);
                     String sanitizedAcronymName = sanitizeName(acronymName);
-                    if (TextUtils.isEmpty(sanitizedAcronymName)) {
+                    int priority = CallingIntent.getPriority(intent);
+                    boolean isPrefetch = priority != AcronymRequestScheduler.PRIORITY_INTERACTIVE;
+                    if (TextUtils.isEmpty(AcronymKey.of(sanitizedAcronymName))) {
                         // no need to perform the operation
-                        publishResultsFailure(acronymName, AcronymList.Status.STATUS_INVALID_DATA, 0);
+                        if (!isPrefetch) {
+                            publishResultsFailure(acronymName, AcronymList.Status.STATUS_INVALID_DATA, 0);
+                        }
                     } else {
 
                         // perform the operation
-                        AcronymList results = doRetrieveAcronymDefinitions(sanitizedAcronymName);
+                        AcronymList results =
+                                doRetrieveAcronymDefinitions(sanitizedAcronymName, priority);
 
                         // broadcast result back to sender
-                        if (results.getContent() != null) {
-                            publishResultsSuccess(sanitizedAcronymName, results.getContent());
+                        if (isPrefetch) {
+                            Log.d(TAG, "prefetched " + sanitizedAcronymName);
+                        } else if (results.getContent() != null) {
+                            publishResultsSuccess(sanitizedAcronymName, results.getContent(),
+                                    results.getTotalCount());
                         } else {
                             publishResultsFailure(sanitizedAcronymName, results.getStatus(), results.getAdditionalStatus());
                         }
                     }
+
+                    // the reply has been sent: now write the new definitions
+                    // to the cache, unless other lookups are waiting (their
+                    // definitions will then be written together)
+                    if (!sScheduler.hasQueued(CallingIntent.ACTION_GET_ACRONYM)
+                            || sWriteQueue.isFull()) {
+                        sWriteQueue.flush(getApplicationContext());
+                    }
+                    break;
+
+                // read the next definitions of an acronym from the cache
+                case CallingIntent.ACTION_GET_ACRONYM_PAGE:
+                    acronymName = sanitizeName(CallingIntent.getAcronymName(intent));
+                    int offset = CallingIntent.getOffset(intent);
+                    AcronymList page = doRetrieveAcronymPage(acronymName, offset);
+                    if (page.getContent() != null) {
+                        sendBroadcast(ReplyIntent.makeIntentPage(acronymName, offset,
+                                page.getContent()));
+                    } else {
+                        // (the page is requested again when the user scrolls)
+                        sendBroadcast(ReplyIntent.makeIntentPageFailure(acronymName, offset));
+                    }
                     break;
 
                 // retrieve all acronyms
@@ -366,6 +973,35 @@ public class AcronymService extends IntentService {
                     // broadcast result (= an empty list) back to sender
                     reply = ListIntent.makeIntent(new ArrayList<Acronym>());
                     sendBroadcast(reply);
+
+                    // the file can now be shrunk, after the queued requests
+                    startMaintainCache(this);
+                    break;
+
+                // search words in the definitions of the cached acronyms
+                case CallingIntent.ACTION_SEARCH_DEFINITIONS:
+                    // perform the operation
+                    String terms = CallingIntent.getSearchTerms(intent);
+                    AcronymList found = doSearchDefinitions(terms, CallingIntent.getSearchLimit(intent));
+
+                    // broadcast result back to sender
+                    reply = SearchIntent.makeIntent(terms, found.getContent());
+                    sendBroadcast(reply);
+                    break;
+
+                // compute the storage statistics of the cache
+                case CallingIntent.ACTION_GET_STATISTICS:
+                    // perform the operation
+                    CacheStatistics statistics = doRetrieveStatistics();
+
+                    // broadcast result back to sender
+                    reply = StatisticsIntent.makeIntent(statistics);
+                    sendBroadcast(reply);
+                    break;
+
+                // compact the cache file
+                case CallingIntent.ACTION_MAINTAIN_CACHE:
+                    doMaintainCache();
                     break;
 
                 default:
@@ -374,6 +1010,12 @@ public class AcronymService extends IntentService {
         } else {
             Log.d(TAG, "Null intent received");
         }
+
+        // nothing left to do: the queued writes are done now, in the
+        // background thread, before the service stops
+        if (sScheduler.isEmpty()) {
+            sWriteQueue.flush(getApplicationContext());
+        }
     }
 
     ////////////////////
@@ -396,6 +1038,14 @@ public class AcronymService extends IntentService {
     // retrieve all definitions of a given acronym
     // from the cache or from the Acronym server if not in the cache
     public AcronymList doRetrieveAcronymDefinitions(String acronymName) {
+        return doRetrieveAcronymDefinitions(acronymName,
+                AcronymRequestScheduler.PRIORITY_INTERACTIVE);
+    }
+
+    // same, for a request of the given priority class: only the lookups of
+    // the user wait for the rate limit of the server (the others give up)
+    public AcronymList doRetrieveAcronymDefinitions(String acronymName, int priority) {
+        boolean isInteractive = priority == AcronymRequestScheduler.PRIORITY_INTERACTIVE;
 
         boolean success = true;
         if (acronymName == null || acronymName.isEmpty()) {
@@ -406,22 +1056,89 @@ public class AcronymService extends IntentService {
         AcronymList results;
         boolean newData = false;
         if (success) {
-            // first try to retrieve the information from the cache
+            // retrieved a moment ago, but not written to the cache yet?
+            ArrayList<Acronym> queued = sWriteQueue.get(acronymName);
+            if (queued != null) {
+                results = new AcronymList();
+                results.setContent(queued);
+                return results;
+            }
+
+            // first probe the cache: is the acronym there and still valid?
+            // (the query is skipped for the acronyms which have certainly
+            // never been cached)
             AcronymCacheMediator cache = new AcronymCacheMediator(getApplicationContext());
-            results = cache.retrieveFromCache(acronymName, EXPIRATION_PERIOD);
+            boolean isNew = cache.isCertainlyNotCached(acronymName);
+            long insertionDate = isNew
+                    ? AcronymCacheMediator.NOT_IN_CACHE : cache.probeFromCache(acronymName);
+            boolean noContent = insertionDate == AcronymCacheMediator.NOT_IN_CACHE;
+            boolean isExpired = !noContent
+                    && insertionDate + EXPIRATION_PERIOD < System.currentTimeMillis();
+
+            if (noContent && isInteractive) {
+                // propose the close cached names right now, without waiting
+                // for the server (which may know nothing about a typo)
+                publishSuggestions(acronymName);
+            }
 
             // if not found in cache or expired => access network
-            boolean noContent = results.getContent() == null || results.getContent().isEmpty();
-            boolean isExpired = results.isExpired();
-            if (noContent || isExpired) {
-                AcronymHttpMediator mediator = new AcronymHttpMediator();
-                results = mediator.retrieveFromServer(acronymName);
-                newData = true;
+            // otherwise => read the definitions from the cache
+            // (the expired definitions are only sent again if they have
+            // changed; otherwise they are read from the cache, and written
+            // back to renew them)
+            AcronymTokenBucket tokens = sServerTokens;
+            if ((noContent || isExpired) && tokens != null && !(isInteractive
+                    ? tokens.acquire(MAX_TOKEN_WAIT) : tokens.tryAcquire(RESERVED_TOKENS))) {
+                Log.d(TAG, acronymName + ": too many requests to the server");
+                results = new AcronymList();
+                results.setStatus(AcronymList.Status.STATUS_ERROR_OTHER);
+            } else if (noContent || isExpired) {
+                AcronymValidators validators = isExpired
+                        ? cache.retrieveValidatorsFromCache(acronymName) : null;
+                Ingestion ingestion = new Ingestion(acronymName, cache, isInteractive);
+                results = getSource().retrieve(acronymName, validators, ingestion);
+                ingestion.close(); // the final reply follows
+                if (results.getStatus() == AcronymList.Status.STATUS_NOT_MODIFIED) {
+                    // the cached definitions are only marked as fresh, never
+                    // rewritten (the ones streamed again to the ingestion,
+                    // if any, are the same: they are dropped)
+                    ingestion.abort();
+                    AcronymValidators renewed = results.getValidators();
+                    int count = cache.renewInCache(acronymName, renewed);
+                    results = count > PAGE_SIZE
+                            ? readFirstPage(cache, acronymName, count)
+                            : cache.retrieveFromCache(acronymName, -1L);
+                    results.setValidators(renewed);
+                } else if (results.getStatus() == AcronymList.Status.STATUS_STALE) {
+                    // no fresher definitions in time: the expired ones are
+                    // given as they are, and stay expired (the servers are
+                    // asked again on the next lookup)
+                    ingestion.abort();
+                    results = readFromCache(cache, acronymName);
+                } else if (results.getStatus() == AcronymList.Status.STATUS_OK
+                        && results.getContent() == null) {
+                    // the definitions have been given to the ingestion:
+                    // either all of them are in memory, or they are already
+                    // in the cache, and only the first page is read back
+                    results = ingestion.finish(results);
+                    newData = !ingestion.isSpilled();
+                } else {
+                    // (the definitions already written to the cache, if
+                    // any, are only a part of the response)
+                    ingestion.abort();
+                    newData = true;
+                }
+            } else {
+                results = readFromCache(cache, acronymName);
             }
 
-            // if retrieved from network, then add in cache
+            // if retrieved from network, then add in cache, after the reply
+            // (a new acronym replaces its previous definitions too: the
+            // filter is saved after the insertion, so it may have missed the
+            // last one if the application has been killed in between)
             if (newData) {
-                cache.addToCache(results.getContent(), isExpired);
+                sWriteQueue.enqueue(acronymName, results.getContent(), isExpired || isNew,
+                        results.getValidators());
             }
         } else {
             results = new AcronymList();
@@ -430,12 +1147,129 @@ public class AcronymService extends IntentService {
         return results;
     }
 
+    // the cached definitions of an acronym (only the first page of them if
+    // there are too many for a reply)
+    private static AcronymList readFromCache(AcronymCacheMediator cache, String acronymName) {
+        int count = cache.countInCache(acronymName);
+        return count > PAGE_SIZE
+                ? readFirstPage(cache, acronymName, count)
+                : cache.retrieveFromCache(acronymName, -1L);
+    }
+
+    // the first page of the definitions of an acronym cached with too many
+    // definitions for a reply, with their total number (if known)
+    private static AcronymList readFirstPage(AcronymCacheMediator cache, String acronymName,
+                                             int count) {
+        AcronymList results = cache.retrievePageFromCache(acronymName, 0, PAGE_SIZE);
+        if (count >= 0) {
+            results.setTotalCount(count);
+        }
+        return results;
+    }
+
+    // read a page of the definitions of an acronym from the cache (after
+    // the first page: the acronym has more definitions than a reply can hold)
+    public AcronymList doRetrieveAcronymPage(String acronymName, int offset) {
+        if (TextUtils.isEmpty(AcronymKey.of(acronymName)) || offset < 0) {
+            AcronymList results = new AcronymList();
+            results.setStatus(AcronymList.Status.STATUS_INVALID_DATA);
+            return results;
+        }
+        AcronymCacheMediator cache = new AcronymCacheMediator(getApplicationContext());
+        return cache.retrievePageFromCache(acronymName, offset, PAGE_SIZE);
+    }
+
     // report all acronyms definitions found in the cache
     public AcronymList doRetrieveAllAcronymDefinitions() {
         AcronymCacheMediator cache = new AcronymCacheMediator(getApplicationContext());
         return cache.retrieveAllFromCache();
     }
 
+    // search words in the definitions and comments found in the cache
+    public AcronymList doSearchDefinitions(String terms, int limit) {
+        AcronymCacheMediator cache = new AcronymCacheMediator(getApplicationContext());
+        return cache.searchInCache(terms, limit);
+    }
+
+    // compute the storage statistics of the cache (aggregated by the
+    // database, no row is read here)
+    public CacheStatistics doRetrieveStatistics() {
+        AcronymCacheMediator cache = new AcronymCacheMediator(getApplicationContext());
+        return cache.retrieveStatisticsFromCache(EXPIRATION_PERIOD);
+    }
+
+    // reclaim the unused pages of the cache file, a few at a time, then
+    // refresh the planner statistics (at low priority, and giving way to
+    // the lookups: if some are queued, the rest of the work is queued after
+    // them); a file created by a previous version is rebuilt first, but only
+    // while the device is charging and nothing else is queued, since its
+    // cost does not depend on this bound
+    public void doMaintainCache() {
+        AcronymCacheMediator cache = new AcronymCacheMediator(getApplicationContext());
+        int priority = Process.getThreadPriority(Process.myTid());
+        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+        try {
+            if (isCharging() && !sScheduler.hasQueuedAbove(AcronymRequestScheduler.PRIORITY_MAINTENANCE)) {
+                cache.convertCache();
+            }
+            // (until a step has nothing left to reclaim)
+            long step = 1L;
+            long reclaimed = 0L;
+            while (step > 0L && reclaimed < MAINTENANCE_MAX_PAGES) {
+                if (sScheduler.hasQueuedAbove(AcronymRequestScheduler.PRIORITY_MAINTENANCE)) {
+                    startMaintainCache(this);
+                    return;
+                }
+                step = cache.reclaimSpaceInCache(MAINTENANCE_STEP_PAGES);
+                reclaimed += step;
+            }
+            long now = System.currentTimeMillis();
+            if (!sScheduler.hasQueuedAbove(AcronymRequestScheduler.PRIORITY_MAINTENANCE)
+                    && sLastAnalyzeDate + ANALYZE_PERIOD < now) {
+                cache.analyzeCache();
+                sLastAnalyzeDate = now;
+            }
+        } finally {
+            Process.setThreadPriority(priority);
+        }
+    }
+
+    // true if the device is plugged in (the last battery status is kept by
+    // the system, no receiver is registered)
+    private boolean isCharging() {
+        Intent battery = registerReceiver(null, new IntentFilter(Intent.ACTION_BATTERY_CHANGED));
+        return battery != null && battery.getIntExtra(BatteryManager.EXTRA_PLUGGED, 0) != 0;
+    }
+
+    // a request has been shed under load: the user must not wait for it
+    // (every user request is answered by a failure, like when it fails)
+    private void onShed(Intent intent) {
+        Log.d(TAG, "overloaded: shedding " + intent.getAction());
+        if (CallingIntent.getPriority(intent) != AcronymRequestScheduler.PRIORITY_INTERACTIVE) {
+            return; // nobody is waiting for it
+        }
+        switch (intent.getAction()) {
+            case CallingIntent.ACTION_GET_ACRONYM:
+                publishResultsFailure(sanitizeName(CallingIntent.getAcronymName(intent)),
+                        AcronymList.Status.STATUS_ERROR_OTHER, 0);
+                break;
+            case CallingIntent.ACTION_GET_ACRONYM_PAGE:
+                sendBroadcast(ReplyIntent.makeIntentPageFailure(
+                        sanitizeName(CallingIntent.getAcronymName(intent)),
+                        CallingIntent.getOffset(intent)));
+                break;
+            case CallingIntent.ACTION_GET_ACRONYMS:
+                sendBroadcast(ListIntent.makeIntent(null));
+                break;
+            case CallingIntent.ACTION_SEARCH_DEFINITIONS:
+                sendBroadcast(SearchIntent.makeIntent(CallingIntent.getSearchTerms(intent), null));
+                break;
+            case CallingIntent.ACTION_GET_STATISTICS:
+                sendBroadcast(StatisticsIntent.makeIntent(null));
+                break;
+        }
+    }
+
     // clear all the elements in the cache
     public void doClearCache() {
         AcronymCacheMediator cache = new AcronymCacheMediator(getApplicationContext());
@@ -443,11 +1277,129 @@ public class AcronymService extends IntentService {
     }
 
     // publish the results using a local broadcast receiver
-    private void publishResultsSuccess(String acronymName, ArrayList<Acronym> results) {
-        Intent intent = ReplyIntent.makeIntentSuccess(acronymName, results);
+    // (the total count is -1 unless the results are only the first page)
+    private void publishResultsSuccess(String acronymName, ArrayList<Acronym> results,
+                                       int totalCount) {
+        Intent intent = ReplyIntent.makeIntentSuccess(acronymName, results, totalCount);
         sendBroadcast(intent);
     }
 
+    // receive the definitions from the server while the response is parsed,
+    // with a memory use which does not depend on the size of the response:
+    // the first page is kept for the reply (and published to the user in
+    // small batches, for a lookup of the user), and if there are more
+    // definitions than that, all of them are written to the cache in
+    // batches, marked with the date of the lookup, as they are received
+    // (the definitions of the previous lookups of the acronym which are not
+    // received again are deleted at the end, see finish(); until then, the
+    // new ones look expired, and they are deleted if the response fails,
+    // leaving the previous ones as they were, see abort())
+    private class Ingestion implements AcronymListener {
+        private final String mAcronymName;
+        private final AcronymCacheMediator mCache;
+        private final boolean mDoPublish;
+        private final long mMark = System.currentTimeMillis();
+        private final ArrayList<Acronym> mFirstPage = new ArrayList<>();
+        private ArrayList<Acronym> mPartialBatch = new ArrayList<>();
+        private long mLastPublishDate;
+        private ArrayList<Acronym> mIngestBatch;
+        private boolean mIsClosed;
+
+        Ingestion(String acronymName, AcronymCacheMediator cache, boolean doPublish) {
+            mAcronymName = acronymName;
+            mCache = cache;
+            mDoPublish = doPublish;
+        }
+
+        @Override
+        public synchronized void onAcronym(Acronym acronym) {
+            if (mIsClosed) {
+                return; // too late: a backup source has given the answer
+            }
+            if (mIngestBatch == null && mFirstPage.size() < PAGE_SIZE) {
+                mFirstPage.add(acronym);
+                publish(acronym);
+                return;
+            }
+            if (mIngestBatch == null) {
+                // too many definitions for a reply: from now on, they go
+                // to the cache (starting with the first page)
+                Log.d(TAG, mAcronymName + ": more than " + PAGE_SIZE
+                        + " definitions, written to the cache while received");
+                mIngestBatch = new ArrayList<>(mFirstPage);
+            }
+            mIngestBatch.add(acronym);
+            if (mIngestBatch.size() >= INGEST_BATCH_SIZE) {
+                mCache.ingestInCache(mAcronymName, mIngestBatch, mMark);
+                mIngestBatch = new ArrayList<>();
+            }
+        }
+
+        // send the first definitions in small batches, while the rest of
+        // the response is received (the last ones are only sent with the
+        // final reply)
+        private void publish(Acronym acronym) {
+            if (!mDoPublish) {
+                return;
+            }
+            mPartialBatch.add(acronym);
+            long now = System.currentTimeMillis();
+            if (mPartialBatch.size() >= PARTIAL_BATCH_SIZE
+                    || now - mLastPublishDate >= PARTIAL_BATCH_DELAY) {
+                sendBroadcast(ReplyIntent.makeIntentPartial(mAcronymName, mPartialBatch));
+                mPartialBatch = new ArrayList<>();
+                mLastPublishDate = now;
+            }
+        }
+
+        // the response has been received (or has failed): nothing more
+        // is accepted
+        synchronized void close() {
+            mIsClosed = true;
+        }
+
+        // true if the definitions have been written to the cache
+        synchronized boolean isSpilled() {
+            return mIngestBatch != null;
+        }
+
+        // the results of a complete response: all its definitions, or the
+        // first page of the cached ones, in the order of the next pages,
+        // with their total number (the stale definitions are deleted first)
+        synchronized AcronymList finish(AcronymList response) {
+            if (mIngestBatch == null) {
+                response.setContent(new ArrayList<>(mFirstPage));
+                return response;
+            }
+            mCache.ingestInCache(mAcronymName, mIngestBatch, mMark);
+            mIngestBatch = new ArrayList<>();
+            int count = mCache.sweepCache(mAcronymName, mMark, response.getValidators());
+            AcronymList results = readFirstPage(mCache, mAcronymName, count);
+            results.setValidators(response.getValidators());
+            return results;
+        }
+
+        // the response has failed: the new definitions written to the
+        // cache, if any, are deleted
+        synchronized void abort() {
+            if (mIngestBatch != null) {
+                mCache.abortIngestInCache(mAcronymName, mMark);
+                mIngestBatch = null;
+            }
+        }
+    }
+
+    // publish the cached names close to the given one, if any
+    private void publishSuggestions(String acronymName) {
+        List<String> suggestions = AcronymFuzzyIndex.getInstance()
+                .findClosest(getApplicationContext(), acronymName, MAX_SUGGESTIONS);
+        if (!suggestions.isEmpty()) {
+            Log.d(TAG, "close names of " + acronymName + ": " + suggestions);
+            Intent intent = SuggestionIntent.makeIntent(acronymName, new ArrayList<>(suggestions));
+            sendBroadcast(intent);
+        }
+    }
+
     // publish the error code using a local broadcast receiver
     private void publishResultsFailure(String acronymName, int errorCode,
                                        int additionalErrorCode) {
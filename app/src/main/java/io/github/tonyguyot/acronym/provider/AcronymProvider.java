@@ -16,17 +16,39 @@
 package io.github.tonyguyot.acronym.provider;
 
 import android.content.ContentProvider;
+import android.content.ContentProviderOperation;
+import android.content.ContentProviderResult;
 import android.content.ContentValues;
+import android.content.OperationApplicationException;
 import android.content.UriMatcher;
 import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.MatrixCursor;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteQueryBuilder;
+import android.database.sqlite.SQLiteStatement;
 import android.net.Uri;
+import android.os.Bundle;
+import android.os.CancellationSignal;
+import android.os.Parcelable;
 import android.support.annotation.NonNull;
 import android.text.TextUtils;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+import io.github.tonyguyot.acronym.data.AcronymKey;
 import io.github.tonyguyot.acronym.database.AcronymDatabaseHelper;
+import io.github.tonyguyot.acronym.database.AcronymIngestTable;
+import io.github.tonyguyot.acronym.database.AcronymSearchTable;
 import io.github.tonyguyot.acronym.database.AcronymTable;
+import io.github.tonyguyot.acronym.database.AcronymValidatorTable;
 
 public class AcronymProvider extends ContentProvider {
 
@@ -36,24 +58,322 @@ public class AcronymProvider extends ContentProvider {
         public static final String COLUMN_DEFINITION = AcronymTable.COLUMN_DEFINITION;
         public static final String COLUMN_COMMENT = AcronymTable.COLUMN_COMMENT;
         public static final String COLUMN_INSERTION_DATE = AcronymTable.COLUMN_INSERTION_DATE;
+
+        // columns of the validators of a lookup key (see buildValidatorUri())
+        public static final String COLUMN_ETAG = AcronymValidatorTable.COLUMN_ETAG;
+        public static final String COLUMN_LAST_MODIFIED = AcronymValidatorTable.COLUMN_LAST_MODIFIED;
+        public static final String COLUMN_HASH = AcronymValidatorTable.COLUMN_HASH;
+
+        // lookup key under which a definition is cached (optional when
+        // inserting: the key of the name by default, see AcronymKey)
+        public static final String COLUMN_KEY = AcronymTable.COLUMN_KEY;
+
+        // additional column in the results of a full-text search
+        public static final String COLUMN_SCORE = "score";
+
+        // additional column in the results of a history page
+        public static final String COLUMN_COUNT = AcronymTable.COLUMN_COUNT;
+
+        // parameters of a full-text search URI
+        public static final String PARAM_TERMS = "q";
+        public static final String PARAM_LIMIT = "limit";
+
+        // parameter of a page of the definitions of a key (with PARAM_LIMIT)
+        public static final String PARAM_OFFSET = "offset";
+
+        // parameters of a history page URI (the page starts just after,
+        // ends just before, or starts with the given name)
+        public static final String PARAM_AFTER = "after";
+        public static final String PARAM_BEFORE = "before";
+        public static final String PARAM_FROM = "from";
+
+        // columns of the statistics (a single row)
+        public static final String COLUMN_DEFINITION_COUNT = "definitions";
+        public static final String COLUMN_ACRONYM_COUNT = "acronyms";
+        public static final String COLUMN_TEXT_BYTES = "text_bytes";
+        public static final String COLUMN_EXPIRED_COUNT = "expired";
+        public static final String COLUMN_AGE_DAY = "age_day";
+        public static final String COLUMN_AGE_WEEK = "age_week";
+        public static final String COLUMN_AGE_MONTH = "age_month";
+        public static final String COLUMN_AGE_OLDER = "age_older";
+        public static final String COLUMN_DATABASE_BYTES = "database_bytes";
+        public static final String COLUMN_FREE_BYTES = "free_bytes";
+
+        // parameter of the statistics URI (expiration period in milliseconds)
+        public static final String PARAM_EXPIRATION = "expiration";
+
+        // parameter of a change notification URI (repeated for each name)
+        public static final String PARAM_NAME = "name";
+
+        // maintenance methods (see call()): reclaim at most "arg" unused
+        // pages of the database file, refresh the statistics of the planner,
+        // rebuild the file of a previous version once so that its pages can
+        // be reclaimed (this one takes a time which depends on the size of
+        // the file: only to be called when the device is idle)
+        public static final String METHOD_RECLAIM_SPACE = "reclaim_space";
+        public static final String METHOD_ANALYZE = "analyze";
+        public static final String METHOD_CONVERT = "convert";
+
+        // results of the reclaim and convert methods: pages reclaimed, pages
+        // still unused (and reclaimable)
+        public static final String RESULT_RECLAIMED_PAGES = "reclaimed_pages";
+        public static final String RESULT_FREE_PAGES = "free_pages";
+
+        // write the definitions of several lookup keys in a single transaction
+        // (see call()): for the key number i of EXTRA_KEYS, the values are in
+        // EXTRA_VALUES + i, and they replace the previous definitions of the
+        // key if EXTRA_REPLACE[i] is true (as bulkInsert() on the key URI),
+        // otherwise they are added (as bulkInsert() on CONTENT_URI)
+        public static final String METHOD_WRITE = "write";
+        public static final String EXTRA_KEYS = "keys";
+        public static final String EXTRA_REPLACE = "replace";
+        public static final String EXTRA_VALUES = "values";
+        // (optional) the new validators of the key number i are in
+        // EXTRA_VALIDATORS + i, as values of the validator columns
+        public static final String EXTRA_VALIDATORS = "validators";
+
+        // result of the write method: number of definitions changed
+        public static final String RESULT_CHANGED_ROWS = "changed_rows";
+
+        // write a batch of the definitions of a lookup key while they are
+        // retrieved (see ingest()): the values in EXTRA_VALUES are added to
+        // the definitions cached under EXTRA_KEY, and all of them are staged
+        // (the new ones with the date -EXTRA_MARK, so that they look
+        // expired, the others in the journal of the ingestion); after the
+        // last batch (EXTRA_SWEEP true, with the validators in
+        // EXTRA_VALIDATORS if known), the staged definitions are marked with
+        // the date EXTRA_MARK and the other definitions of the key are
+        // deleted; with EXTRA_RENEW true, all the definitions of the key are
+        // marked first (the response has not changed); with EXTRA_ABORT
+        // true, the new staged definitions are deleted instead, and the
+        // others keep their previous date (the response has failed)
+        public static final String METHOD_INGEST = "ingest";
+        public static final String EXTRA_KEY = "key";
+        public static final String EXTRA_MARK = "mark";
+        public static final String EXTRA_SWEEP = "sweep";
+        public static final String EXTRA_RENEW = "renew";
+        public static final String EXTRA_ABORT = "abort";
+
+        // result of the last batch (with RESULT_CHANGED_ROWS): the number of
+        // definitions now cached under the key
+        public static final String RESULT_COUNT = "count";
     }
 
-    // database
+    // database (the statements of the hot paths of the service are compiled
+    // for each call, never shared between threads: the SQL is always the
+    // same, so it is only parsed once and then found in the statement cache
+    // of the connection, and no lock is held while waiting for the connection)
     private AcronymDatabaseHelper mDatabase;
 
+    // coalesce the change notifications
+    private ChangeNotifier mNotifier;
+
+    // the changes made by the transaction in progress in the current thread
+    // (null outside of a transaction: the changes are then debounced)
+    private final ThreadLocal<ChangeNotifier.ChangeSet> mTransactionChanges = new ThreadLocal<>();
+
     // URI
     private static final String SCHEME = "content://";
-    private static final String AUTHORITY = "io.github.tonyguyot.acronym.provider";
+    public static final String AUTHORITY = "io.github.tonyguyot.acronym.provider";
     private static final String PATH = "acronym";
+    private static final String PATH_SEARCH = PATH + "/search";
+    private static final String PATH_SUGGEST = PATH + "/suggest";
+    private static final String PATH_NAMES = PATH + "/names";
+    private static final String PATH_KEYS = PATH + "/keys";
+    private static final String PATH_VALIDATOR = PATH + "/validator";
+    private static final String PATH_NAME = PATH + "/name";
+    private static final String PATH_KEY = PATH + "/key";
+    private static final String PATH_FRESHNESS = PATH + "/fresh";
+    private static final String PATH_COUNT = PATH + "/count";
+    private static final String PATH_CHANGES = PATH + "/changes";
+    private static final String PATH_HISTORY = PATH + "/history";
+    private static final String PATH_DEFINITIONS = PATH + "/definitions";
+    private static final String PATH_STATISTICS = PATH + "/statistics";
     public static final Uri CONTENT_URI = Uri.parse(SCHEME + AUTHORITY + "/" + PATH);
+    public static final Uri SEARCH_URI = Uri.parse(SCHEME + AUTHORITY + "/" + PATH_SEARCH);
+    public static final Uri SUGGEST_URI = Uri.parse(SCHEME + AUTHORITY + "/" + PATH_SUGGEST);
+    public static final Uri NAMES_URI = Uri.parse(SCHEME + AUTHORITY + "/" + PATH_NAMES);
+    public static final Uri KEYS_URI = Uri.parse(SCHEME + AUTHORITY + "/" + PATH_KEYS);
+    private static final Uri NAME_URI = Uri.parse(SCHEME + AUTHORITY + "/" + PATH_NAME);
+    private static final Uri KEY_URI = Uri.parse(SCHEME + AUTHORITY + "/" + PATH_KEY);
+    private static final Uri VALIDATOR_URI = Uri.parse(SCHEME + AUTHORITY + "/" + PATH_VALIDATOR);
+    private static final Uri FRESHNESS_URI = Uri.parse(SCHEME + AUTHORITY + "/" + PATH_FRESHNESS);
+    private static final Uri COUNT_URI = Uri.parse(SCHEME + AUTHORITY + "/" + PATH_COUNT);
+    private static final Uri CHANGES_URI = Uri.parse(SCHEME + AUTHORITY + "/" + PATH_CHANGES);
+    private static final Uri HISTORY_URI = Uri.parse(SCHEME + AUTHORITY + "/" + PATH_HISTORY);
+    private static final Uri DEFINITIONS_URI = Uri.parse(SCHEME + AUTHORITY + "/" + PATH_DEFINITIONS);
+    private static final Uri STATISTICS_URI = Uri.parse(SCHEME + AUTHORITY + "/" + PATH_STATISTICS);
+
+    // default maximum number of results of a full-text search
+    private static final int DEFAULT_SEARCH_LIMIT = 50;
+
+    // default maximum number of names suggested for a prefix
+    private static final int DEFAULT_SUGGEST_LIMIT = 10;
+
+    // one day, in milliseconds
+    private static final long DAY = 24 * 60 * 60 * 1000L;
+
+    // default number of pages reclaimed by a maintenance call
+    private static final int DEFAULT_RECLAIMED_PAGES = 64;
+
+    // default number of names in a page of the history
+    private static final int DEFAULT_HISTORY_LIMIT = 50;
 
     // UriMatcher
     private static final int MATCH_ACRONYMS = 1;
     private static final int MATCH_ACRONYM_ID = 2;
+    private static final int MATCH_SEARCH = 3;
+    private static final int MATCH_SUGGEST = 4;
+    private static final int MATCH_NAMES = 5;
+    private static final int MATCH_NAME = 6;
+    private static final int MATCH_FRESHNESS = 7;
+    private static final int MATCH_HISTORY = 8;
+    private static final int MATCH_DEFINITIONS = 9;
+    private static final int MATCH_STATISTICS = 10;
+    private static final int MATCH_KEY = 11;
+    private static final int MATCH_KEYS = 12;
+    private static final int MATCH_VALIDATOR = 13;
+    private static final int MATCH_COUNT = 14;
     private static final UriMatcher sUriMatcher = new UriMatcher(UriMatcher.NO_MATCH);
     static {
         sUriMatcher.addURI(AUTHORITY, PATH, MATCH_ACRONYMS);
         sUriMatcher.addURI(AUTHORITY, PATH + "/#", MATCH_ACRONYM_ID);
+        sUriMatcher.addURI(AUTHORITY, PATH_SEARCH, MATCH_SEARCH);
+        sUriMatcher.addURI(AUTHORITY, PATH_SUGGEST, MATCH_SUGGEST);
+        sUriMatcher.addURI(AUTHORITY, PATH_NAMES, MATCH_NAMES);
+        sUriMatcher.addURI(AUTHORITY, PATH_NAME + "/*", MATCH_NAME);
+        sUriMatcher.addURI(AUTHORITY, PATH_FRESHNESS + "/*", MATCH_FRESHNESS);
+        sUriMatcher.addURI(AUTHORITY, PATH_HISTORY, MATCH_HISTORY);
+        sUriMatcher.addURI(AUTHORITY, PATH_DEFINITIONS + "/*", MATCH_DEFINITIONS);
+        sUriMatcher.addURI(AUTHORITY, PATH_STATISTICS, MATCH_STATISTICS);
+        sUriMatcher.addURI(AUTHORITY, PATH_KEY + "/*", MATCH_KEY);
+        sUriMatcher.addURI(AUTHORITY, PATH_KEYS, MATCH_KEYS);
+        sUriMatcher.addURI(AUTHORITY, PATH_VALIDATOR + "/*", MATCH_VALIDATOR);
+        sUriMatcher.addURI(AUTHORITY, PATH_COUNT + "/*", MATCH_COUNT);
+    }
+
+    // build the URI of all the definitions of a given name
+    // (fast path: query or delete without any selection to parse)
+    public static Uri buildNameUri(String name) {
+        return Uri.withAppendedPath(NAME_URI, name);
+    }
+
+    // build the URI of all the definitions cached under a given lookup key,
+    // whatever the spelling of their name (fast path, like the name URI)
+    public static Uri buildKeyUri(String key) {
+        return Uri.withAppendedPath(KEY_URI, key);
+    }
+
+    // build the URI of a page of the definitions cached under a given lookup
+    // key, ordered by name and definition
+    public static Uri buildKeyPageUri(String key, int offset, int limit) {
+        return buildKeyUri(key).buildUpon()
+                .appendQueryParameter(Metadata.PARAM_OFFSET, String.valueOf(offset))
+                .appendQueryParameter(Metadata.PARAM_LIMIT, String.valueOf(limit))
+                .build();
+    }
+
+    // build the URI of the validators of the definitions cached under a given
+    // lookup key (the cursor is empty if they are not known); they are
+    // written with the definitions, see Metadata.METHOD_WRITE
+    public static Uri buildValidatorUri(String key) {
+        return Uri.withAppendedPath(VALIDATOR_URI, key);
+    }
+
+    // build the URI of the insertion date of the oldest definition cached
+    // under a given lookup key (the cursor is empty if it is not in the cache)
+    public static Uri buildFreshnessUri(String key) {
+        return Uri.withAppendedPath(FRESHNESS_URI, key);
+    }
+
+    // build the URI of the number of definitions cached under a given lookup
+    // key (a single row, with a single column)
+    public static Uri buildCountUri(String key) {
+        return Uri.withAppendedPath(COUNT_URI, key);
+    }
+
+    // build the URI of a full-text search in the definitions and comments
+    public static Uri buildSearchUri(String terms, int limit) {
+        return SEARCH_URI.buildUpon()
+                .appendQueryParameter(Metadata.PARAM_TERMS, terms)
+                .appendQueryParameter(Metadata.PARAM_LIMIT, String.valueOf(limit))
+                .build();
+    }
+
+    // build the URI of the distinct cached names starting with a prefix
+    public static Uri buildSuggestUri(String prefix, int limit) {
+        return SUGGEST_URI.buildUpon()
+                .appendQueryParameter(Metadata.PARAM_TERMS, prefix)
+                .appendQueryParameter(Metadata.PARAM_LIMIT, String.valueOf(limit))
+                .build();
+    }
+
+    // build the URI of the distinct definitions of a given name, in
+    // alphabetical order (definition column only)
+    public static Uri buildDefinitionsUri(String name) {
+        return Uri.withAppendedPath(DEFINITIONS_URI, name);
+    }
+
+    // build the URI of the storage statistics of the cache (a single row)
+    public static Uri buildStatisticsUri(long expirationPeriod) {
+        return STATISTICS_URI.buildUpon()
+                .appendQueryParameter(Metadata.PARAM_EXPIRATION, String.valueOf(expirationPeriod))
+                .build();
+    }
+
+    // build the URI of the first names which follow the given one in
+    // alphabetical order (null = from the beginning), one row per name with
+    // its number of definitions
+    public static Uri buildHistoryPageAfterUri(String name, int limit) {
+        return HISTORY_URI.buildUpon()
+                .appendQueryParameter(Metadata.PARAM_AFTER, name == null ? "" : name)
+                .appendQueryParameter(Metadata.PARAM_LIMIT, String.valueOf(limit))
+                .build();
+    }
+
+    // build the URI of the last names which precede the given one in
+    // alphabetical order, one row per name with its number of definitions
+    public static Uri buildHistoryPageBeforeUri(String name, int limit) {
+        return HISTORY_URI.buildUpon()
+                .appendQueryParameter(Metadata.PARAM_BEFORE, name)
+                .appendQueryParameter(Metadata.PARAM_LIMIT, String.valueOf(limit))
+                .build();
+    }
+
+    // build the URI of the first names from the given one (included) in
+    // alphabetical order, one row per name with its number of definitions
+    public static Uri buildHistoryPageFromUri(String name, int limit) {
+        return HISTORY_URI.buildUpon()
+                .appendQueryParameter(Metadata.PARAM_FROM, name)
+                .appendQueryParameter(Metadata.PARAM_LIMIT, String.valueOf(limit))
+                .build();
+    }
+
+    // build the URI of the given names (those still in the cache), one row
+    // per name with its number of definitions, in the same format as the pages
+    public static Uri buildHistoryNamesUri(Collection<String> names) {
+        Uri.Builder builder = HISTORY_URI.buildUpon();
+        for (String name : names) {
+            builder.appendQueryParameter(Metadata.PARAM_NAME, name);
+        }
+        return builder.build();
+    }
+
+    /**
+     * Retrieve the names of the acronyms affected by a change.
+     * The observers registered on CONTENT_URI (with descendants) receive a
+     * single notification per transaction or per short period of time,
+     * carrying all the changed names.
+     *
+     * @param uri   the URI received by ContentObserver.onChange()
+     * @return      the changed names, or null if the changed acronyms are
+     *              not known (everything must then be reloaded)
+     */
+    public static List<String> getChangedNames(Uri uri) {
+        if (uri == null || !uri.getPath().equals(CHANGES_URI.getPath())) {
+            return null;
+        }
+        return new ArrayList<>(uri.getQueryParameters(Metadata.PARAM_NAME));
     }
 
     // constructor
@@ -63,9 +383,23 @@ public class AcronymProvider extends ContentProvider {
     @Override
     public boolean onCreate() {
         mDatabase = new AcronymDatabaseHelper(getContext());
+        mNotifier = new ChangeNotifier(getContext().getContentResolver(),
+                CONTENT_URI, CHANGES_URI, Metadata.PARAM_NAME);
         return false;
     }
 
+    @Override
+    public Cursor query(Uri uri, String[] projection, String selection,
+                        String[] selectionArgs, String sortOrder,
+                        CancellationSignal cancellationSignal) {
+        // only the suggestions are worth cancelling: they are superseded
+        // each time the user types a new character
+        if (sUriMatcher.match(uri) == MATCH_SUGGEST) {
+            return querySuggestions(uri, cancellationSignal);
+        }
+        return query(uri, projection, selection, selectionArgs, sortOrder);
+    }
+
     @Override
     public Cursor query(Uri uri, String[] projection, String selection,
                         String[] selectionArgs, String sortOrder) {
@@ -81,12 +415,44 @@ public class AcronymProvider extends ContentProvider {
             case MATCH_ACRONYM_ID:
                 queryBuilder.appendWhere(AcronymTable.COLUMN_ID + "=" + uri.getLastPathSegment());
                 break;
+            case MATCH_SEARCH:
+                return querySearch(uri);
+            case MATCH_SUGGEST:
+                return querySuggestions(uri, null);
+            case MATCH_NAMES:
+                return mDatabase.getReadableDatabase().rawQuery(AcronymTable.NAMES_QUERY, null);
+            case MATCH_NAME:
+                return queryByName(uri);
+            case MATCH_KEY:
+                return queryByKey(uri);
+            case MATCH_KEYS:
+                return mDatabase.getReadableDatabase().rawQuery(AcronymTable.KEYS_QUERY, null);
+            case MATCH_VALIDATOR:
+                return mDatabase.getReadableDatabase().rawQuery(
+                        AcronymValidatorTable.LOOKUP_BY_KEY_QUERY,
+                        new String[] { uri.getLastPathSegment() });
+            case MATCH_FRESHNESS:
+                return queryFreshness(uri);
+            case MATCH_COUNT:
+                return mDatabase.getReadableDatabase().rawQuery(
+                        AcronymTable.COUNT_BY_KEY_QUERY,
+                        new String[] { uri.getLastPathSegment() });
+            case MATCH_HISTORY:
+                return queryHistoryPage(uri);
+            case MATCH_STATISTICS:
+                return queryStatistics(uri);
+            case MATCH_DEFINITIONS:
+                return mDatabase.getReadableDatabase().rawQuery(
+                        AcronymTable.DEFINITIONS_BY_NAME_QUERY,
+                        new String[] { uri.getLastPathSegment() });
             default:
                 throw new IllegalArgumentException("Unknown URI: " + uri);
         }
 
         // execute the query
-        SQLiteDatabase db = mDatabase.getWritableDatabase();
+        // (in WAL mode, reads are served by the connection pool and do not
+        // wait for the writer)
+        SQLiteDatabase db = mDatabase.getReadableDatabase();
         Cursor cursor = queryBuilder.query(db,
                 projection,
                 selection,
@@ -98,6 +464,245 @@ public class AcronymProvider extends ContentProvider {
         return cursor;
     }
 
+    // full-text search: rank all the matching definitions and return
+    // only the best ones, ordered by decreasing relevance
+    private Cursor querySearch(Uri uri) {
+        String[] columns = {
+                Metadata.COLUMN_NAME,
+                Metadata.COLUMN_DEFINITION,
+                Metadata.COLUMN_COMMENT,
+                Metadata.COLUMN_SCORE,
+        };
+        MatrixCursor results = new MatrixCursor(columns);
+        String expression = AcronymSearchTable.makeMatchExpression(
+                uri.getQueryParameter(Metadata.PARAM_TERMS));
+        int limit = parseLimit(uri.getQueryParameter(Metadata.PARAM_LIMIT), DEFAULT_SEARCH_LIMIT);
+        if (expression == null || limit <= 0) {
+            return results;
+        }
+
+        // first pass: score every match, but keep only the best ones
+        // (the head of the queue is the worst of the kept results)
+        SQLiteDatabase db = mDatabase.getReadableDatabase();
+        PriorityQueue<SearchHit> best = new PriorityQueue<>(limit);
+        Cursor cursor = db.rawQuery(AcronymSearchTable.MATCH_QUERY, new String[] { expression });
+        try {
+            while (cursor.moveToNext()) {
+                SearchHit hit = new SearchHit(cursor.getLong(0),
+                        AcronymSearchTable.rank(cursor.getBlob(1)));
+                if (best.size() < limit) {
+                    best.add(hit);
+                } else if (best.peek().compareTo(hit) < 0) {
+                    best.poll();
+                    best.add(hit);
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+
+        // second pass: retrieve the content of the kept rows, best first
+        SearchHit[] hits = best.toArray(new SearchHit[best.size()]);
+        Arrays.sort(hits, Collections.reverseOrder());
+        if (hits.length == 0) {
+            return results;
+        }
+        StringBuilder ids = new StringBuilder();
+        for (SearchHit hit : hits) {
+            ids.append(ids.length() == 0 ? "" : ",").append(hit.id);
+        }
+        String[] projection = {
+                AcronymTable.COLUMN_ID,
+                AcronymTable.COLUMN_NAME,
+                AcronymTable.COLUMN_DEFINITION,
+                AcronymTable.COLUMN_COMMENT,
+        };
+        Map<Long, Object[]> rows = new HashMap<>();
+        cursor = db.query(AcronymTable.TABLE_ACRONYM, projection,
+                AcronymTable.COLUMN_ID + " in (" + ids + ")", null, null, null, null);
+        try {
+            while (cursor.moveToNext()) {
+                rows.put(cursor.getLong(0), new Object[] {
+                        cursor.getString(1), cursor.getString(2), cursor.getString(3), null,
+                });
+            }
+        } finally {
+            cursor.close();
+        }
+        for (SearchHit hit : hits) {
+            Object[] row = rows.get(hit.id);
+            if (row != null) {
+                row[3] = hit.score;
+                results.addRow(row);
+            }
+        }
+        return results;
+    }
+
+    // prefix search: the first distinct names in alphabetical order,
+    // read from the name index with a range scan
+    private Cursor querySuggestions(Uri uri, CancellationSignal cancellationSignal) {
+        String prefix = uri.getQueryParameter(Metadata.PARAM_TERMS);
+        int limit = parseLimit(uri.getQueryParameter(Metadata.PARAM_LIMIT), DEFAULT_SUGGEST_LIMIT);
+        if (TextUtils.isEmpty(prefix) || limit <= 0) {
+            return new MatrixCursor(new String[] { Metadata.COLUMN_NAME });
+        }
+        String[] args = {
+                prefix,
+                AcronymTable.getPrefixUpperBound(prefix),
+                String.valueOf(limit),
+        };
+        SQLiteDatabase db = mDatabase.getReadableDatabase();
+        return db.rawQuery(AcronymTable.SUGGESTION_QUERY, args, cancellationSignal);
+    }
+
+    // all the definitions of a name: the SQL is always the same, so it is
+    // compiled only once and then found in the statement cache of the
+    // connection (the projection is always name, definition, comment, date)
+    private Cursor queryByName(Uri uri) {
+        SQLiteDatabase db = mDatabase.getReadableDatabase();
+        Cursor cursor = db.rawQuery(AcronymTable.LOOKUP_BY_NAME_QUERY,
+                new String[] { uri.getLastPathSegment() });
+        // (the changes are notified under CONTENT_URI, see ChangeNotifier)
+        cursor.setNotificationUri(getContext().getContentResolver(), CONTENT_URI);
+        return cursor;
+    }
+
+    // all the definitions cached under a lookup key (same projection as
+    // above), or a page of them if the URI has a limit
+    private Cursor queryByKey(Uri uri) {
+        SQLiteDatabase db = mDatabase.getReadableDatabase();
+        String limit = uri.getQueryParameter(Metadata.PARAM_LIMIT);
+        Cursor cursor;
+        if (TextUtils.isEmpty(limit)) {
+            cursor = db.rawQuery(AcronymTable.LOOKUP_BY_KEY_QUERY,
+                    new String[] { uri.getLastPathSegment() });
+        } else {
+            String[] args = {
+                    uri.getLastPathSegment(),
+                    String.valueOf(parseLimit(limit, 0)),
+                    String.valueOf(parseLimit(uri.getQueryParameter(Metadata.PARAM_OFFSET), 0)),
+            };
+            cursor = db.rawQuery(AcronymTable.LOOKUP_PAGE_BY_KEY_QUERY, args);
+        }
+        cursor.setNotificationUri(getContext().getContentResolver(), CONTENT_URI);
+        return cursor;
+    }
+
+    // the insertion date of the oldest definition cached under a lookup key
+    private Cursor queryFreshness(Uri uri) {
+        SQLiteDatabase db = mDatabase.getReadableDatabase();
+        long oldest = DatabaseUtils.longForQuery(db, AcronymTable.FRESHNESS_QUERY,
+                new String[] { uri.getLastPathSegment() }); // 0 when there is no row
+        MatrixCursor cursor = new MatrixCursor(new String[] { Metadata.COLUMN_INSERTION_DATE }, 1);
+        if (oldest != 0L) {
+            // (a staged definition, see ingest(), makes the key expired)
+            cursor.addRow(new Object[] { Math.max(oldest, 0L) });
+        }
+        return cursor;
+    }
+
+    // a page of the history: a limited number of consecutive names, with
+    // their number of distinct definitions (name, count), ordered by name
+    private Cursor queryHistoryPage(Uri uri) {
+        int limit = parseLimit(uri.getQueryParameter(Metadata.PARAM_LIMIT), DEFAULT_HISTORY_LIMIT);
+        String before = uri.getQueryParameter(Metadata.PARAM_BEFORE);
+        String from = uri.getQueryParameter(Metadata.PARAM_FROM);
+        String after = uri.getQueryParameter(Metadata.PARAM_AFTER);
+        List<String> names = uri.getQueryParameters(Metadata.PARAM_NAME);
+        SQLiteDatabase db = mDatabase.getReadableDatabase();
+        if (!names.isEmpty()) {
+            String[] args = names.toArray(new String[names.size() + 1]);
+            args[names.size()] = String.valueOf(names.size());
+            return db.rawQuery(AcronymTable.makeHistoryNamesQuery(names.size()), args);
+        }
+        if (before != null) {
+            return db.rawQuery(AcronymTable.HISTORY_PAGE_BEFORE_QUERY,
+                    new String[] { before, String.valueOf(limit) });
+        }
+        if (from != null) {
+            return db.rawQuery(AcronymTable.HISTORY_PAGE_FROM_QUERY,
+                    new String[] { from, String.valueOf(limit) });
+        }
+        return db.rawQuery(AcronymTable.HISTORY_PAGE_AFTER_QUERY,
+                new String[] { after == null ? "" : after, String.valueOf(limit) });
+    }
+
+    // the storage statistics: everything is computed by SQLite, with one
+    // scan of the table and two pragmas for the size of the file
+    private Cursor queryStatistics(Uri uri) {
+        long expirationPeriod;
+        try {
+            expirationPeriod = Long.parseLong(uri.getQueryParameter(Metadata.PARAM_EXPIRATION));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid expiration period: " + uri);
+        }
+        long now = System.currentTimeMillis();
+        String[] args = {
+                String.valueOf(now - expirationPeriod),
+                String.valueOf(now - DAY),
+                String.valueOf(now - 7 * DAY),
+                String.valueOf(now - 30 * DAY),
+        };
+        String[] columns = {
+                Metadata.COLUMN_DEFINITION_COUNT,
+                Metadata.COLUMN_ACRONYM_COUNT,
+                Metadata.COLUMN_TEXT_BYTES,
+                Metadata.COLUMN_EXPIRED_COUNT,
+                Metadata.COLUMN_AGE_DAY,
+                Metadata.COLUMN_AGE_WEEK,
+                Metadata.COLUMN_AGE_MONTH,
+                Metadata.COLUMN_AGE_OLDER,
+                Metadata.COLUMN_DATABASE_BYTES,
+                Metadata.COLUMN_FREE_BYTES,
+        };
+        SQLiteDatabase db = mDatabase.getReadableDatabase();
+        Object[] row = new Object[columns.length];
+        Cursor cursor = db.rawQuery(AcronymTable.STATISTICS_QUERY, args);
+        try {
+            cursor.moveToFirst();
+            for (int i = 0; i < cursor.getColumnCount(); i++) {
+                row[i] = cursor.getLong(i);
+            }
+        } finally {
+            cursor.close();
+        }
+        long pageSize = db.getPageSize();
+        row[8] = pageSize * DatabaseUtils.longForQuery(db, "pragma page_count", null);
+        row[9] = pageSize * DatabaseUtils.longForQuery(db, "pragma freelist_count", null);
+        MatrixCursor results = new MatrixCursor(columns, 1);
+        results.addRow(row);
+        return results;
+    }
+
+    // the limit parameter of a query (or the default value if absent)
+    private static int parseLimit(String limit, int defaultLimit) {
+        if (TextUtils.isEmpty(limit)) {
+            return defaultLimit;
+        }
+        try {
+            return Integer.parseInt(limit);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid limit: " + limit);
+        }
+    }
+
+    // one definition matching a full-text search, with its relevance
+    private static class SearchHit implements Comparable<SearchHit> {
+        final long id;
+        final double score;
+
+        SearchHit(long id, double score) {
+            this.id = id;
+            this.score = score;
+        }
+
+        @Override
+        public int compareTo(@NonNull SearchHit other) {
+            return Double.compare(score, other.score);
+        }
+    }
+
     @Override
     public Uri insert(Uri uri, ContentValues values) {
         SQLiteDatabase db = mDatabase.getWritableDatabase();
@@ -105,16 +710,257 @@ public class AcronymProvider extends ContentProvider {
         int uriType = sUriMatcher.match(uri);
         switch (uriType) {
             case MATCH_ACRONYMS:
-                id = db.insert(AcronymTable.TABLE_ACRONYM, null, values);
+                id = insertDefinition(db, values);
                 break;
             default:
                 throw new IllegalArgumentException("Unknown URI: " + uri);
         }
 
-        getContext().getContentResolver().notifyChange(uri, null);
+        if (id != -1L) {
+            onChanged(values.getAsString(AcronymTable.COLUMN_NAME));
+        }
         return Uri.parse(PATH + "/" + id);
     }
 
+    // insert all the definitions in a single transaction
+    // (on the URI of a lookup key: replace the definitions cached under this
+    // key by the given ones, see refreshKey())
+    @Override
+    public int bulkInsert(Uri uri, @NonNull ContentValues[] values) {
+        int uriType = sUriMatcher.match(uri);
+        if (uriType == MATCH_KEY) {
+            return refreshKey(uri.getLastPathSegment(), values);
+        }
+        if (uriType != MATCH_ACRONYMS) {
+            throw new IllegalArgumentException("Unknown URI: " + uri);
+        }
+
+        SQLiteDatabase db = mDatabase.getWritableDatabase();
+        int rowsInserted = 0;
+        boolean isSuccessful = false;
+        ChangeNotifier.ChangeSet changes = beginTransaction(db);
+        try {
+            for (ContentValues row : values) {
+                if (insertDefinition(db, row) != -1L) {
+                    rowsInserted++;
+                    onChanged(row.getAsString(AcronymTable.COLUMN_NAME));
+                }
+            }
+            db.setTransactionSuccessful();
+            isSuccessful = true;
+        } finally {
+            endTransaction(db, changes, isSuccessful);
+        }
+        return rowsInserted;
+    }
+
+    // replace the definitions cached under a key by the given ones, in a
+    // single transaction, but only write what has changed: the new
+    // definitions are inserted, the definitions which are not returned any
+    // more are deleted, the modified comments are updated, and then all the
+    // definitions of the key are marked as fresh. Only the names of the
+    // inserted, deleted or modified definitions are notified: refreshing an
+    // acronym which has not changed notifies nothing.
+    // Returns the number of definitions inserted, deleted or modified.
+    private int refreshKey(String key, ContentValues[] values) {
+        SQLiteDatabase db = mDatabase.getWritableDatabase();
+        int rowsChanged = 0;
+        long insertionDate = 0L;
+        boolean isSuccessful = false;
+        ChangeNotifier.ChangeSet changes = beginTransaction(db);
+        try {
+            // the current definitions, by identity (name and definition)
+            Map<String, CachedRow> cached = new HashMap<>();
+            Cursor cursor = db.rawQuery(AcronymTable.ROWS_BY_KEY_QUERY, new String[] { key });
+            try {
+                while (cursor.moveToNext()) {
+                    CachedRow row = new CachedRow(cursor.getLong(0), cursor.getString(1),
+                            cursor.getString(3));
+                    cached.put(identity(row.name, cursor.getString(2)), row);
+                }
+            } finally {
+                cursor.close();
+            }
+
+            // insert the new definitions, update the modified ones
+            for (ContentValues row : values) {
+                String name = row.getAsString(AcronymTable.COLUMN_NAME);
+                String comment = row.getAsString(AcronymTable.COLUMN_COMMENT);
+                Long date = row.getAsLong(AcronymTable.COLUMN_INSERTION_DATE);
+                insertionDate = Math.max(insertionDate, date == null ? 0L : date);
+                CachedRow previous = cached.remove(
+                        identity(name, row.getAsString(AcronymTable.COLUMN_DEFINITION)));
+                if (previous == null) {
+                    ContentValues keyed = new ContentValues(row);
+                    keyed.put(AcronymTable.COLUMN_KEY, key);
+                    if (insertDefinition(db, keyed) != -1L) {
+                        rowsChanged++;
+                        onChanged(name);
+                    }
+                } else if (!TextUtils.equals(previous.comment, comment)) {
+                    ContentValues update = new ContentValues(1);
+                    update.put(AcronymTable.COLUMN_COMMENT, comment);
+                    rowsChanged += db.update(AcronymTable.TABLE_ACRONYM, update,
+                            AcronymTable.COLUMN_ID + "=" + previous.id, null);
+                    onChanged(name);
+                }
+            }
+
+            // delete the definitions which are not returned any more
+            for (CachedRow removed : cached.values()) {
+                rowsChanged += db.delete(AcronymTable.TABLE_ACRONYM,
+                        AcronymTable.COLUMN_ID + "=" + removed.id, null);
+                onChanged(removed.name);
+            }
+
+            // the unchanged definitions are fresh again (not notified: the
+            // insertion date is not displayed)
+            SQLiteStatement touch = db.compileStatement(AcronymTable.TOUCH_BY_KEY_CMD);
+            try {
+                touch.bindLong(1, insertionDate > 0L ? insertionDate : System.currentTimeMillis());
+                touch.bindString(2, key);
+                touch.executeUpdateDelete();
+            } finally {
+                touch.close();
+            }
+            db.setTransactionSuccessful();
+            isSuccessful = true;
+        } finally {
+            endTransaction(db, changes, isSuccessful);
+        }
+        return rowsChanged;
+    }
+
+    // a definition read by refreshKey()
+    private static class CachedRow {
+        final long id;
+        final String name;
+        final String comment;
+
+        CachedRow(long id, String name, String comment) {
+            this.id = id;
+            this.name = name;
+            this.comment = comment;
+        }
+    }
+
+    // the identity of a definition under a given key
+    private static String identity(String name, String definition) {
+        return name + '\n' + definition;
+    }
+
+    // apply all the operations in a single transaction, and notify the
+    // observers only once, when the transaction is committed
+    @Override
+    public @NonNull ContentProviderResult[] applyBatch(
+            @NonNull ArrayList<ContentProviderOperation> operations)
+            throws OperationApplicationException {
+        SQLiteDatabase db = mDatabase.getWritableDatabase();
+        boolean isSuccessful = false;
+        ChangeNotifier.ChangeSet changes = beginTransaction(db);
+        try {
+            ContentProviderResult[] results = super.applyBatch(operations);
+            db.setTransactionSuccessful();
+            isSuccessful = true;
+            return results;
+        } finally {
+            endTransaction(db, changes, isSuccessful);
+        }
+    }
+
+    // start a transaction which collects the changes of the current thread
+    // (returns null if a transaction is already in progress: the changes
+    // are then notified by the outer one)
+    private ChangeNotifier.ChangeSet beginTransaction(SQLiteDatabase db) {
+        db.beginTransaction();
+        if (mTransactionChanges.get() != null) {
+            return null;
+        }
+        ChangeNotifier.ChangeSet changes = new ChangeNotifier.ChangeSet();
+        mTransactionChanges.set(changes);
+        return changes;
+    }
+
+    // end the transaction, and notify its changes if it was the outermost
+    // one and it has been committed (nothing to notify after a rollback)
+    private void endTransaction(SQLiteDatabase db, ChangeNotifier.ChangeSet changes,
+                                boolean isSuccessful) {
+        try {
+            db.endTransaction();
+        } finally {
+            if (changes != null) {
+                mTransactionChanges.remove();
+                if (isSuccessful) {
+                    mNotifier.notifyNow(changes);
+                }
+            }
+        }
+    }
+
+    // record a change of the acronym (null = unknown acronyms)
+    private void onChanged(String name) {
+        ChangeNotifier.ChangeSet changes = mTransactionChanges.get();
+        if (changes != null) {
+            changes.add(name);
+        } else {
+            mNotifier.post(name);
+        }
+    }
+
+    // insert one definition with the prepared statement when the values
+    // contain only the expected columns (which is always the case for
+    // the values built by the cache mediator); returns -1 if the definition
+    // is already cached under the same key (nothing is inserted nor notified)
+    private long insertDefinition(SQLiteDatabase db, ContentValues values) {
+        for (String column : values.keySet()) {
+            if (!AcronymTable.COLUMN_NAME.equals(column)
+                    && !AcronymTable.COLUMN_DEFINITION.equals(column)
+                    && !AcronymTable.COLUMN_COMMENT.equals(column)
+                    && !AcronymTable.COLUMN_INSERTION_DATE.equals(column)
+                    && !AcronymTable.COLUMN_KEY.equals(column)) {
+                return db.insertWithOnConflict(AcronymTable.TABLE_ACRONYM, null, withKey(values),
+                        SQLiteDatabase.CONFLICT_IGNORE);
+            }
+        }
+
+        String name = values.getAsString(AcronymTable.COLUMN_NAME);
+        String definition = values.getAsString(AcronymTable.COLUMN_DEFINITION);
+        String comment = values.getAsString(AcronymTable.COLUMN_COMMENT);
+        Long insertionDate = values.getAsLong(AcronymTable.COLUMN_INSERTION_DATE);
+        if (name == null || definition == null || insertionDate == null) {
+            // let the generic path report the constraint violation
+            return db.insert(AcronymTable.TABLE_ACRONYM, null, values);
+        }
+        String key = values.getAsString(AcronymTable.COLUMN_KEY);
+        SQLiteStatement statement = db.compileStatement(AcronymTable.INSERT_DEFINITION_CMD);
+        try {
+            statement.bindString(1, name);
+            statement.bindString(2, definition);
+            if (comment == null) {
+                statement.bindNull(3);
+            } else {
+                statement.bindString(3, comment);
+            }
+            statement.bindLong(4, insertionDate);
+            statement.bindString(5, key != null ? key : AcronymKey.of(name));
+            return statement.executeInsert();
+        } finally {
+            statement.close();
+        }
+    }
+
+    // the values completed with the lookup key of their name, if missing
+    private static ContentValues withKey(ContentValues values) {
+        if (values.containsKey(AcronymTable.COLUMN_KEY)
+                || !values.containsKey(AcronymTable.COLUMN_NAME)) {
+            return values;
+        }
+        ContentValues completed = new ContentValues(values);
+        completed.put(AcronymTable.COLUMN_KEY,
+                AcronymKey.of(values.getAsString(AcronymTable.COLUMN_NAME)));
+        return completed;
+    }
+
     @Override
     public int update(Uri uri, ContentValues values, String selection,
                       String[] selectionArgs) {
@@ -142,7 +988,9 @@ public class AcronymProvider extends ContentProvider {
                 throw new IllegalArgumentException("Unknown URI: " + uri);
         }
 
-        getContext().getContentResolver().notifyChange(uri, null);
+        if (rowsUpdated > 0) {
+            onChanged(null); // the names of the updated rows are not known
+        }
         return rowsUpdated;
     }
 
@@ -150,12 +998,18 @@ public class AcronymProvider extends ContentProvider {
     public int delete(Uri uri, String selection, String[] selectionArgs) {
         SQLiteDatabase db = mDatabase.getWritableDatabase();
         int rowsDeleted = 0;
+        String name = null;
 
         int uriType = sUriMatcher.match(uri);
         switch (uriType) {
             case MATCH_ACRONYMS:
                 rowsDeleted = db.delete(AcronymTable.TABLE_ACRONYM,
                         selection, selectionArgs);
+                if (TextUtils.isEmpty(selection)) {
+                    // everything: the validators and the journal are useless too
+                    db.delete(AcronymValidatorTable.TABLE_VALIDATOR, null, null);
+                    db.delete(AcronymIngestTable.TABLE_INGEST, null, null);
+                }
                 break;
             case MATCH_ACRONYM_ID:
                 String id = uri.getLastPathSegment();
@@ -168,14 +1022,290 @@ public class AcronymProvider extends ContentProvider {
                             selectionArgs);
                 }
                 break;
+            case MATCH_NAME:
+                name = uri.getLastPathSegment();
+                SQLiteStatement statement = db.compileStatement(AcronymTable.DELETE_BY_NAME_CMD);
+                try {
+                    statement.bindString(1, name);
+                    rowsDeleted = statement.executeUpdateDelete();
+                } finally {
+                    statement.close();
+                }
+                break;
+            case MATCH_KEY:
+                return deleteByKey(db, uri.getLastPathSegment());
             default:
                 throw new IllegalArgumentException("Unknown URI: " + uri);
         }
 
-        getContext().getContentResolver().notifyChange(uri, null);
+        if (rowsDeleted > 0) {
+            onChanged(name); // null (= everything) if deleted by selection
+        }
         return rowsDeleted;
     }
 
+    // delete all the definitions cached under a lookup key: the observers
+    // are notified of the names actually deleted, read in the same transaction
+    private int deleteByKey(SQLiteDatabase db, String key) {
+        int rowsDeleted;
+        boolean isSuccessful = false;
+        ChangeNotifier.ChangeSet changes = beginTransaction(db);
+        try {
+            Cursor cursor = db.rawQuery(AcronymTable.NAMES_BY_KEY_QUERY, new String[] { key });
+            try {
+                while (cursor.moveToNext()) {
+                    onChanged(cursor.getString(0));
+                }
+            } finally {
+                cursor.close();
+            }
+            SQLiteStatement statement = db.compileStatement(AcronymTable.DELETE_BY_KEY_CMD);
+            try {
+                statement.bindString(1, key);
+                rowsDeleted = statement.executeUpdateDelete();
+            } finally {
+                statement.close();
+            }
+            db.execSQL(AcronymValidatorTable.DELETE_BY_KEY_CMD, new Object[] { key });
+            db.setTransactionSuccessful();
+            isSuccessful = true;
+        } finally {
+            endTransaction(db, changes, isSuccessful);
+        }
+        return rowsDeleted;
+    }
+
+    // the maintenance of the database file: they must not be called within
+    // a transaction, and the caller is expected to run them in the background
+    @Override
+    public Bundle call(@NonNull String method, String arg, Bundle extras) {
+        SQLiteDatabase db = mDatabase.getWritableDatabase();
+        switch (method) {
+            case Metadata.METHOD_RECLAIM_SPACE:
+                Bundle result = new Bundle();
+                if (AcronymDatabaseHelper.isIncremental(db)) {
+                    int maxPages = parseLimit(arg, DEFAULT_RECLAIMED_PAGES);
+                    result.putLong(Metadata.RESULT_RECLAIMED_PAGES,
+                            AcronymDatabaseHelper.reclaimFreePages(db, maxPages));
+                    result.putLong(Metadata.RESULT_FREE_PAGES,
+                            AcronymDatabaseHelper.getFreePages(db));
+                } else {
+                    // nothing can be reclaimed before the file is converted
+                    result.putLong(Metadata.RESULT_RECLAIMED_PAGES, 0L);
+                    result.putLong(Metadata.RESULT_FREE_PAGES, 0L);
+                }
+                return result;
+            case Metadata.METHOD_CONVERT:
+                result = new Bundle();
+                long freePages = 0L;
+                if (!AcronymDatabaseHelper.isIncremental(db)) {
+                    // one time only, the next calls do nothing
+                    freePages = AcronymDatabaseHelper.getFreePages(db);
+                    AcronymDatabaseHelper.convertToIncremental(db);
+                }
+                result.putLong(Metadata.RESULT_RECLAIMED_PAGES, freePages);
+                result.putLong(Metadata.RESULT_FREE_PAGES, AcronymDatabaseHelper.getFreePages(db));
+                return result;
+            case Metadata.METHOD_ANALYZE:
+                AcronymDatabaseHelper.analyze(db);
+                return null;
+            case Metadata.METHOD_WRITE:
+                result = new Bundle();
+                result.putInt(Metadata.RESULT_CHANGED_ROWS, writeAll(db, extras));
+                return result;
+            case Metadata.METHOD_INGEST:
+                return ingest(db, extras);
+            default:
+                return super.call(method, arg, extras);
+        }
+    }
+
+    // the write method: all the keys in one transaction, and therefore one
+    // notification (the transactions of the keys are nested in this one)
+    private int writeAll(SQLiteDatabase db, Bundle extras) {
+        List<String> keys = extras.getStringArrayList(Metadata.EXTRA_KEYS);
+        boolean[] replace = extras.getBooleanArray(Metadata.EXTRA_REPLACE);
+        if (keys == null || replace == null || replace.length != keys.size()) {
+            throw new IllegalArgumentException("Invalid write: " + extras);
+        }
+        int rowsChanged = 0;
+        boolean isSuccessful = false;
+        ChangeNotifier.ChangeSet changes = beginTransaction(db);
+        try {
+            for (int i = 0; i < keys.size(); i++) {
+                Parcelable[] rows = extras.getParcelableArray(Metadata.EXTRA_VALUES + i);
+                if (rows == null) {
+                    throw new IllegalArgumentException("Missing values for " + keys.get(i));
+                }
+                ContentValues[] values = Arrays.copyOf(rows, rows.length, ContentValues[].class);
+                rowsChanged += replace[i]
+                        ? refreshKey(keys.get(i), values)
+                        : bulkInsert(CONTENT_URI, values);
+                ContentValues validators = extras.getParcelable(Metadata.EXTRA_VALIDATORS + i);
+                if (validators != null) {
+                    ContentValues keyed = new ContentValues(validators);
+                    keyed.put(AcronymValidatorTable.COLUMN_KEY, keys.get(i));
+                    db.insertWithOnConflict(AcronymValidatorTable.TABLE_VALIDATOR, null, keyed,
+                            SQLiteDatabase.CONFLICT_REPLACE);
+                }
+            }
+            db.setTransactionSuccessful();
+            isSuccessful = true;
+        } finally {
+            endTransaction(db, changes, isSuccessful);
+        }
+        return rowsChanged;
+    }
+
+    // the ingest method: one batch in one transaction. The new definitions
+    // are inserted, the modified comments are updated, and the definitions
+    // already cached are marked, so that the previous content of the key
+    // never has to be read (the batches of a response do not fit in memory
+    // as a whole). The definitions which are not returned any more are the
+    // ones left unmarked, deleted with the last batch. Until then, the
+    // marking is only staged: the new definitions have a negative date, and
+    // the definitions already cached keep theirs, only recorded in the
+    // journal. If the response fails, the new definitions are deleted and
+    // the journal is forgotten: the key is left as it was before.
+    private Bundle ingest(SQLiteDatabase db, Bundle extras) {
+        String key = extras.getString(Metadata.EXTRA_KEY);
+        long mark = extras.getLong(Metadata.EXTRA_MARK);
+        Parcelable[] rows = extras.getParcelableArray(Metadata.EXTRA_VALUES);
+        if (key == null || mark <= 0L) {
+            throw new IllegalArgumentException("Invalid ingest: " + extras);
+        }
+        Bundle result = new Bundle();
+        int rowsChanged = 0;
+        boolean isSuccessful = false;
+        ChangeNotifier.ChangeSet changes = beginTransaction(db);
+        try {
+            if (extras.getBoolean(Metadata.EXTRA_ABORT)) {
+                rowsChanged += discardKey(db, key, -mark);
+                db.execSQL(AcronymIngestTable.DELETE_BY_KEY_CMD, new Object[] { key });
+            }
+            if (extras.getBoolean(Metadata.EXTRA_RENEW)) {
+                db.execSQL(AcronymTable.TOUCH_BY_KEY_CMD, new Object[] { mark, key });
+            }
+            if (rows != null) {
+                SQLiteStatement update = db.compileStatement(AcronymTable.UPDATE_COMMENT_CMD);
+                SQLiteStatement record =
+                        db.compileStatement(AcronymIngestTable.RECORD_DEFINITION_CMD);
+                try {
+                    for (Parcelable row : rows) {
+                        rowsChanged += ingestDefinition(db, key, mark, (ContentValues) row,
+                                update, record);
+                    }
+                } finally {
+                    update.close();
+                    record.close();
+                }
+            }
+            if (extras.getBoolean(Metadata.EXTRA_SWEEP)) {
+                db.execSQL(AcronymTable.PUBLISH_STAGED_BY_KEY_CMD,
+                        new Object[] { mark, key, -mark, key, mark });
+                db.execSQL(AcronymIngestTable.DELETE_BY_KEY_CMD, new Object[] { key });
+                rowsChanged += sweepKey(db, key, mark);
+                ContentValues validators = extras.getParcelable(Metadata.EXTRA_VALIDATORS);
+                if (validators != null) {
+                    ContentValues keyed = new ContentValues(validators);
+                    keyed.put(AcronymValidatorTable.COLUMN_KEY, key);
+                    db.insertWithOnConflict(AcronymValidatorTable.TABLE_VALIDATOR, null, keyed,
+                            SQLiteDatabase.CONFLICT_REPLACE);
+                }
+                result.putInt(Metadata.RESULT_COUNT, (int) DatabaseUtils.longForQuery(db,
+                        AcronymTable.COUNT_BY_KEY_QUERY, new String[] { key }));
+            }
+            db.setTransactionSuccessful();
+            isSuccessful = true;
+        } finally {
+            endTransaction(db, changes, isSuccessful);
+        }
+        result.putInt(Metadata.RESULT_CHANGED_ROWS, rowsChanged);
+        return result;
+    }
+
+    // add one definition to a key, staged with the date -mark, or update
+    // the cached one and record it in the journal of the ingestion of the
+    // given date (returns the number of definitions changed: 0 or 1)
+    private int ingestDefinition(SQLiteDatabase db, String key, long mark, ContentValues row,
+                                 SQLiteStatement update, SQLiteStatement record) {
+        ContentValues keyed = new ContentValues(row);
+        keyed.put(AcronymTable.COLUMN_KEY, key);
+        keyed.put(AcronymTable.COLUMN_INSERTION_DATE, -mark);
+        String name = keyed.getAsString(AcronymTable.COLUMN_NAME);
+        if (insertDefinition(db, keyed) != -1L) {
+            onChanged(name);
+            return 1;
+        }
+        String definition = keyed.getAsString(AcronymTable.COLUMN_DEFINITION);
+        String comment = keyed.getAsString(AcronymTable.COLUMN_COMMENT);
+        update.clearBindings();
+        if (comment == null) {
+            update.bindNull(1);
+            update.bindNull(5);
+        } else {
+            update.bindString(1, comment);
+            update.bindString(5, comment);
+        }
+        update.bindString(2, key);
+        update.bindString(3, name);
+        update.bindString(4, definition);
+        int rowsChanged = update.executeUpdateDelete();
+        if (rowsChanged > 0) {
+            onChanged(name);
+        }
+        record.bindLong(1, mark);
+        record.bindString(2, key);
+        record.bindString(3, name);
+        record.bindString(4, definition);
+        record.executeInsert();
+        return rowsChanged;
+    }
+
+    // delete the definitions of a key which have not been marked, and
+    // notify their names
+    private int sweepKey(SQLiteDatabase db, String key, long mark) {
+        String[] args = { key, String.valueOf(mark) };
+        Cursor cursor = db.rawQuery(AcronymTable.STALE_NAMES_BY_KEY_QUERY, args);
+        try {
+            while (cursor.moveToNext()) {
+                onChanged(cursor.getString(0));
+            }
+        } finally {
+            cursor.close();
+        }
+        SQLiteStatement delete = db.compileStatement(AcronymTable.DELETE_STALE_BY_KEY_CMD);
+        try {
+            delete.bindString(1, key);
+            delete.bindLong(2, mark);
+            return delete.executeUpdateDelete();
+        } finally {
+            delete.close();
+        }
+    }
+
+    // delete the definitions of a key marked with the given date, and
+    // notify their names
+    private int discardKey(SQLiteDatabase db, String key, long date) {
+        String[] args = { key, String.valueOf(date) };
+        Cursor cursor = db.rawQuery(AcronymTable.STAGED_NAMES_BY_KEY_QUERY, args);
+        try {
+            while (cursor.moveToNext()) {
+                onChanged(cursor.getString(0));
+            }
+        } finally {
+            cursor.close();
+        }
+        SQLiteStatement delete = db.compileStatement(AcronymTable.DELETE_STAGED_BY_KEY_CMD);
+        try {
+            delete.bindString(1, key);
+            delete.bindLong(2, date);
+            return delete.executeUpdateDelete();
+        } finally {
+            delete.close();
+        }
+    }
+
     @Override
     public String getType(Uri uri) {
         return null;
@@ -0,0 +1,154 @@
+/*
+ * Copyright (C) 2016 Tony Guyot
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.tonyguyot.acronym.provider;
+
+import android.content.ContentResolver;
+import android.net.Uri;
+import android.os.Handler;
+import android.os.Looper;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Coalesce the change notifications of the content provider.
+ * The changes made outside of a transaction are accumulated during a short
+ * debounce window, the changes made inside a transaction are notified once
+ * when the transaction is committed. Either way, the observers receive a
+ * single notification carrying the names of all the changed acronyms.
+ */
+class ChangeNotifier {
+
+    // delay during which the changes are accumulated (in milliseconds)
+    private static final long DEBOUNCE_DELAY = 100L;
+
+    // above this number of names, the observers are simply asked to reload
+    // everything (this keeps the notification URI reasonably short)
+    private static final int MAX_NAMES = 64;
+
+    // the names of the changed acronyms, or "everything" if some of the
+    // changed acronyms are not known (e.g. delete with a selection)
+    static class ChangeSet {
+        private final Set<String> mNames = new LinkedHashSet<>();
+        private boolean mIsEverything = false;
+
+        void add(String name) {
+            if (name == null) {
+                mIsEverything = true;
+            } else if (!mIsEverything) {
+                mNames.add(name);
+                if (mNames.size() > MAX_NAMES) {
+                    mIsEverything = true;
+                }
+            }
+        }
+
+        void addAll(ChangeSet other) {
+            if (other.mIsEverything) {
+                mIsEverything = true;
+            } else {
+                for (String name : other.mNames) {
+                    add(name);
+                }
+            }
+        }
+
+        boolean isEmpty() {
+            return !mIsEverything && mNames.isEmpty();
+        }
+
+        // the URI describing the change
+        Uri toUri(Uri baseUri, Uri changesUri, String nameParameter) {
+            if (mIsEverything) {
+                return baseUri;
+            }
+            Uri.Builder builder = changesUri.buildUpon();
+            for (String name : mNames) {
+                builder.appendQueryParameter(nameParameter, name);
+            }
+            return builder.build();
+        }
+    }
+
+    private final ContentResolver mResolver;
+    private final Uri mBaseUri;
+    private final Uri mChangesUri;
+    private final String mNameParameter;
+    private final Handler mHandler = new Handler(Looper.getMainLooper());
+
+    // the changes accumulated during the current debounce window
+    private ChangeSet mPending = new ChangeSet();
+    private boolean mIsScheduled = false;
+
+    private final Runnable mFlush = new Runnable() {
+        @Override
+        public void run() {
+            flush();
+        }
+    };
+
+    ChangeNotifier(ContentResolver resolver, Uri baseUri, Uri changesUri, String nameParameter) {
+        mResolver = resolver;
+        mBaseUri = baseUri;
+        mChangesUri = changesUri;
+        mNameParameter = nameParameter;
+    }
+
+    // an acronym has been changed outside of any transaction
+    // (null name = unknown acronyms)
+    synchronized void post(String name) {
+        mPending.add(name);
+        if (!mIsScheduled) {
+            mIsScheduled = true;
+            mHandler.postDelayed(mFlush, DEBOUNCE_DELAY);
+        }
+    }
+
+    // a transaction has been committed: notify its changes (and any change
+    // waiting for the end of the debounce window) right now
+    void notifyNow(ChangeSet changes) {
+        ChangeSet toNotify;
+        synchronized (this) {
+            mPending.addAll(changes);
+            toNotify = takePending();
+        }
+        send(toNotify);
+    }
+
+    // end of the debounce window
+    private void flush() {
+        ChangeSet toNotify;
+        synchronized (this) {
+            toNotify = takePending();
+        }
+        send(toNotify);
+    }
+
+    // must be called with the lock held
+    private ChangeSet takePending() {
+        ChangeSet pending = mPending;
+        mPending = new ChangeSet();
+        mHandler.removeCallbacks(mFlush);
+        mIsScheduled = false;
+        return pending;
+    }
+
+    private void send(ChangeSet changes) {
+        if (!changes.isEmpty()) {
+            mResolver.notifyChange(changes.toUri(mBaseUri, mChangesUri, mNameParameter), null);
+        }
+    }
+}
@@ -17,33 +17,108 @@ package io.github.tonyguyot.acronym.ui;
 
 import android.content.Context;
 import android.graphics.drawable.Drawable;
+import android.os.AsyncTask;
 import android.support.v7.widget.RecyclerView;
 import android.text.TextUtils;
+import android.util.LruCache;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.TextView;
 
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
 import java.util.Set;
-import java.util.TreeSet;
 
 import io.github.tonyguyot.acronym.R;
-import io.github.tonyguyot.acronym.data.Acronym;
+import io.github.tonyguyot.acronym.data.AcronymSummary;
+import io.github.tonyguyot.acronym.operations.AcronymCacheMediator;
 import io.github.tonyguyot.acronym.utils.CompatUtils;
 
 /**
  * Adapter class for the Recycler View displaying the results in
  * the history pane.
+ * The history is read from the cache one page of names at a time, when the
+ * user scrolls close to the first or the last loaded name. Only a limited
+ * window of pages is kept in memory: the pages at the other end of the
+ * window are dropped, and read again if the user scrolls back to them.
+ * Only the names and the number of definitions are read with the pages:
+ * the definitions of an acronym are read when the user expands it.
+ * The loaded rows are indexed by section (first letter of the names), so
+ * that the user can jump to a section without scrolling through the rows.
+ * When the cache changes, only the changed names of the window are read
+ * again, and the differences with the displayed rows are computed in the
+ * background, so that only the changed rows are redrawn.
  */
 public class HistoryAdapter extends RecyclerView.Adapter<HistoryAdapter.ViewHolder> {
 
-    // the data set and its index
-    private Map<String, Set<String>> mDataSet;
-    private List<String> mDataIndex;
+    // number of names read at once
+    private static final int PAGE_SIZE = 50;
+
+    // maximum number of names kept in memory
+    private static final int MAX_LOADED = 4 * PAGE_SIZE;
+
+    // a new page is read when the user is this close to an end of the window
+    private static final int LOAD_THRESHOLD = PAGE_SIZE / 4;
+
+    // number of acronyms whose definitions are kept in memory
+    private static final int MAX_CACHED_DEFINITIONS = 32;
+
+    // kinds of row updates computed by a refresh
+    private static final int UPDATE_INSERT = 0;
+    private static final int UPDATE_REMOVE = 1;
+    private static final int UPDATE_CHANGE = 2;
+
+    // alphabetical order of the names (same order as the database, except
+    // for the characters outside of the basic multilingual plane)
+    private static final Comparator<AcronymSummary> NAME_ORDER = new Comparator<AcronymSummary>() {
+        @Override
+        public int compare(AcronymSummary lhs, AcronymSummary rhs) {
+            return lhs.getName().compareTo(rhs.getName());
+        }
+    };
+
+    // listener notified when the first page has been read, or when the
+    // window has been refreshed
+    public interface OnHistoryLoadedListener {
+        void onHistoryLoaded(boolean isEmpty);
+        void onHistoryFailed();
+    }
+
+    // the application context
+    private final Context mContext;
+
+    // the loaded window of the history, in alphabetical order
+    private final List<AcronymSummary> mDataSet = new ArrayList<>();
+
+    // true if there are names before the first / after the last loaded one
+    private boolean mHasMoreBefore;
+    private boolean mHasMoreAfter;
+
+    // the definitions of the last expanded acronyms, one per line
+    private final LruCache<String, String> mDefinitionsCache =
+            new LruCache<>(MAX_CACHED_DEFINITIONS);
+
+    // the position of the first loaded row of each section
+    private final HistorySectionIndex mSectionIndex = new HistorySectionIndex(mDataSet);
+
+    // the acronyms whose definitions are displayed, or being read
+    private final Set<String> mExpandedNames = new HashSet<>();
+    private final Set<String> mLoadingNames = new HashSet<>();
+
+    // the page being read or the refresh in progress, if any
+    // (only one at a time, so that the window is never modified while
+    // a refresh is computing its differences)
+    private AsyncTask<Void, Void, ?> mTask;
+
+    // the changes not applied yet (null names = everything may have changed)
+    private Set<String> mPendingNames = new HashSet<>();
+    private boolean mHasPendingChanges;
+    private OnHistoryLoadedListener mListener;
 
     // icons for the view
     private final Drawable mExpandedDrawable;
@@ -64,34 +139,183 @@ public class HistoryAdapter extends RecyclerView.Adapter<HistoryAdapter.ViewHold
 
     // constructor
     public HistoryAdapter(Context context) {
-        mDataSet = new HashMap<>();
-        mDataIndex = new ArrayList<>();
+        mContext = context.getApplicationContext();
+        registerAdapterDataObserver(mSectionIndex);
 
         // define the icons
         mExpandedDrawable = CompatUtils.getDrawable(context, R.mipmap.arrow_down_float);
         mCollapsedDrawable = CompatUtils.getDrawable(context, R.mipmap.arrow_up_float);
     }
 
-    // update the dataset from a global list of definitions
-    public void update(ArrayList<Acronym> flatList) {
+    public void setOnHistoryLoadedListener(OnHistoryLoadedListener listener) {
+        mListener = listener;
+    }
+
+    // read the history again, from the beginning
+    public void reload() {
         clear();
-        if (flatList != null) {
-            for (Acronym item : flatList) {
-                if (TextUtils.isEmpty(item.getName()) || TextUtils.isEmpty(item.getExpansion())) {
-                    // should not happen, but in case...
-                    continue;
-                }
-                if (!mDataSet.containsKey(item.getName())) {
-                    // we have a new acronym
-                    mDataSet.put(item.getName(), new TreeSet<String>());
-                    mDataIndex.add(item.getName());
-                }
-                // add the expansion
-                // the TreeSet will ensure that there is no duplicate
-                mDataSet.get(item.getName()).add(item.getExpansion());
+        mHasMoreAfter = true;
+        loadPage(null, true, true);
+    }
+
+    // read the history again, from the first name of the given section
+    // (the rows before it will be read if the user scrolls up)
+    public void reloadFrom(char section) {
+        if (section == HistorySectionIndex.OTHER_SECTION) {
+            reload(); // these names are not contiguous
+            return;
+        }
+        clear();
+        mHasMoreBefore = true;
+        mHasMoreAfter = true;
+        loadPage(String.valueOf(section), true, true);
+    }
+
+    // the position of the first loaded row of a section (-1 if the section
+    // is not in the loaded window)
+    public int getSectionPosition(char section) {
+        return mSectionIndex.getPosition(section);
+    }
+
+    /**
+     * Update the rows affected by a change of the cache.
+     *
+     * @param names     the changed names, or null if they are not known
+     */
+    public void applyChanges(Collection<String> names) {
+        addPendingChanges(names);
+        applyPendingChanges();
+    }
+
+    private void addPendingChanges(Collection<String> names) {
+        if (names == null) {
+            mPendingNames = null;
+        } else if (mPendingNames != null) {
+            mPendingNames.addAll(names);
+        }
+        mHasPendingChanges = true;
+    }
+
+    // start the refresh of the window if there are changes not applied yet
+    // and nothing else is in progress
+    public void applyPendingChanges() {
+        if (mTask != null || !mHasPendingChanges) {
+            return;
+        }
+        if (mDataSet.isEmpty()) {
+            // nothing to compare with
+            reload();
+            return;
+        }
+        // the cached definitions of the changed names are now obsolete
+        if (mPendingNames == null) {
+            mDefinitionsCache.evictAll();
+        } else {
+            for (String name : mPendingNames) {
+                mDefinitionsCache.remove(name);
             }
         }
-        notifyDataSetChanged();
+        RefreshTask task = new RefreshTask(new ArrayList<>(mDataSet), mPendingNames,
+                new HashSet<>(mExpandedNames), mHasMoreBefore, mHasMoreAfter);
+        mPendingNames = new HashSet<>();
+        mHasPendingChanges = false;
+        mTask = task;
+        task.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
+    }
+
+    // stop reading the page or the refresh in progress, if any
+    // (the changes of a cancelled refresh are kept for the next one)
+    public void cancel() {
+        if (mTask != null) {
+            mTask.cancel(false);
+            if (mTask instanceof RefreshTask) {
+                addPendingChanges(((RefreshTask) mTask).mNames);
+            } else if (mDataSet.isEmpty()) {
+                addPendingChanges(null); // the first page must be read again
+            }
+            mTask = null;
+        }
+    }
+
+    // read the page which follows (or precedes) the given name
+    // (the first page of the window starts with its anchor name, if any)
+    private void loadPage(String anchorName, boolean isForward, boolean isFirstPage) {
+        PageTask task = new PageTask(anchorName, isForward, isFirstPage);
+        mTask = task;
+        task.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
+    }
+
+    // read the next or the previous page if the user is close to an end
+    // of the window (called each time a row is displayed)
+    private void loadPageIfNeeded(int position) {
+        if (mTask != null || mDataSet.isEmpty()) {
+            return;
+        }
+        if (mHasMoreAfter && position >= mDataSet.size() - LOAD_THRESHOLD) {
+            loadPage(mDataSet.get(mDataSet.size() - 1).getName(), true, false);
+        } else if (mHasMoreBefore && position < LOAD_THRESHOLD) {
+            loadPage(mDataSet.get(0).getName(), false, false);
+        }
+    }
+
+    // add a page at one end of the window, and drop the oldest names at
+    // the other end if the window is too large
+    private void onPageLoaded(List<AcronymSummary> page, boolean isForward, boolean isFirstPage) {
+        if (isForward) {
+            mHasMoreAfter = page.size() >= PAGE_SIZE;
+            int start = mDataSet.size();
+            mDataSet.addAll(page);
+            notifyItemRangeInserted(start, page.size());
+            int excess = mDataSet.size() - MAX_LOADED;
+            if (excess > 0) {
+                mDataSet.subList(0, excess).clear();
+                notifyItemRangeRemoved(0, excess);
+                mHasMoreBefore = true;
+            }
+        } else {
+            mHasMoreBefore = page.size() >= PAGE_SIZE;
+            mDataSet.addAll(0, page);
+            notifyItemRangeInserted(0, page.size());
+            int excess = mDataSet.size() - MAX_LOADED;
+            if (excess > 0) {
+                mDataSet.subList(mDataSet.size() - excess, mDataSet.size()).clear();
+                notifyItemRangeRemoved(mDataSet.size(), excess);
+                mHasMoreAfter = true;
+            }
+        }
+        if (isFirstPage && mListener != null) {
+            mListener.onHistoryLoaded(mDataSet.isEmpty());
+        }
+    }
+
+    // transform the window into its refreshed content, and redraw only the
+    // rows which have changed (the updates are applied one after the other,
+    // so that the observers always see a window matching the notifications)
+    private void onRefreshed(RefreshResult result) {
+        mHasMoreAfter = result.hasMoreAfter;
+        for (int[] update : result.updates) {
+            int start = update[1];
+            int end = update[1] + update[2];
+            switch (update[0]) {
+                case UPDATE_INSERT:
+                    mDataSet.addAll(start, result.window.subList(start, end));
+                    notifyItemRangeInserted(start, update[2]);
+                    break;
+                case UPDATE_REMOVE:
+                    mDataSet.subList(start, end).clear();
+                    notifyItemRangeRemoved(start, update[2]);
+                    break;
+                case UPDATE_CHANGE:
+                    for (int i = start; i < end; i++) {
+                        mDataSet.set(i, result.window.get(i));
+                    }
+                    notifyItemRangeChanged(start, update[2]);
+                    break;
+            }
+        }
+        if (mListener != null) {
+            mListener.onHistoryLoaded(mDataSet.isEmpty());
+        }
     }
 
     @Override
@@ -105,10 +329,8 @@ public class HistoryAdapter extends RecyclerView.Adapter<HistoryAdapter.ViewHold
     @Override
     public void onBindViewHolder(ViewHolder holder, int position) {
         // replace the content of the view with a new element
-        final String name = mDataIndex.get(position);
-        final Set<String> content = mDataSet.get(name);
-        final TextView nameTextView = holder.name;
-        final TextView definitionsTextView = holder.definitions;
+        // (the rows are already grouped by the database)
+        final String name = mDataSet.get(position).getName();
 
         // put the name in the first textview
         // the name is always visible
@@ -119,33 +341,64 @@ public class HistoryAdapter extends RecyclerView.Adapter<HistoryAdapter.ViewHold
                 // the user has clicked on the name:
                 // show the definitions (or hide them if they were
                 // already displayed)
-                toggleView(nameTextView, definitionsTextView);
+                toggle(name);
             }
         });
 
         // put the definitions in the second textview
         // the definitions are invisible by default but becomes visible when
-        // the user clicks on the name
-        StringBuilder definitions = new StringBuilder();
-        boolean start = true;
-        for (String def : content) {
-            if (start) {
-                start = false;
-            } else {
-                definitions.append("\n");
+        // the user clicks on the name (they are read from the cache the
+        // first time, and then kept for a while)
+        boolean isExpanded = mExpandedNames.contains(name);
+        String definitions = isExpanded ? mDefinitionsCache.get(name) : null;
+        if (definitions == null) {
+            collapseView(holder.name, holder.definitions);
+            if (isExpanded) {
+                // changed or evicted: read again, then expand
+                loadDefinitions(name);
             }
-            definitions.append(def);
+        } else {
+            holder.definitions.setText(definitions);
+            expandView(holder.name, holder.definitions);
         }
-        holder.definitions.setText(definitions);
-        holder.definitions.setVisibility(View.GONE); // not displayed by default
         holder.definitions.setOnClickListener(new View.OnClickListener() {
             @Override
             public void onClick(View v) {
                 // the user has clicked on the definitions:
                 // hide the definitions and display only the name
-                collapseView(nameTextView, definitionsTextView);
+                toggle(name);
             }
         });
+
+        loadPageIfNeeded(position);
+    }
+
+    // show or hide the definitions of an acronym
+    private void toggle(String name) {
+        if (!mExpandedNames.remove(name)) {
+            mExpandedNames.add(name);
+            if (mDefinitionsCache.get(name) == null) {
+                // the row will be expanded once the definitions are read
+                loadDefinitions(name);
+                return;
+            }
+        }
+        notifyNameChanged(name);
+    }
+
+    // read the definitions of an acronym in the background
+    private void loadDefinitions(String name) {
+        if (mLoadingNames.add(name)) {
+            new DefinitionsTask(name).executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
+        }
+    }
+
+    // redraw the row of an acronym, if it is in the window
+    private void notifyNameChanged(String name) {
+        int position = Collections.binarySearch(mDataSet, new AcronymSummary(name, 0), NAME_ORDER);
+        if (position >= 0) {
+            notifyItemChanged(position);
+        }
     }
 
     // show name + definitions in the view
@@ -166,26 +419,233 @@ public class HistoryAdapter extends RecyclerView.Adapter<HistoryAdapter.ViewHold
         tvName.setCompoundDrawablesWithIntrinsicBounds(mCollapsedDrawable, null, null, null);
     }
 
-    private void toggleView(TextView tvName, TextView tvDefinitions) {
-        if (tvDefinitions.getVisibility() == View.GONE) {
-            // the definitions are currently not displayed:
-            // we want now to show them
-            expandView(tvName, tvDefinitions);
-        } else {
-            // the defintions are currently displayed:
-            // we want now to hide them
-            collapseView(tvName, tvDefinitions);
-        }
-    }
-
     @Override
     public int getItemCount() {
         return mDataSet.size();
     }
 
     public void clear() {
+        cancel();
+        mPendingNames = new HashSet<>();
+        mHasPendingChanges = false;
+        mExpandedNames.clear();
+        mDefinitionsCache.evictAll();
         mDataSet.clear();
-        mDataIndex.clear();
+        mHasMoreBefore = false;
+        mHasMoreAfter = false;
         notifyDataSetChanged();
     }
+
+    // background reading of one page of the history
+    private class PageTask extends AsyncTask<Void, Void, List<AcronymSummary>> {
+
+        private final String mAnchorName;
+        private final boolean mIsForward;
+        private final boolean mIsFirstPage;
+
+        PageTask(String anchorName, boolean isForward, boolean isFirstPage) {
+            mAnchorName = anchorName;
+            mIsForward = isForward;
+            mIsFirstPage = isFirstPage;
+        }
+
+        @Override
+        protected List<AcronymSummary> doInBackground(Void... params) {
+            AcronymCacheMediator cache = new AcronymCacheMediator(mContext);
+            if (mIsFirstPage && mAnchorName != null) {
+                return cache.retrieveHistoryFrom(mAnchorName, PAGE_SIZE);
+            }
+            return cache.retrieveHistoryPage(mAnchorName, mIsForward, PAGE_SIZE);
+        }
+
+        @Override
+        protected void onPostExecute(List<AcronymSummary> entries) {
+            if (mTask != this) {
+                return; // superseded by a reload
+            }
+            mTask = null;
+            if (entries != null) {
+                onPageLoaded(entries, mIsForward, mIsFirstPage);
+            } else if (mIsFirstPage && mListener != null) {
+                mListener.onHistoryFailed();
+            }
+            applyPendingChanges();
+        }
+    }
+
+    // background reading of the definitions of one acronym
+    private class DefinitionsTask extends AsyncTask<Void, Void, String> {
+
+        private final String mName;
+
+        DefinitionsTask(String name) {
+            mName = name;
+        }
+
+        @Override
+        protected String doInBackground(Void... params) {
+            AcronymCacheMediator cache = new AcronymCacheMediator(mContext);
+            List<String> definitions = cache.retrieveDefinitionsFromCache(mName);
+            return definitions == null ? null : TextUtils.join("\n", definitions);
+        }
+
+        @Override
+        protected void onPostExecute(String definitions) {
+            mLoadingNames.remove(mName);
+            if (definitions == null) {
+                mExpandedNames.remove(mName);
+                return;
+            }
+            mDefinitionsCache.put(mName, definitions);
+            if (mExpandedNames.contains(mName)) {
+                notifyNameChanged(mName);
+            }
+        }
+    }
+
+    // the refreshed window and the row updates leading to it
+    private static class RefreshResult {
+        final List<AcronymSummary> window;
+        final List<int[]> updates; // {kind, position, count}, to apply in order
+        final boolean hasMoreAfter;
+
+        RefreshResult(List<AcronymSummary> window, List<int[]> updates, boolean hasMoreAfter) {
+            this.window = window;
+            this.updates = updates;
+            this.hasMoreAfter = hasMoreAfter;
+        }
+    }
+
+    // background refresh of the window after a change of the cache
+    private class RefreshTask extends AsyncTask<Void, Void, RefreshResult> {
+
+        private final List<AcronymSummary> mOldWindow;
+        private final Set<String> mNames;
+        private final Set<String> mExpanded;
+        private final boolean mHasMoreBefore;
+        private final boolean mHasMoreAfter;
+
+        RefreshTask(List<AcronymSummary> oldWindow, Set<String> names, Set<String> expanded,
+                    boolean hasMoreBefore, boolean hasMoreAfter) {
+            mOldWindow = oldWindow;
+            mNames = names;
+            mExpanded = expanded;
+            mHasMoreBefore = hasMoreBefore;
+            mHasMoreAfter = hasMoreAfter;
+        }
+
+        @Override
+        protected RefreshResult doInBackground(Void... params) {
+            AcronymCacheMediator cache = new AcronymCacheMediator(mContext);
+            List<AcronymSummary> newWindow;
+            boolean hasMoreAfter = mHasMoreAfter;
+            if (mNames == null) {
+                // anything may have changed: read the whole window again
+                newWindow = cache.retrieveHistoryFrom(mOldWindow.get(0).getName(),
+                        mOldWindow.size());
+                if (newWindow == null) {
+                    return null;
+                }
+                hasMoreAfter = newWindow.size() >= mOldWindow.size();
+            } else {
+                // read only the changed names, and replace them in the window
+                List<AcronymSummary> changed = cache.retrieveHistoryOf(mNames);
+                if (changed == null) {
+                    return null;
+                }
+                newWindow = new ArrayList<>(mOldWindow.size() + changed.size());
+                for (AcronymSummary entry : mOldWindow) {
+                    if (!mNames.contains(entry.getName())) {
+                        newWindow.add(entry);
+                    }
+                }
+                for (AcronymSummary entry : changed) {
+                    if (isInWindow(entry.getName())) {
+                        newWindow.add(entry);
+                    }
+                }
+                Collections.sort(newWindow, NAME_ORDER);
+            }
+            // the changed names which are expanded must be redrawn even if
+            // their number of definitions is the same
+            Set<String> redrawn = new HashSet<>(mExpanded);
+            if (mNames != null) {
+                redrawn.retainAll(mNames);
+            }
+            return new RefreshResult(newWindow, diff(mOldWindow, newWindow, redrawn),
+                    hasMoreAfter);
+        }
+
+        // true if the name belongs to the range of names of the window
+        // (a name beyond an end of the window will be read with the pages)
+        private boolean isInWindow(String name) {
+            String first = mOldWindow.get(0).getName();
+            String last = mOldWindow.get(mOldWindow.size() - 1).getName();
+            return (!mHasMoreBefore || name.compareTo(first) >= 0)
+                    && (!mHasMoreAfter || name.compareTo(last) <= 0);
+        }
+
+        @Override
+        protected void onPostExecute(RefreshResult result) {
+            if (mTask != this) {
+                return; // superseded by a reload
+            }
+            mTask = null;
+            if (result != null) {
+                onRefreshed(result);
+            }
+            applyPendingChanges();
+        }
+    }
+
+    // compute the row updates transforming a window into another one
+    // (both are ordered by name, so a single merge pass is enough)
+    // (the rows of the given names are always considered as changed)
+    private static List<int[]> diff(List<AcronymSummary> oldWindow,
+                                    List<AcronymSummary> newWindow, Set<String> redrawn) {
+        List<int[]> updates = new ArrayList<>();
+        int oldIndex = 0;
+        int newIndex = 0;
+        while (oldIndex < oldWindow.size() || newIndex < newWindow.size()) {
+            int order;
+            if (oldIndex == oldWindow.size()) {
+                order = 1;
+            } else if (newIndex == newWindow.size()) {
+                order = -1;
+            } else {
+                order = NAME_ORDER.compare(oldWindow.get(oldIndex), newWindow.get(newIndex));
+            }
+            if (order < 0) {
+                // the row has disappeared
+                addUpdate(updates, UPDATE_REMOVE, newIndex);
+                oldIndex++;
+            } else if (order > 0) {
+                // a new row has appeared
+                addUpdate(updates, UPDATE_INSERT, newIndex);
+                newIndex++;
+            } else {
+                AcronymSummary entry = newWindow.get(newIndex);
+                if (redrawn.contains(entry.getName())
+                        || oldWindow.get(oldIndex).getCount() != entry.getCount()) {
+                    addUpdate(updates, UPDATE_CHANGE, newIndex);
+                }
+                oldIndex++;
+                newIndex++;
+            }
+        }
+        return updates;
+    }
+
+    // add an update, merged with the previous one if they form a range
+    private static void addUpdate(List<int[]> updates, int kind, int position) {
+        if (!updates.isEmpty()) {
+            int[] last = updates.get(updates.size() - 1);
+            if (last[0] == kind && (kind == UPDATE_REMOVE
+                    ? last[1] == position : last[1] + last[2] == position)) {
+                last[2]++;
+                return;
+            }
+        }
+        updates.add(new int[] { kind, position, 1 });
+    }
 }
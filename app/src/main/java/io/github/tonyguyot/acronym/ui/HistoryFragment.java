@@ -15,13 +15,14 @@
  */
 package io.github.tonyguyot.acronym.ui;
 
-import android.app.Activity;
 import android.app.AlertDialog;
-import android.content.BroadcastReceiver;
 import android.content.Context;
 import android.content.DialogInterface;
-import android.content.Intent;
+import android.database.ContentObserver;
+import android.net.Uri;
+import android.os.AsyncTask;
 import android.os.Bundle;
+import android.os.Handler;
 import android.support.v4.app.Fragment;
 import android.support.v7.widget.LinearLayoutManager;
 import android.support.v7.widget.RecyclerView;
@@ -32,16 +33,19 @@ import android.view.ViewGroup;
 import android.widget.Button;
 import android.widget.TextView;
 
-import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 
 import io.github.tonyguyot.acronym.R;
-import io.github.tonyguyot.acronym.data.Acronym;
+import io.github.tonyguyot.acronym.operations.AcronymCacheMediator;
 import io.github.tonyguyot.acronym.presenter.AcronymService;
+import io.github.tonyguyot.acronym.provider.AcronymProvider;
 
 /**
  * A fragment representing a list of Items.
  */
-public class HistoryFragment extends Fragment {
+public class HistoryFragment extends Fragment implements HistoryAdapter.OnHistoryLoadedListener {
 
     // tag for logging information
     private static final String TAG = "AcronymHistoryFragment";
@@ -54,12 +58,36 @@ public class HistoryFragment extends Fragment {
 
     // the adapter for the list of results
     private HistoryAdapter mAdapter;
+    private LinearLayoutManager mLayoutManager;
+
+    // the alphabetical index of the history
+    private SectionIndexBar mIndexBar;
+    private SectionsTask mSectionsTask;
+
+    // true when the window has been reloaded from a section, and must be
+    // displayed from its first row
+    private boolean mIsJumping;
+
+    // true once the first page has been requested
+    private boolean mIsLoaded;
+
+    // the changes of the cache received since the last refresh
+    // (null names = everything may have changed)
+    private Set<String> mChangedNames = new HashSet<>();
+    private boolean mHasChanges;
+
+    // define the observer of the changes of the cache
+    // (the changes are recorded even when the history is not visible, but
+    // they are applied only when it becomes visible)
+    private final ContentObserver mObserver = new ContentObserver(new Handler()) {
+        @Override
+        public void onChange(boolean selfChange) {
+            onChange(selfChange, null);
+        }
 
-    // define the broadcast receiver for the results of acronym listing
-    private BroadcastReceiver mReceiver = new BroadcastReceiver() {
         @Override
-        public void onReceive(Context context, Intent intent) {
-            onResultReceived(intent);
+        public void onChange(boolean selfChange, Uri uri) {
+            onCacheChanged(AcronymProvider.getChangedNames(uri));
         }
     };
 
@@ -73,6 +101,14 @@ public class HistoryFragment extends Fragment {
     @Override
     public void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
+        getActivity().getContentResolver().registerContentObserver(
+                AcronymProvider.CONTENT_URI, true, mObserver);
+    }
+
+    @Override
+    public void onDestroy() {
+        getActivity().getContentResolver().unregisterContentObserver(mObserver);
+        super.onDestroy();
     }
 
     @Override
@@ -87,13 +123,24 @@ public class HistoryFragment extends Fragment {
 
         // initialize the recycler view for the list of results
         mRecyclerView = (RecyclerView) view.findViewById(R.id.history_list);
-        mRecyclerView.setLayoutManager(new LinearLayoutManager(getActivity()));
+        mLayoutManager = new LinearLayoutManager(getActivity());
+        mRecyclerView.setLayoutManager(mLayoutManager);
         RecyclerView.ItemDecoration itemDecoration = new
                 DividerItemDecoration(getActivity(), DividerItemDecoration.VERTICAL_LIST);
         mRecyclerView.addItemDecoration(itemDecoration);
         mAdapter = new HistoryAdapter(getActivity().getApplicationContext());
+        mAdapter.setOnHistoryLoadedListener(this);
         mRecyclerView.setAdapter(mAdapter);
 
+        // initialize the alphabetical index
+        mIndexBar = (SectionIndexBar) view.findViewById(R.id.history_index);
+        mIndexBar.setOnSectionSelectedListener(new SectionIndexBar.OnSectionSelectedListener() {
+            @Override
+            public void onSectionSelected(char section) {
+                jumpToSection(section);
+            }
+        });
+
         // define the callbacks for the buttons
         Button clearButton = (Button) view.findViewById(R.id.history_clear);
         clearButton.setOnClickListener(new View.OnClickListener() {
@@ -117,63 +164,116 @@ public class HistoryFragment extends Fragment {
     @Override
     public void onResume() {
         super.onResume();
-        getActivity().registerReceiver(mReceiver, AcronymService.ListIntent.getIntentFilter());
-        refresh();
+        updateIfVisible();
     }
 
     @Override
     public void onPause() {
-        getActivity().unregisterReceiver(mReceiver);
+        mAdapter.cancel();
+        if (mSectionsTask != null) {
+            mSectionsTask.cancel(false);
+            mSectionsTask = null;
+        }
         super.onPause();
     }
 
+    // called by the view pager when the user switches to or from this tab
+    // (the offscreen tabs are resumed too, but they are not visible)
+    @Override
+    public void setUserVisibleHint(boolean isVisibleToUser) {
+        super.setUserVisibleHint(isVisibleToUser);
+        updateIfVisible();
+    }
+
     public void refresh() {
-        // start the service
+        // read the first page of the history, the next ones will be read
+        // when the user scrolls
         if (getActivity() == null) {
             Log.d(TAG, "Activity is null");
         } else {
-            AcronymService.startListContentOfCache(getActivity());
+            mIsLoaded = true;
+            mChangedNames = new HashSet<>();
+            mHasChanges = false;
+            mAdapter.reload();
+            loadSections();
         }
     }
 
-    /////////////////////
-    // Other callbacks
-    /////////////////////
+    // display the rows of a section: scroll to them if they are loaded,
+    // otherwise read the history again from the section (in both cases,
+    // the rows in between are neither read nor bound)
+    private void jumpToSection(char section) {
+        int position = mAdapter.getSectionPosition(section);
+        if (position >= 0) {
+            mLayoutManager.scrollToPositionWithOffset(position, 0);
+        } else {
+            mIsJumping = true;
+            mAdapter.reloadFrom(section);
+        }
+    }
+
+    // read the sections of the history in the background
+    private void loadSections() {
+        if (mSectionsTask != null) {
+            mSectionsTask.cancel(false);
+        }
+        mSectionsTask = new SectionsTask();
+        mSectionsTask.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
+    }
 
-    // received notification about search result
-    private void onResultReceived(Intent intent) {
-        // display the new results
-        if (AcronymService.ListIntent.getResultStatus(intent) == Activity.RESULT_OK) {
-            onResultSuccess(intent); // we received an answer with 0 or more results
+    // read the history the first time it is displayed, or apply the
+    // changes of the cache, but only if the user can see them
+    private void updateIfVisible() {
+        if (!isResumed() || !getUserVisibleHint()) {
+            return;
+        }
+        if (!mIsLoaded) {
+            refresh();
+        } else if (mHasChanges) {
+            mAdapter.applyChanges(mChangedNames);
+            mChangedNames = new HashSet<>();
+            mHasChanges = false;
+            loadSections();
         } else {
-            onResultFailed(); // system failure, no answer received
+            mAdapter.applyPendingChanges(); // interrupted by a pause
         }
     }
 
-    // received notification about acronym search success
-    private void onResultSuccess(Intent intent) {
-        ArrayList<Acronym> results = AcronymService.ListIntent.getResultList(intent);
+    /////////////////////
+    // Other callbacks
+    /////////////////////
 
-        if (results != null) {
-            Log.d(TAG, results.toString());
+    // received notification about a change of the cache
+    private void onCacheChanged(List<String> names) {
+        if (names == null) {
+            mChangedNames = null;
+        } else if (mChangedNames != null) {
+            mChangedNames.addAll(names);
+        }
+        mHasChanges = true;
+        updateIfVisible();
+    }
 
-            // display the number of results in the status text view
-            if (results.isEmpty()) {
-                // no result found
-                mAdapter.clear(); // in case there was something in the list previously
-                setMessageText(R.string.history_empty);
-            } else {
-                // one or more results found
-                setResultList(results);
-            }
+    // the first page of the history has been read
+    @Override
+    public void onHistoryLoaded(boolean isEmpty) {
+        if (isEmpty) {
+            // no result found
+            setMessageText(R.string.history_empty);
         } else {
-            // this should not happen here and will be treated as an error
-            onResultFailed();
+            // one or more results found
+            mMessageText.setVisibility(View.INVISIBLE);
+            mRecyclerView.setVisibility(View.VISIBLE);
+        }
+        if (mIsJumping) {
+            mIsJumping = false;
+            mLayoutManager.scrollToPositionWithOffset(0, 0);
         }
     }
 
-    // received notification about acronym list failed
-    private void onResultFailed() {
+    // the history could not be read
+    @Override
+    public void onHistoryFailed() {
         setMessageText(R.string.history_error);
     }
 
@@ -211,11 +311,22 @@ public class HistoryFragment extends Fragment {
         mMessageText.setText(resId);
     }
 
-    // display the list of acronyms
-    private void setResultList(ArrayList<Acronym> list) {
-        mMessageText.setVisibility(View.INVISIBLE);
-        mRecyclerView.setVisibility(View.VISIBLE);
-        mAdapter.clear();
-        mAdapter.update(list);
+    // background reading of the sections of the history
+    private class SectionsTask extends AsyncTask<Void, Void, List<Character>> {
+
+        private final Context mContext = getActivity().getApplicationContext();
+
+        @Override
+        protected List<Character> doInBackground(Void... params) {
+            return new AcronymCacheMediator(mContext).retrieveSectionsFromCache();
+        }
+
+        @Override
+        protected void onPostExecute(List<Character> sections) {
+            if (mSectionsTask == this) {
+                mSectionsTask = null;
+                mIndexBar.setSections(sections);
+            }
+        }
     }
 }
@@ -0,0 +1,155 @@
+/*
+ * Copyright (C) 2016 Tony Guyot
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.tonyguyot.acronym.ui;
+
+import android.support.v7.widget.RecyclerView;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import io.github.tonyguyot.acronym.data.AcronymSummary;
+
+/**
+ * Index of the sections (first letter or digit of the names) of the rows
+ * loaded in the history adapter: for each section, the position of its
+ * first row.
+ * The index observes the adapter and is updated incrementally: when rows
+ * are inserted or removed, the following sections are shifted and only
+ * the rows around the modified range are examined again.
+ */
+class HistorySectionIndex extends RecyclerView.AdapterDataObserver {
+
+    // section of the names which do not start with a letter or a digit
+    static final char OTHER_SECTION = '#';
+
+    // the first row of a section
+    private static class Section {
+        final char key;
+        int position;
+
+        Section(char key, int position) {
+            this.key = key;
+            this.position = position;
+        }
+    }
+
+    // the rows of the adapter, in alphabetical order
+    private final List<AcronymSummary> mRows;
+
+    // the sections, ordered by position
+    private final List<Section> mSections = new ArrayList<>();
+
+    HistorySectionIndex(List<AcronymSummary> rows) {
+        mRows = rows;
+    }
+
+    // the section of a name
+    static char getSectionKey(String name) {
+        if (name == null || name.isEmpty()) {
+            return OTHER_SECTION;
+        }
+        char c = Character.toUpperCase(name.charAt(0));
+        return Character.isLetterOrDigit(c) ? c : OTHER_SECTION;
+    }
+
+    // the position of the first loaded row of a section (-1 if none)
+    int getPosition(char key) {
+        for (Section section : mSections) {
+            if (section.key == key) {
+                return section.position;
+            }
+        }
+        return -1;
+    }
+
+    // the section of the row at the given position (0 if none)
+    char getSectionAt(int position) {
+        char key = 0;
+        for (Section section : mSections) {
+            if (section.position > position) {
+                break;
+            }
+            key = section.key;
+        }
+        return key;
+    }
+
+    @Override
+    public void onChanged() {
+        mSections.clear();
+        rescan(0, mRows.size());
+    }
+
+    @Override
+    public void onItemRangeInserted(int positionStart, int itemCount) {
+        shift(positionStart, itemCount);
+        rescan(positionStart, positionStart + itemCount + 1);
+    }
+
+    @Override
+    public void onItemRangeRemoved(int positionStart, int itemCount) {
+        // forget the sections starting in the removed range
+        for (int i = mSections.size() - 1; i >= 0; i--) {
+            int position = mSections.get(i).position;
+            if (position >= positionStart && position < positionStart + itemCount) {
+                mSections.remove(i);
+            }
+        }
+        shift(positionStart + itemCount, -itemCount);
+        rescan(positionStart, positionStart + 1);
+    }
+
+    @Override
+    public void onItemRangeMoved(int fromPosition, int toPosition, int itemCount) {
+        onChanged(); // not used by the adapter
+    }
+
+    // move the sections starting from the given position
+    private void shift(int positionStart, int offset) {
+        for (Section section : mSections) {
+            if (section.position >= positionStart) {
+                section.position += offset;
+            }
+        }
+    }
+
+    // examine again the rows in [start, end[: a row starts a section if it
+    // is the first one, or if its section differs from the previous row
+    private void rescan(int start, int end) {
+        end = Math.min(end, mRows.size());
+
+        // forget the sections which may be outdated
+        int insertion = 0;
+        for (int i = mSections.size() - 1; i >= 0; i--) {
+            int position = mSections.get(i).position;
+            if (position >= start && position < end) {
+                mSections.remove(i);
+            } else if (position < start && insertion == 0) {
+                insertion = i + 1;
+            }
+        }
+
+        // find the boundaries again
+        char previous = start > 0 ? getSectionKey(mRows.get(start - 1).getName()) : 0;
+        for (int position = start; position < end; position++) {
+            char key = getSectionKey(mRows.get(position).getName());
+            if (key != previous) {
+                mSections.add(insertion++, new Section(key, position));
+            }
+            previous = key;
+        }
+    }
+}
@@ -33,6 +33,7 @@ import android.widget.EditText;
 import android.widget.TextView;
 
 import io.github.tonyguyot.acronym.R;
+import io.github.tonyguyot.acronym.presenter.AcronymService;
 import io.github.tonyguyot.acronym.utils.Utils;
 
 
@@ -56,6 +57,11 @@ public class MainActivity extends AppCompatActivity {
         Typeface tf = Typeface.createFromAsset(getAssets(), "fonts/Lobster-Regular.ttf");
         title.setTypeface(tf);
 
+        // compact the cache in the background, once per launch
+        if (savedInstanceState == null) {
+            AcronymService.startMaintainCache(this);
+        }
+
         // set the tabs and view pager
         final ViewPager viewPager = (ViewPager) findViewById(R.id.viewpager);
         setupViewPager(viewPager);
@@ -25,21 +25,31 @@ import android.os.Bundle;
 import android.support.v4.app.Fragment;
 import android.support.v7.widget.LinearLayoutManager;
 import android.support.v7.widget.RecyclerView;
+import android.text.Editable;
 import android.text.Html;
+import android.text.SpannableStringBuilder;
+import android.text.Spanned;
 import android.text.TextUtils;
+import android.text.TextWatcher;
+import android.text.method.LinkMovementMethod;
+import android.text.style.ClickableSpan;
 import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
+import android.widget.AdapterView;
+import android.widget.AutoCompleteTextView;
 import android.widget.Button;
 import android.widget.ProgressBar;
 import android.widget.TextView;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 
 import io.github.tonyguyot.acronym.R;
 import io.github.tonyguyot.acronym.data.Acronym;
+import io.github.tonyguyot.acronym.data.AcronymKey;
 import io.github.tonyguyot.acronym.presenter.AcronymService;
 import io.github.tonyguyot.acronym.utils.Utils;
 
@@ -54,19 +64,46 @@ public class QueryFragment extends Fragment {
 
     // key for the saved instance
     private static final String KEY_ACRONYMS = "acronyms";
+    private static final String KEY_ACRONYM_NAME = "acronym_name";
+    private static final String KEY_TOTAL_COUNT = "total_count";
+
+    // the next page of results is requested when the user is this close to
+    // the last one displayed
+    private static final int LOAD_THRESHOLD = 12;
 
     // where the user types the acronym to search
-    private TextView mTvQuery;
+    private AutoCompleteTextView mTvQuery;
+
+    // the adapter for the completions of the typed acronym
+    private SuggestionAdapter mSuggestionAdapter;
 
     // where we display if the search was successful
     private TextView mTvResultStatus;
 
+    // where we display the close names of an unknown acronym
+    private TextView mTvSuggestions;
+
     // the adapter for the list of results
     private QueryAdapter mAdapter;
 
     // the progress indicator to show that search is being performed
     private ProgressBar mProgress;
 
+    // number of results displayed before the final reply of the search
+    private int mPartialCount;
+
+    // the acronym being searched (null if none): the replies and the close
+    // names of the previous searches are ignored
+    private String mPendingName;
+
+    // the acronym displayed, and its number of results when they are sent
+    // page by page (-1 when they have all been received)
+    private String mAcronymName;
+    private int mTotalCount = -1;
+
+    // position of the page of results requested last (-1 if none)
+    private int mRequestedOffset = -1;
+
     // define the broadcast receiver for the results of acronym searches
     private BroadcastReceiver mReceiver = new BroadcastReceiver() {
         @Override
@@ -75,6 +112,14 @@ public class QueryFragment extends Fragment {
         }
     };
 
+    // define the broadcast receiver for the close names of unknown acronyms
+    private BroadcastReceiver mSuggestionReceiver = new BroadcastReceiver() {
+        @Override
+        public void onReceive(Context context, Intent intent) {
+            onCloseNamesReceived(intent);
+        }
+    };
+
     public QueryFragment() {
         // Required empty public constructor
     }
@@ -94,14 +139,18 @@ public class QueryFragment extends Fragment {
         if (savedInstanceState != null) {
             // the application has been reloaded
             savedValues = savedInstanceState.getParcelableArrayList(KEY_ACRONYMS);
+            mAcronymName = savedInstanceState.getString(KEY_ACRONYM_NAME);
+            mTotalCount = savedInstanceState.getInt(KEY_TOTAL_COUNT, -1);
         }
 
         // Inflate the layout for this fragment
         View view = inflater.inflate(R.layout.fragment_query, container, false);
 
         // retrieve the different UI items we need to interact with
-        mTvQuery = (TextView) view.findViewById(R.id.query_entry);
+        mTvQuery = (AutoCompleteTextView) view.findViewById(R.id.query_entry);
         mTvResultStatus = (TextView) view.findViewById(R.id.query_result);
+        mTvSuggestions = (TextView) view.findViewById(R.id.query_suggestions);
+        mTvSuggestions.setMovementMethod(LinkMovementMethod.getInstance());
         mProgress = (ProgressBar) view.findViewById(R.id.query_progress);
 
         // init graphical elements
@@ -112,7 +161,8 @@ public class QueryFragment extends Fragment {
 
         // initialize the recycler view for the list of results
         RecyclerView recyclerView = (RecyclerView) view.findViewById(R.id.query_list);
-        recyclerView.setLayoutManager(new LinearLayoutManager(getActivity()));
+        final LinearLayoutManager layoutManager = new LinearLayoutManager(getActivity());
+        recyclerView.setLayoutManager(layoutManager);
         RecyclerView.ItemDecoration itemDecoration = new
                 DividerItemDecoration(getActivity(), DividerItemDecoration.VERTICAL_LIST);
         recyclerView.addItemDecoration(itemDecoration);
@@ -122,6 +172,53 @@ public class QueryFragment extends Fragment {
             mAdapter = new QueryAdapter(savedValues);
         }
         recyclerView.setAdapter(mAdapter);
+        recyclerView.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(RecyclerView view, int dx, int dy) {
+                loadPageIfNeeded(layoutManager.findLastVisibleItemPosition());
+            }
+
+            @Override
+            public void onScrollStateChanged(RecyclerView view, int newState) {
+                if (newState == RecyclerView.SCROLL_STATE_IDLE) {
+                    // a page which has not been received may be requested again
+                    mRequestedOffset = -1;
+                }
+            }
+        });
+
+        // propose the cached acronyms starting with the typed text
+        mSuggestionAdapter = new SuggestionAdapter(getActivity());
+        mSuggestionAdapter.setOnSuggestionsListener(new SuggestionAdapter.OnSuggestionsListener() {
+            @Override
+            public void onSuggestionsAvailable(String prefix, List<String> suggestions) {
+                onSuggestionsReceived(suggestions);
+            }
+        });
+        mTvQuery.setAdapter(mSuggestionAdapter);
+        mTvQuery.addTextChangedListener(new TextWatcher() {
+            @Override
+            public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+                // do nothing
+            }
+
+            @Override
+            public void onTextChanged(CharSequence s, int start, int before, int count) {
+                // do nothing
+            }
+
+            @Override
+            public void afterTextChanged(Editable s) {
+                mSuggestionAdapter.request(s.toString().trim().toUpperCase());
+            }
+        });
+        mTvQuery.setOnItemClickListener(new AdapterView.OnItemClickListener() {
+            @Override
+            public void onItemClick(AdapterView<?> parent, View v, int position, long id) {
+                // a completion has been selected => search it immediately
+                onSubmitButtonClick();
+            }
+        });
 
         // define the callback for the button
         Button submitButton = (Button) view.findViewById(R.id.query_submit);
@@ -140,11 +237,15 @@ public class QueryFragment extends Fragment {
     public void onResume() {
         super.onResume();
         getActivity().registerReceiver(mReceiver, AcronymService.ReplyIntent.getIntentFilter());
+        getActivity().registerReceiver(mSuggestionReceiver,
+                AcronymService.SuggestionIntent.getIntentFilter());
     }
 
     @Override
     public void onPause() {
         getActivity().unregisterReceiver(mReceiver);
+        getActivity().unregisterReceiver(mSuggestionReceiver);
+        mSuggestionAdapter.cancel();
         super.onPause();
     }
 
@@ -155,6 +256,8 @@ public class QueryFragment extends Fragment {
         if (values != null) {
             savedState.putParcelableArrayList(KEY_ACRONYMS, values);
         }
+        savedState.putString(KEY_ACRONYM_NAME, mAcronymName);
+        savedState.putInt(KEY_TOTAL_COUNT, mTotalCount);
     }
 
     /////////////////////
@@ -165,17 +268,68 @@ public class QueryFragment extends Fragment {
     // => start the AcronymService to retrieve the acronym expansions
     private void onSubmitButtonClick() {
         String acronymName = mTvQuery.getText().toString().trim().toUpperCase();
+        mSuggestionAdapter.cancel();
+        mTvQuery.dismissDropDown();
         if (!TextUtils.isEmpty(acronymName)) {
             hideKeyboard();
             showInProgress();
+            mPendingName = acronymName;
             AcronymService.startRetrieveAcronym(getContext(), acronymName);
         } else {
             Log.d(TAG, "invalid data entry -> do nothing");
         }
     }
 
+    // received the completions of the text typed by the user
+    private void onSuggestionsReceived(List<String> suggestions) {
+        if (suggestions.isEmpty()) {
+            mTvQuery.dismissDropDown();
+        } else if (mTvQuery.hasFocus() && !mTvQuery.isPopupShowing()) {
+            mTvQuery.showDropDown();
+        }
+    }
+
+    // received the cached names close to the searched acronym
+    // => display them as links starting a new search
+    private void onCloseNamesReceived(Intent intent) {
+        ArrayList<String> names = AcronymService.SuggestionIntent.getSuggestions(intent);
+        if (names == null || names.isEmpty()
+                || !isPending(AcronymService.SuggestionIntent.getAcronymName(intent))) {
+            return;
+        }
+        SpannableStringBuilder text = new SpannableStringBuilder(
+                getResources().getString(R.string.query_did_you_mean));
+        for (int i = 0; i < names.size(); i++) {
+            final String name = names.get(i);
+            if (i > 0) {
+                text.append(", ");
+            }
+            int start = text.length();
+            text.append(name);
+            text.setSpan(new ClickableSpan() {
+                @Override
+                public void onClick(View widget) {
+                    mTvQuery.setText(name);
+                    onSubmitButtonClick();
+                }
+            }, start, text.length(), Spanned.SPAN_EXCLUSIVE_EXCLUSIVE);
+        }
+        text.append("?");
+        mTvSuggestions.setText(text);
+        mTvSuggestions.setVisibility(View.VISIBLE);
+    }
+
     // received notification about search result
     private void onResultReceived(Intent intent) {
+        if (AcronymService.ReplyIntent.isPartial(intent)) {
+            onPartialResultReceived(intent);
+            return;
+        }
+        if (AcronymService.ReplyIntent.isPage(intent)) {
+            onPageReceived(intent);
+            return;
+        }
+
         // display the new results
         hideInProgress();
         if (AcronymService.ReplyIntent.getResultStatus(intent) == Activity.RESULT_OK) {
@@ -185,12 +339,68 @@ public class QueryFragment extends Fragment {
         }
     }
 
+    // received the first results, while the others are retrieved
+    // => display them at the end of the list (the search is still in progress)
+    private void onPartialResultReceived(Intent intent) {
+        if (!isPending(AcronymService.ReplyIntent.getAcronymName(intent))) {
+            return; // for a previous search
+        }
+        Collection<Acronym> results = AcronymService.ReplyIntent.getResultList(intent);
+        if (results != null) {
+            for (Acronym item : results) {
+                mAdapter.add(mAdapter.getItemCount(), item);
+                mPartialCount++;
+            }
+        }
+    }
+
+    // received the next page of results, requested while the user scrolls
+    // => display it at the end of the list, if it follows the last result
+    // (on failure, the page may be requested again)
+    private void onPageReceived(Intent intent) {
+        Collection<Acronym> results = AcronymService.ReplyIntent.getResultList(intent);
+        String acronym = AcronymService.ReplyIntent.getAcronymName(intent);
+        int offset = AcronymService.ReplyIntent.getOffset(intent);
+        if (!TextUtils.equals(acronym, mAcronymName) || offset != mAdapter.getItemCount()) {
+            return; // for another search, or already received
+        }
+        if (AcronymService.ReplyIntent.getResultStatus(intent) != Activity.RESULT_OK
+                || results == null) {
+            if (offset == mRequestedOffset) {
+                mRequestedOffset = -1;
+            }
+            return;
+        }
+        for (Acronym item : results) {
+            mAdapter.add(mAdapter.getItemCount(), item);
+        }
+        if (results.isEmpty() || mAdapter.getItemCount() >= mTotalCount) {
+            mTotalCount = -1; // everything has been received
+        }
+    }
+
+    // request the next page of results if the user is close to the last
+    // one displayed, and if there are more
+    private void loadPageIfNeeded(int lastVisiblePosition) {
+        int count = mAdapter.getItemCount();
+        if (mTotalCount > count && mRequestedOffset != count
+                && lastVisiblePosition >= count - LOAD_THRESHOLD) {
+            mRequestedOffset = count;
+            AcronymService.startRetrieveAcronymPage(getContext(), mAcronymName, count);
+        }
+    }
+
     // received notification about acronym search success
     private void onResultSuccess(Intent intent) {
         Collection<Acronym> results = AcronymService.ReplyIntent.getResultList(intent);
         String acronym = AcronymService.ReplyIntent.getAcronymName(intent);
 
         if (results != null) {
+            // the other results, if any, are requested while the user scrolls
+            mAcronymName = acronym;
+            mTotalCount = AcronymService.ReplyIntent.getTotalCount(intent);
+            mRequestedOffset = -1;
+
             // display the number of results in the status text view
             Resources res = getResources();
             String text;
@@ -198,8 +408,8 @@ public class QueryFragment extends Fragment {
                 // no result found
                 text = String.format(res.getString(R.string.query_no_result_for_sss), acronym);
             } else {
-                // one or more results found
-                int count = results.size();
+                // one or more results found (maybe not all received yet)
+                int count = Math.max(mTotalCount, results.size());
                 text = res.getQuantityString(R.plurals.query_nnn_results_for_sss,
                         count, // to select which string we use (plural or not)
                         count, // to replace %d with number
@@ -208,9 +418,22 @@ public class QueryFragment extends Fragment {
             CharSequence styledText = Html.fromHtml(text); // retrieve HTML tags
             mTvResultStatus.setText(styledText);
 
-            // display all the results in the list
+            // the close names are no more useful when results are found
+            if (!results.isEmpty()) {
+                mTvSuggestions.setVisibility(View.GONE);
+            }
+
+            // display all the results in the list (after the ones already
+            // displayed, unless another server has given the final answer)
             int pos = 0;
-            for (Acronym item : results) {
+            if (isDisplayed(results, mPartialCount)) {
+                pos = mPartialCount;
+            } else if (mPartialCount > 0) {
+                mAdapter.clear();
+            }
+            mPartialCount = 0;
+            List<Acronym> list = new ArrayList<>(results);
+            for (Acronym item : list.subList(pos, list.size())) {
                 mAdapter.add(pos, item);
                 pos++;
             }
@@ -221,7 +444,12 @@ public class QueryFragment extends Fragment {
     }
 
     // received notification about acronym search failed
+    // (the partial results, if any, are removed)
     private void onResultFailed(Intent intent) {
+        if (mPartialCount > 0) {
+            mAdapter.clear();
+            mPartialCount = 0;
+        }
         if (AcronymService.ReplyIntent.isInvalidDataError(intent)) {
             mTvResultStatus.setText(R.string.query_no_result);
         }
@@ -251,12 +479,43 @@ public class QueryFragment extends Fragment {
     private void showInProgress() {
         // clear previous result
         mTvResultStatus.setText(R.string.query_in_progress);
+        mTvSuggestions.setVisibility(View.GONE);
         mAdapter.clear();
+        mPartialCount = 0;
+        mTotalCount = -1;
+        mRequestedOffset = -1;
 
         // show the progress indicator
         mProgress.setVisibility(View.VISIBLE);
     }
 
+    // true if the name is the one being searched (the service replies with
+    // the sanitized name, which has the same lookup key)
+    private boolean isPending(String acronymName) {
+        return mPendingName != null
+                && AcronymKey.of(mPendingName).equals(AcronymKey.of(acronymName));
+    }
+
+    // true if the first results are the ones displayed
+    private boolean isDisplayed(Collection<Acronym> results, int count) {
+        List<Acronym> displayed = mAdapter.getValues();
+        if (count > results.size() || count != displayed.size()) {
+            return false;
+        }
+        int pos = 0;
+        for (Acronym item : results) {
+            if (pos == count) {
+                break;
+            }
+            Acronym shown = displayed.get(pos++);
+            if (!TextUtils.equals(item.getName(), shown.getName())
+                    || !TextUtils.equals(item.getExpansion(), shown.getExpansion())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     // set the UI in the "search completed" mode
     private void hideInProgress() {
         // hide the progress indicator
@@ -0,0 +1,121 @@
+/*
+ * Copyright (C) 2016 Tony Guyot
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.tonyguyot.acronym.ui;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.util.AttributeSet;
+import android.util.TypedValue;
+import android.view.MotionEvent;
+import android.view.View;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import io.github.tonyguyot.acronym.R;
+import io.github.tonyguyot.acronym.utils.CompatUtils;
+
+/**
+ * Vertical bar displaying the sections of a list (e.g. the letters of the
+ * alphabet). Touching or sliding on a section notifies the listener, which
+ * can then jump directly to the corresponding rows.
+ */
+public class SectionIndexBar extends View {
+
+    // listener notified when the user selects a section
+    public interface OnSectionSelectedListener {
+        void onSectionSelected(char section);
+    }
+
+    // the displayed sections
+    private List<Character> mSections = new ArrayList<>();
+
+    // the section under the finger (-1 if none)
+    private int mSelected = -1;
+
+    private OnSectionSelectedListener mListener;
+    private final Paint mPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+    private final int mNormalColor;
+    private final int mSelectedColor;
+
+    public SectionIndexBar(Context context) {
+        this(context, null);
+    }
+
+    public SectionIndexBar(Context context, AttributeSet attrs) {
+        super(context, attrs);
+        mNormalColor = CompatUtils.getColor(context, R.color.Grey_600);
+        mSelectedColor = CompatUtils.getColor(context, R.color.colorAccent);
+        mPaint.setTextAlign(Paint.Align.CENTER);
+        mPaint.setTextSize(TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_SP, 11,
+                context.getResources().getDisplayMetrics()));
+    }
+
+    public void setOnSectionSelectedListener(OnSectionSelectedListener listener) {
+        mListener = listener;
+    }
+
+    // replace the displayed sections
+    public void setSections(List<Character> sections) {
+        mSections = new ArrayList<>(sections);
+        mSelected = -1;
+        setVisibility(mSections.size() > 1 ? VISIBLE : GONE);
+        invalidate();
+    }
+
+    @Override
+    protected void onDraw(Canvas canvas) {
+        super.onDraw(canvas);
+        if (mSections.isEmpty()) {
+            return;
+        }
+        float height = (float) getHeight() / mSections.size();
+        float x = getWidth() / 2f;
+        float baseline = (height - mPaint.ascent() - mPaint.descent()) / 2f;
+        for (int i = 0; i < mSections.size(); i++) {
+            mPaint.setColor(i == mSelected ? mSelectedColor : mNormalColor);
+            canvas.drawText(String.valueOf(mSections.get(i)), x, i * height + baseline, mPaint);
+        }
+    }
+
+    @Override
+    public boolean onTouchEvent(MotionEvent event) {
+        if (mSections.isEmpty()) {
+            return false;
+        }
+        switch (event.getActionMasked()) {
+            case MotionEvent.ACTION_DOWN:
+            case MotionEvent.ACTION_MOVE:
+                int index = (int) (event.getY() * mSections.size() / getHeight());
+                index = Math.max(0, Math.min(mSections.size() - 1, index));
+                if (index != mSelected) {
+                    mSelected = index;
+                    invalidate();
+                    if (mListener != null) {
+                        mListener.onSectionSelected(mSections.get(index));
+                    }
+                }
+                return true;
+            case MotionEvent.ACTION_UP:
+            case MotionEvent.ACTION_CANCEL:
+                mSelected = -1;
+                invalidate();
+                return true;
+        }
+        return super.onTouchEvent(event);
+    }
+}
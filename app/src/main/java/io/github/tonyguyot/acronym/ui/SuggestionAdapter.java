@@ -0,0 +1,203 @@
+/*
+ * Copyright (C) 2016 Tony Guyot
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.tonyguyot.acronym.ui;
+
+import android.content.Context;
+import android.os.AsyncTask;
+import android.os.CancellationSignal;
+import android.os.Handler;
+import android.os.OperationCanceledException;
+import android.text.TextUtils;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.BaseAdapter;
+import android.widget.Filter;
+import android.widget.Filterable;
+import android.widget.TextView;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import io.github.tonyguyot.acronym.operations.AcronymCacheMediator;
+
+/**
+ * Adapter for the drop-down list of completions of the query text box.
+ * The completions are the cached names starting with the typed text. They
+ * are retrieved in the background once the user has stopped typing for a
+ * short time, and any retrieval made obsolete by a new character is
+ * cancelled.
+ */
+public class SuggestionAdapter extends BaseAdapter implements Filterable {
+
+    // delay without typing before the completions are retrieved (in milliseconds)
+    private static final long DEBOUNCE_DELAY = 150L;
+
+    // maximum number of completions displayed
+    private static final int MAX_SUGGESTIONS = 8;
+
+    // listener notified when new completions are available
+    public interface OnSuggestionsListener {
+        void onSuggestionsAvailable(String prefix, List<String> suggestions);
+    }
+
+    // the application context
+    private final Context mContext;
+
+    // the current completions (never modified, only replaced)
+    private List<String> mSuggestions = new ArrayList<>();
+
+    // the retrieval which is pending or in progress
+    private final Handler mHandler = new Handler();
+    private String mPendingPrefix;
+    private SuggestionTask mTask;
+    private OnSuggestionsListener mListener;
+
+    // start the retrieval once the debounce delay has elapsed
+    private final Runnable mStartTask = new Runnable() {
+        @Override
+        public void run() {
+            mTask = new SuggestionTask(mPendingPrefix);
+            mTask.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
+        }
+    };
+
+    // constructor
+    public SuggestionAdapter(Context context) {
+        mContext = context.getApplicationContext();
+    }
+
+    public void setOnSuggestionsListener(OnSuggestionsListener listener) {
+        mListener = listener;
+    }
+
+    // ask for the completions of a new prefix
+    // (any previous request is superseded)
+    public void request(String prefix) {
+        cancel();
+        if (TextUtils.isEmpty(prefix)) {
+            setSuggestions(prefix, new ArrayList<String>());
+        } else {
+            mPendingPrefix = prefix;
+            mHandler.postDelayed(mStartTask, DEBOUNCE_DELAY);
+        }
+    }
+
+    // cancel the pending or running request, if any
+    public void cancel() {
+        mHandler.removeCallbacks(mStartTask);
+        if (mTask != null) {
+            mTask.abort();
+            mTask = null;
+        }
+    }
+
+    private void setSuggestions(String prefix, List<String> suggestions) {
+        mSuggestions = suggestions;
+        notifyDataSetChanged();
+        if (mListener != null) {
+            mListener.onSuggestionsAvailable(prefix, suggestions);
+        }
+    }
+
+    @Override
+    public int getCount() {
+        return mSuggestions.size();
+    }
+
+    @Override
+    public String getItem(int position) {
+        return mSuggestions.get(position);
+    }
+
+    @Override
+    public long getItemId(int position) {
+        return position;
+    }
+
+    @Override
+    public View getView(int position, View convertView, ViewGroup parent) {
+        View view = convertView;
+        if (view == null) {
+            view = LayoutInflater.from(parent.getContext())
+                    .inflate(android.R.layout.simple_dropdown_item_1line, parent, false);
+        }
+        ((TextView) view).setText(getItem(position));
+        return view;
+    }
+
+    // the completions are already filtered by the database: the filter
+    // used by the text box just publishes the current ones
+    @Override
+    public Filter getFilter() {
+        return mFilter;
+    }
+
+    private final Filter mFilter = new Filter() {
+        @Override
+        protected FilterResults performFiltering(CharSequence constraint) {
+            List<String> suggestions = mSuggestions;
+            FilterResults results = new FilterResults();
+            results.values = suggestions;
+            results.count = suggestions.size();
+            return results;
+        }
+
+        @Override
+        protected void publishResults(CharSequence constraint, FilterResults results) {
+            if (results.count > 0) {
+                notifyDataSetChanged();
+            } else {
+                notifyDataSetInvalidated();
+            }
+        }
+    };
+
+    // background retrieval of the completions of one prefix
+    private class SuggestionTask extends AsyncTask<Void, Void, List<String>> {
+
+        private final String mPrefix;
+        private final CancellationSignal mCancellationSignal = new CancellationSignal();
+
+        SuggestionTask(String prefix) {
+            mPrefix = prefix;
+        }
+
+        // stop the database query as soon as possible
+        void abort() {
+            mCancellationSignal.cancel();
+            cancel(false);
+        }
+
+        @Override
+        protected List<String> doInBackground(Void... params) {
+            try {
+                AcronymCacheMediator cache = new AcronymCacheMediator(mContext);
+                return cache.suggestNames(mPrefix, MAX_SUGGESTIONS, mCancellationSignal);
+            } catch (OperationCanceledException e) {
+                return null;
+            }
+        }
+
+        @Override
+        protected void onPostExecute(List<String> suggestions) {
+            if (suggestions != null && mTask == this) {
+                mTask = null;
+                setSuggestions(mPrefix, suggestions);
+            }
+        }
+    }
+}
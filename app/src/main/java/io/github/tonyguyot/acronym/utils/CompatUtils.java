@@ -35,4 +35,15 @@ public class CompatUtils {
         }
         return drawable;
     }
+
+    /** retrieve a color from a resource id */
+    public static int getColor(Context context, int resourceId) {
+        int color;
+        if (Versions.isMarshmallowOrHigher()) {
+            color = context.getColor(resourceId);
+        } else {
+            color = context.getResources().getColor(resourceId);
+        }
+        return color;
+    }
 }
@@ -23,6 +23,16 @@ import android.os.Build;
 @SuppressWarnings("unused")
 public class Versions {
 
+    // Android 6.0 (Marshmallow) - API 23
+
+    public static boolean isMarshmallow() {
+        return Build.VERSION.SDK_INT == Build.VERSION_CODES.M;
+    }
+
+    public static boolean isMarshmallowOrHigher() {
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.M;
+    }
+
     // Android 5.1 (Lollipop MR1) - API 22
 
     public static boolean isLollipopMr1() {
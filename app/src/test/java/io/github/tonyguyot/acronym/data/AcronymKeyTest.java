@@ -0,0 +1,70 @@
+/*
+ * Copyright (C) 2016 Tony Guyot
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.tonyguyot.acronym.data;
+
+import org.junit.Test;
+
+import java.util.Locale;
+
+import static org.junit.Assert.*;
+
+/**
+ * Canonical lookup key of the spellings of a name.
+ */
+public class AcronymKeyTest {
+
+    @Test
+    public void of_ignoresTheCaseAndThePunctuation() {
+        assertEquals("USA", AcronymKey.of("USA"));
+        assertEquals("USA", AcronymKey.of("usa"));
+        assertEquals("USA", AcronymKey.of("U.S.A."));
+        assertEquals("USA", AcronymKey.of(" u-s a "));
+    }
+
+    @Test
+    public void of_keepsTheLettersAndDigits() {
+        assertEquals("W3C", AcronymKey.of("w3c"));
+        assertEquals("B2B", AcronymKey.of("B-2-B"));
+        assertEquals("ÉTÉ", AcronymKey.of("é.t.é"));
+        assertEquals("123", AcronymKey.of("1/2/3"));
+    }
+
+    @Test
+    public void of_isEmptyWithoutLetterOrDigit() {
+        assertEquals("", AcronymKey.of(null));
+        assertEquals("", AcronymKey.of(""));
+        assertEquals("", AcronymKey.of(" .-&/ "));
+    }
+
+    @Test
+    public void of_doesNotDependOnTheDefaultLocale() {
+        Locale locale = Locale.getDefault();
+        try {
+            // the Turkish dotless i would change the key of "ibm"
+            Locale.setDefault(new Locale("tr", "TR"));
+            assertEquals("IBM", AcronymKey.of("ibm"));
+        } finally {
+            Locale.setDefault(locale);
+        }
+    }
+
+    @Test
+    public void of_isIdempotent() {
+        for (String name : new String[] { "U.S.A.", "w3c", "é.t.é", "" }) {
+            assertEquals(AcronymKey.of(name), AcronymKey.of(AcronymKey.of(name)));
+        }
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright (C) 2016 Tony Guyot
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.tonyguyot.acronym.database;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import static org.junit.Assert.*;
+
+/**
+ * Conversion of the words typed by the user into an FTS query, and ranking
+ * of the rows found.
+ */
+public class AcronymSearchTableTest {
+
+    @Test
+    public void makeMatchExpression_quotesEachWordAsAPrefix() {
+        assertEquals("\"network*\"", AcronymSearchTable.makeMatchExpression("network"));
+        assertEquals("\"local*\" \"area*\" \"network*\"",
+                AcronymSearchTable.makeMatchExpression("local area network"));
+    }
+
+    @Test
+    public void makeMatchExpression_keepsOnlyLettersAndDigits() {
+        // the FTS operators typed by the user are only words, and the
+        // punctuation only separates them
+        assertEquals("\"a*\" \"OR*\" \"b*\"", AcronymSearchTable.makeMatchExpression("a OR \"b\""));
+        assertEquals("\"NEAR*\" \"x*\"", AcronymSearchTable.makeMatchExpression("NEAR/x"));
+        assertEquals("\"ipv6*\" \"über*\"", AcronymSearchTable.makeMatchExpression("  ipv6 -über* "));
+    }
+
+    @Test
+    public void makeMatchExpression_returnsNullWithoutWords() {
+        assertNull(AcronymSearchTable.makeMatchExpression(null));
+        assertNull(AcronymSearchTable.makeMatchExpression(""));
+        assertNull(AcronymSearchTable.makeMatchExpression(" \"*-()\" "));
+    }
+
+    @Test
+    public void rank_prefersRareWordsAndHitsInTheDefinition() {
+        // one phrase, two columns (definition, comment)
+        double inDefinition = AcronymSearchTable.rank(matchInfo(1, 2, 1, 10, 5, 0, 0, 0));
+        double inComment = AcronymSearchTable.rank(matchInfo(1, 2, 0, 0, 0, 1, 10, 5));
+        double rareInDefinition = AcronymSearchTable.rank(matchInfo(1, 2, 1, 2, 1, 0, 0, 0));
+        assertEquals(0.1, inDefinition, 1e-9);
+        assertEquals(0.05, inComment, 1e-9);
+        assertTrue(rareInDefinition > inDefinition);
+    }
+
+    @Test
+    public void rank_isZeroWithoutHit() {
+        assertEquals(0.0, AcronymSearchTable.rank(matchInfo(1, 2, 0, 3, 2, 0, 1, 1)), 0.0);
+    }
+
+    // a matchinfo() blob of the "pcx" format, in the native byte order
+    private static byte[] matchInfo(int... values) {
+        ByteBuffer buffer = ByteBuffer.allocate(4 * values.length).order(ByteOrder.nativeOrder());
+        for (int value : values) {
+            buffer.putInt(value);
+        }
+        return buffer.array();
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright (C) 2016 Tony Guyot
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.tonyguyot.acronym.database;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Upper bound of the range scan of a prefix search.
+ */
+public class AcronymTableTest {
+
+    @Test
+    public void getPrefixUpperBound_incrementsTheLastChar() {
+        assertEquals("AB", AcronymTable.getPrefixUpperBound("AA"));
+        assertEquals("B", AcronymTable.getPrefixUpperBound("A"));
+        assertEquals("A:", AcronymTable.getPrefixUpperBound("A9"));
+    }
+
+    @Test
+    public void getPrefixUpperBound_boundsAllTheNamesOfThePrefix() {
+        String prefix = "NAS";
+        String bound = AcronymTable.getPrefixUpperBound(prefix);
+        for (String name : new String[] { "NAS", "NASA", "NAS￿", "NASZZZ" }) {
+            assertTrue(name, prefix.compareTo(name) <= 0 && name.compareTo(bound) < 0);
+        }
+        for (String name : new String[] { "NAR", "NAT", "NB" }) {
+            assertFalse(name, prefix.compareTo(name) <= 0 && name.compareTo(bound) < 0);
+        }
+    }
+
+    @Test
+    public void getPrefixUpperBound_appendsWhenTheLastCharCannotBeIncremented() {
+        assertEquals("A￿￿", AcronymTable.getPrefixUpperBound("A￿"));
+        // a surrogate pair is never split
+        String clef = "A𝄞";
+        assertEquals(clef + '￿', AcronymTable.getPrefixUpperBound(clef));
+        assertEquals("A\ud834￿", AcronymTable.getPrefixUpperBound("A\ud834"));
+    }
+}
@@ -0,0 +1,198 @@
+/*
+ * Copyright (C) 2016 Tony Guyot
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.tonyguyot.acronym.operations;
+
+import android.content.Context;
+import android.content.ContextWrapper;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Hashing of the keys, file format and resizing of the filter of the keys.
+ */
+public class AcronymBloomFilterTest {
+
+    @Rule
+    public TemporaryFolder mFolder = new TemporaryFolder();
+
+    @Test
+    public void secondHash_isAlwaysOdd() {
+        for (String key : keys("K", 1000)) {
+            assertEquals(key, 1, AcronymBloomFilter.secondHash(key) & 1);
+        }
+        assertEquals(1, AcronymBloomFilter.secondHash("") & 1);
+    }
+
+    @Test
+    public void mightContain_neverMissesAnAddedKey() {
+        AcronymBloomFilter filter = new AcronymBloomFilter();
+        List<String> keys = keys("K", 1000);
+        filter.build(keys);
+        for (String key : keys) {
+            assertTrue(key, filter.mightContain(null, key));
+        }
+    }
+
+    @Test
+    public void mightContain_rarelyReportsAnAbsentKey() {
+        AcronymBloomFilter filter = new AcronymBloomFilter();
+        filter.build(keys("K", 1000));
+        // sized for twice as many keys: well under the 1% of a full filter
+        int falsePositives = 0;
+        for (String key : keys("ABSENT", 10000)) {
+            if (filter.mightContain(null, key)) {
+                falsePositives++;
+            }
+        }
+        assertTrue(falsePositives + " false positives", falsePositives < 100);
+    }
+
+    @Test
+    public void add_makesTheNewKeysPresent() {
+        AcronymBloomFilter filter = new AcronymBloomFilter();
+        filter.build(Collections.<String>emptyList());
+        assertFalse(filter.mightContain(null, "NASA"));
+        filter.add(context(), Collections.singletonList("NASA"));
+        assertTrue(filter.mightContain(null, "NASA"));
+    }
+
+    @Test
+    public void add_isIgnoredUntilTheFilterIsLoaded() {
+        // the keys would be read from the cache or the file when loading
+        AcronymBloomFilter filter = new AcronymBloomFilter();
+        filter.add(context(), Collections.singletonList("NASA"));
+        assertFalse(filter.isLoaded());
+    }
+
+    @Test
+    public void readWrite_keepsTheKeysAndTheCapacity() throws IOException {
+        AcronymBloomFilter filter = new AcronymBloomFilter();
+        List<String> keys = keys("K", 1500);
+        filter.build(keys);
+        File file = mFolder.newFile();
+        filter.write(file);
+
+        AcronymBloomFilter copy = new AcronymBloomFilter();
+        copy.read(file);
+        assertEquals(filter.getCapacity(), copy.getCapacity());
+        for (String key : keys) {
+            assertTrue(key, copy.mightContain(null, key));
+        }
+        for (String key : keys("ABSENT", 1000)) {
+            assertEquals(key, filter.mightContain(null, key), copy.mightContain(null, key));
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void read_rejectsAnotherVersion() throws IOException {
+        File file = mFolder.newFile();
+        writeHeader(file, 2, 1024, 0);
+        new AcronymBloomFilter().read(file);
+    }
+
+    @Test(expected = IOException.class)
+    public void read_rejectsAnInvalidHeader() throws IOException {
+        File file = mFolder.newFile();
+        writeHeader(file, 1, 1024, 2048); // more keys than the capacity
+        new AcronymBloomFilter().read(file);
+    }
+
+    @Test(expected = IOException.class)
+    public void read_rejectsATruncatedFile() throws IOException {
+        File file = mFolder.newFile();
+        writeHeader(file, 1, 1024, 0); // no bits
+        new AcronymBloomFilter().read(file);
+    }
+
+    @Test
+    public void build_makesRoomForTwiceTheKeys() {
+        AcronymBloomFilter filter = new AcronymBloomFilter();
+        filter.build(Collections.<String>emptyList());
+        assertEquals(1024, filter.getCapacity()); // the minimum
+        filter.build(keys("K", 3000));
+        assertEquals(6000, filter.getCapacity());
+    }
+
+    @Test
+    public void add_beyondTheCapacityDropsTheFilterToRebuildIt() throws IOException {
+        Context context = context();
+        File file = new File(context.getFilesDir(), "acronym_keys.bloom");
+        AcronymBloomFilter filter = new AcronymBloomFilter();
+        filter.clear(context); // saved in the file
+        assertTrue(file.exists());
+
+        List<String> keys = keys("K", filter.getCapacity() + 100);
+        filter.add(context, keys);
+
+        // too full to be useful: rebuilt from the cache on next use, with
+        // room for the new keys
+        assertFalse(filter.isLoaded());
+        assertFalse(file.exists());
+        filter.build(keys);
+        assertTrue(filter.getCapacity() >= 2 * keys.size());
+        for (String key : keys) {
+            assertTrue(key, filter.mightContain(null, key));
+        }
+    }
+
+    // a context which only gives the private directory of the application
+    private Context context() {
+        final File directory;
+        try {
+            directory = mFolder.newFolder();
+        } catch (IOException e) {
+            throw new AssertionError(e);
+        }
+        return new ContextWrapper(null) {
+            @Override
+            public File getFilesDir() {
+                return directory;
+            }
+        };
+    }
+
+    private static List<String> keys(String prefix, int count) {
+        List<String> keys = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            keys.add(prefix + i);
+        }
+        return keys;
+    }
+
+    private static void writeHeader(File file, int version, int capacity, int count)
+            throws IOException {
+        DataOutputStream out = new DataOutputStream(new FileOutputStream(file));
+        try {
+            out.writeInt(version);
+            out.writeInt(capacity);
+            out.writeInt(count);
+        } finally {
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright (C) 2016 Tony Guyot
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.tonyguyot.acronym.operations;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Levenshtein distance, and search of the close names in the BK-tree.
+ */
+public class AcronymFuzzyIndexTest {
+
+    private AcronymFuzzyIndex mIndex;
+
+    @Before
+    public void setUp() {
+        // an empty index, as after a cache clear (nothing is read from the cache)
+        mIndex = new AcronymFuzzyIndex();
+        mIndex.clear();
+    }
+
+    @Test
+    public void distance_countsTheEdits() {
+        assertEquals(0, AcronymFuzzyIndex.distance("NASA", "NASA"));
+        assertEquals(1, AcronymFuzzyIndex.distance("NASA", "NSA"));      // deletion
+        assertEquals(1, AcronymFuzzyIndex.distance("NSA", "NASA"));      // insertion
+        assertEquals(1, AcronymFuzzyIndex.distance("NASA", "NASD"));     // substitution
+        assertEquals(2, AcronymFuzzyIndex.distance("NASA", "ANSA"));     // transposition
+        assertEquals(3, AcronymFuzzyIndex.distance("kitten", "sitting"));
+        assertEquals(4, AcronymFuzzyIndex.distance("", "ABCD"));
+        assertEquals(4, AcronymFuzzyIndex.distance("ABCD", ""));
+    }
+
+    @Test
+    public void distance_isSymmetric() {
+        String[] words = { "", "A", "FBI", "FIB", "CIA", "NATO", "OTAN", "UNESCO" };
+        for (String a : words) {
+            for (String b : words) {
+                assertEquals(a + "/" + b,
+                        AcronymFuzzyIndex.distance(a, b), AcronymFuzzyIndex.distance(b, a));
+            }
+        }
+    }
+
+    @Test
+    public void findClosest_toleratesOneTypoInShortNames() {
+        add("NASA", "NASD", "NSA", "NAS", "ASAP", "NATO");
+        assertEquals(Arrays.asList("NAS", "NASD", "NSA"), find("NASA", 10));
+        // two typos are too many for a name of 4 letters
+        assertEquals(Collections.<String>emptyList(), find("ANSD", 10));
+    }
+
+    @Test
+    public void findClosest_toleratesTwoTyposInLongerNames() {
+        add("UNESCO", "UNICEF", "UNESC", "UNSCO", "NESCO", "UNECSO", "ESCO");
+        // closest first, then in alphabetical order
+        assertEquals(Arrays.asList("NESCO", "UNESC", "UNSCO", "ESCO", "UNECSO"),
+                find("UNESCO", 10));
+    }
+
+    @Test
+    public void findClosest_neverReturnsTheNameItself() {
+        add("FBI", "FBO");
+        assertEquals(Collections.singletonList("FBO"), find("FBI", 10));
+    }
+
+    @Test
+    public void findClosest_ignoresTheTooShortNames() {
+        add("A", "B", "AB");
+        assertTrue(find("A", 10).isEmpty());
+        assertTrue(find(null, 10).isEmpty());
+    }
+
+    @Test
+    public void findClosest_limitsTheNumberOfResults() {
+        add("ABCDE", "ABCDF", "ABCDG", "ABCDH", "ABCDI");
+        assertEquals(Arrays.asList("ABCDF", "ABCDG"), find("ABCDE", 2));
+    }
+
+    @Test
+    public void findClosest_findsTheSameNamesAsAFullScan() {
+        // the triangle inequality only prunes branches without close names
+        List<String> names = new ArrayList<>();
+        for (char a = 'A'; a <= 'E'; a++) {
+            for (char b = 'A'; b <= 'E'; b++) {
+                names.add("" + a + b + "C");
+                names.add("X" + a + b + "YZ");
+            }
+        }
+        add(names.toArray(new String[names.size()]));
+        for (String name : new String[] { "ABC", "ABD", "XABYZ", "XBBY", "XEEYZZ" }) {
+            int max = name.length() <= 4 ? 1 : 2;
+            List<String> expected = new ArrayList<>();
+            for (int distance = 1; distance <= max; distance++) {
+                List<String> atDistance = new ArrayList<>();
+                for (String candidate : names) {
+                    if (AcronymFuzzyIndex.distance(name, candidate) == distance) {
+                        atDistance.add(candidate);
+                    }
+                }
+                Collections.sort(atDistance);
+                expected.addAll(atDistance);
+            }
+            assertEquals(name, expected, find(name, names.size()));
+        }
+    }
+
+    @Test
+    public void clear_forgetsAllTheNames() {
+        add("NASA", "NASD");
+        mIndex.clear();
+        assertTrue(find("NASA", 10).isEmpty());
+    }
+
+    private void add(String... names) {
+        for (String name : names) {
+            mIndex.add(name);
+        }
+    }
+
+    private List<String> find(String name, int maxResults) {
+        return mIndex.findClosest(null, name, maxResults);
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2016 Tony Guyot
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.tonyguyot.acronym.operations;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.github.tonyguyot.acronym.data.AcronymList;
+import io.github.tonyguyot.acronym.data.AcronymValidators;
+
+import static io.github.tonyguyot.acronym.data.AcronymList.Status.*;
+import static org.junit.Assert.*;
+
+/**
+ * Backup requests, and health tracking of the sources.
+ */
+public class AcronymHedgedSourceTest {
+
+    private static final long DEADLINE = 5000L;
+
+    @Test
+    public void retrieve_asksTheBackupWhenTheFirstSourceFails() {
+        AtomicInteger backupCalls = new AtomicInteger();
+        AcronymHedgedSource source = new AcronymHedgedSource(DEADLINE, false,
+                source(STATUS_ERROR_NETWORK, 0L, null),
+                source(STATUS_STALE, 0L, backupCalls));
+        assertEquals(STATUS_STALE, source.retrieve("NASA", null, null).getStatus());
+        assertEquals(1, backupCalls.get());
+    }
+
+    @Test
+    public void retrieve_asksTheBackupWhenTheFirstSourceIsSlow() {
+        // (without response times, the backup is sent after one second)
+        AcronymHedgedSource source = new AcronymHedgedSource(DEADLINE, false,
+                source(STATUS_OK, 3000L, null),
+                source(STATUS_STALE, 0L, null));
+        long start = System.currentTimeMillis();
+        assertEquals(STATUS_STALE, source.retrieve("NASA", null, null).getStatus());
+        assertTrue(System.currentTimeMillis() - start < 3000L);
+    }
+
+    @Test
+    public void retrieve_neverAsksTheBackupOfAQuickAnswer() {
+        AtomicInteger backupCalls = new AtomicInteger();
+        AcronymHedgedSource source = new AcronymHedgedSource(DEADLINE, false,
+                source(STATUS_OK, 0L, null),
+                source(STATUS_STALE, 0L, backupCalls));
+        assertEquals(STATUS_OK, source.retrieve("NASA", null, null).getStatus());
+        assertEquals(0, backupCalls.get());
+    }
+
+    @Test
+    public void retrieve_skipsASourceWhichKeepsFailing() {
+        AtomicInteger calls = new AtomicInteger();
+        AcronymHedgedSource source = new AcronymHedgedSource(DEADLINE, false,
+                source(STATUS_ERROR_NETWORK, 0L, calls),
+                source(STATUS_OK, 0L, null));
+        for (int i = 0; i < 5; i++) {
+            assertEquals(STATUS_OK, source.retrieve("NASA", null, null).getStatus());
+        }
+        assertEquals(3, calls.get()); // then skipped for a while
+    }
+
+    @Test
+    public void retrieve_neverSkipsASourceWhichOnlyHasNoAnswer() {
+        // as the stale cache, for the acronyms which are not in the cache
+        AtomicInteger calls = new AtomicInteger();
+        AcronymHedgedSource source = new AcronymHedgedSource(DEADLINE, false,
+                source(STATUS_ERROR_OTHER, 0L, calls),
+                source(STATUS_OK, 0L, null));
+        for (int i = 0; i < 5; i++) {
+            assertEquals(STATUS_OK, source.retrieve("NASA", null, null).getStatus());
+        }
+        assertEquals(5, calls.get());
+    }
+
+    // a source which always answers with the given status after the given
+    // delay (in milliseconds), and counts the calls (if calls is not null)
+    private static AcronymSource source(final int status, final long delay,
+                                        final AtomicInteger calls) {
+        return new AcronymSource() {
+            @Override
+            public AcronymList retrieve(String acronymName, AcronymValidators conditional,
+                                        AcronymListener listener) {
+                if (calls != null) {
+                    calls.incrementAndGet();
+                }
+                if (delay > 0) {
+                    try {
+                        Thread.sleep(delay);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                AcronymList response = new AcronymList();
+                response.setStatus(status);
+                return response;
+            }
+        };
+    }
+}
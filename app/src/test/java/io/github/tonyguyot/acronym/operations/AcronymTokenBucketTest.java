@@ -0,0 +1,91 @@
+/*
+ * Copyright (C) 2016 Tony Guyot
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.tonyguyot.acronym.operations;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+/**
+ * Rate limiting of the requests to the server.
+ */
+public class AcronymTokenBucketTest {
+
+    // so slow that the bucket is never refilled during a test
+    private static final double NO_REFILL = 1e-6;
+
+    @Test
+    public void tryAcquire_allowsABurstUpToTheCapacity() {
+        AcronymTokenBucket bucket = new AcronymTokenBucket(NO_REFILL, 3);
+        assertTrue(bucket.tryAcquire(0));
+        assertTrue(bucket.tryAcquire(0));
+        assertTrue(bucket.tryAcquire(0));
+        assertFalse(bucket.tryAcquire(0));
+    }
+
+    @Test
+    public void tryAcquire_leavesTheReserve() {
+        AcronymTokenBucket bucket = new AcronymTokenBucket(NO_REFILL, 3);
+        assertTrue(bucket.tryAcquire(2));
+        assertFalse(bucket.tryAcquire(2)); // 2 tokens left: the reserve
+        assertTrue(bucket.tryAcquire(1));
+        assertFalse(bucket.tryAcquire(1));
+        assertTrue(bucket.tryAcquire(0)); // the user may take the last one
+    }
+
+    @Test
+    public void acquire_givesUpAfterTheMaximumWait() {
+        AcronymTokenBucket bucket = new AcronymTokenBucket(NO_REFILL, 1);
+        assertTrue(bucket.acquire(0));
+        long start = System.nanoTime();
+        assertFalse(bucket.acquire(50));
+        long waited = (System.nanoTime() - start) / 1000000L;
+        assertTrue(waited + " ms", waited >= 40);
+    }
+
+    @Test
+    public void acquire_waitsForTheRefill() {
+        AcronymTokenBucket bucket = new AcronymTokenBucket(100.0, 1); // 1 token every 10 ms
+        assertTrue(bucket.acquire(0));
+        assertFalse(bucket.tryAcquire(0));
+        assertTrue(bucket.acquire(5000));
+    }
+
+    @Test
+    public void refill_neverExceedsTheCapacity() throws InterruptedException {
+        AcronymTokenBucket bucket = new AcronymTokenBucket(1000.0, 2);
+        Thread.sleep(20); // would be 20 more tokens without the capacity
+        int taken = 0;
+        while (bucket.tryAcquire(0) && taken < 100) {
+            taken++;
+        }
+        // (a token may have been refilled while taking them)
+        assertTrue(taken + " tokens", taken >= 2 && taken <= 3);
+    }
+
+    @Test
+    public void acquire_returnsFalseWhenInterrupted() {
+        AcronymTokenBucket bucket = new AcronymTokenBucket(NO_REFILL, 1);
+        assertTrue(bucket.tryAcquire(0));
+        Thread.currentThread().interrupt();
+        try {
+            assertFalse(bucket.acquire(5000));
+            assertTrue(Thread.currentThread().isInterrupted());
+        } finally {
+            Thread.interrupted(); // clear the flag for the next tests
+        }
+    }
+}
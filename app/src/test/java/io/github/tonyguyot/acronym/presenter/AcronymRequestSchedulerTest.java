@@ -0,0 +1,211 @@
+/*
+ * Copyright (C) 2016 Tony Guyot
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.github.tonyguyot.acronym.presenter;
+
+import android.content.Intent;
+
+import org.junit.Test;
+
+import static io.github.tonyguyot.acronym.presenter.AcronymRequestScheduler.PRIORITY_INTERACTIVE;
+import static io.github.tonyguyot.acronym.presenter.AcronymRequestScheduler.PRIORITY_MAINTENANCE;
+import static io.github.tonyguyot.acronym.presenter.AcronymRequestScheduler.PRIORITY_PREFETCH;
+import static org.junit.Assert.*;
+
+/**
+ * Order, merge and shed rules of the queue of the service.
+ * (the intents are only compared by identity)
+ */
+public class AcronymRequestSchedulerTest {
+
+    @Test
+    public void poll_byPriorityThenInOrderOfArrival() {
+        AcronymRequestScheduler scheduler = new AcronymRequestScheduler(10);
+        assertTrue(scheduler.isEmpty());
+        Intent maintenance = new Intent();
+        Intent prefetch1 = new Intent();
+        Intent interactive1 = new Intent();
+        Intent prefetch2 = new Intent();
+        Intent interactive2 = new Intent();
+        assertNull(scheduler.offer(maintenance, PRIORITY_MAINTENANCE, "m"));
+        assertNull(scheduler.offer(prefetch1, PRIORITY_PREFETCH, "p1"));
+        assertNull(scheduler.offer(interactive1, PRIORITY_INTERACTIVE, "i1"));
+        assertNull(scheduler.offer(prefetch2, PRIORITY_PREFETCH, "p2"));
+        assertNull(scheduler.offer(interactive2, PRIORITY_INTERACTIVE, "i2"));
+
+        assertSame(interactive1, scheduler.poll());
+        assertSame(interactive2, scheduler.poll());
+        assertSame(prefetch1, scheduler.poll());
+        assertSame(prefetch2, scheduler.poll());
+        assertFalse(scheduler.isEmpty());
+        assertSame(maintenance, scheduler.poll());
+        assertTrue(scheduler.isEmpty());
+        assertNull(scheduler.poll());
+    }
+
+    @Test
+    public void offer_mergesTheSameRequest() {
+        AcronymRequestScheduler scheduler = new AcronymRequestScheduler(10);
+        Intent first = new Intent();
+        assertNull(scheduler.offer(first, PRIORITY_INTERACTIVE, "NASA"));
+        assertNull(scheduler.offer(new Intent(), PRIORITY_INTERACTIVE, "NASA"));
+        assertSame(first, scheduler.poll());
+        assertNull(scheduler.poll());
+    }
+
+    @Test
+    public void offer_promotesAMergedRequest() {
+        AcronymRequestScheduler scheduler = new AcronymRequestScheduler(10);
+        Intent other = new Intent();
+        Intent urgent = new Intent();
+        scheduler.offer(other, PRIORITY_PREFETCH, "FBI");
+        scheduler.offer(new Intent(), PRIORITY_PREFETCH, "NASA");
+        scheduler.offer(urgent, PRIORITY_INTERACTIVE, "NASA");
+        // the user request replaces the prefetch, and goes first
+        assertSame(urgent, scheduler.poll());
+        assertSame(other, scheduler.poll());
+        assertNull(scheduler.poll());
+    }
+
+    @Test
+    public void offer_neverDemotesAMergedRequest() {
+        AcronymRequestScheduler scheduler = new AcronymRequestScheduler(10);
+        Intent urgent = new Intent();
+        Intent other = new Intent();
+        scheduler.offer(urgent, PRIORITY_INTERACTIVE, "NASA");
+        scheduler.offer(other, PRIORITY_PREFETCH, "FBI");
+        scheduler.offer(new Intent(), PRIORITY_MAINTENANCE, "NASA");
+        assertSame(urgent, scheduler.poll());
+        assertSame(other, scheduler.poll());
+        assertNull(scheduler.poll());
+    }
+
+    @Test
+    public void offer_mergesAgainOnceThePreviousOneIsPolled() {
+        AcronymRequestScheduler scheduler = new AcronymRequestScheduler(10);
+        Intent first = new Intent();
+        Intent second = new Intent();
+        scheduler.offer(first, PRIORITY_INTERACTIVE, "NASA");
+        assertSame(first, scheduler.poll());
+        // the previous one is being handled: this one is queued
+        scheduler.offer(second, PRIORITY_INTERACTIVE, "NASA");
+        assertSame(second, scheduler.poll());
+    }
+
+    @Test
+    public void offer_neverMergesAcrossABarrier() {
+        AcronymRequestScheduler scheduler = new AcronymRequestScheduler(10);
+        Intent before = new Intent();
+        Intent clear1 = new Intent();
+        Intent clear2 = new Intent();
+        Intent after = new Intent();
+        scheduler.offer(before, PRIORITY_INTERACTIVE, "NASA");
+        scheduler.offer(clear1, PRIORITY_INTERACTIVE, null);
+        scheduler.offer(clear2, PRIORITY_INTERACTIVE, null); // never merged either
+        scheduler.offer(after, PRIORITY_INTERACTIVE, "NASA");
+        assertSame(before, scheduler.poll());
+        assertSame(clear1, scheduler.poll());
+        assertSame(clear2, scheduler.poll());
+        assertSame(after, scheduler.poll());
+        assertNull(scheduler.poll());
+    }
+
+    @Test
+    public void offer_whenFullShedsTheLeastUrgentRequest() {
+        AcronymRequestScheduler scheduler = new AcronymRequestScheduler(3);
+        Intent prefetch = new Intent();
+        Intent maintenance1 = new Intent();
+        Intent maintenance2 = new Intent();
+        scheduler.offer(prefetch, PRIORITY_PREFETCH, "p");
+        scheduler.offer(maintenance1, PRIORITY_MAINTENANCE, "m1");
+        scheduler.offer(maintenance2, PRIORITY_MAINTENANCE, "m2");
+
+        // the newest of the least urgent class
+        Intent interactive = new Intent();
+        assertSame(maintenance2, scheduler.offer(interactive, PRIORITY_INTERACTIVE, "i"));
+        assertSame(interactive, scheduler.poll());
+        assertSame(prefetch, scheduler.poll());
+        assertSame(maintenance1, scheduler.poll());
+        assertNull(scheduler.poll());
+    }
+
+    @Test
+    public void offer_whenFullShedsTheNewRequestIfTheOthersAreMoreUrgent() {
+        AcronymRequestScheduler scheduler = new AcronymRequestScheduler(2);
+        scheduler.offer(new Intent(), PRIORITY_INTERACTIVE, "i");
+        scheduler.offer(new Intent(), PRIORITY_PREFETCH, "p1");
+        Intent prefetch = new Intent();
+        assertSame(prefetch, scheduler.offer(prefetch, PRIORITY_PREFETCH, "p2"));
+        Intent maintenance = new Intent();
+        assertSame(maintenance, scheduler.offer(maintenance, PRIORITY_MAINTENANCE, "m"));
+    }
+
+    @Test
+    public void offer_whenFullOfUserRequestsShedsTheOldestOne() {
+        AcronymRequestScheduler scheduler = new AcronymRequestScheduler(2);
+        Intent oldest = new Intent();
+        Intent newer = new Intent();
+        Intent newest = new Intent();
+        scheduler.offer(oldest, PRIORITY_INTERACTIVE, "A");
+        scheduler.offer(newer, PRIORITY_INTERACTIVE, "B");
+        // superseded by the next ones
+        assertSame(oldest, scheduler.offer(newest, PRIORITY_INTERACTIVE, "C"));
+        assertSame(newer, scheduler.poll());
+        assertSame(newest, scheduler.poll());
+        assertNull(scheduler.poll());
+    }
+
+    @Test
+    public void offer_whenFullNeverShedsABarrier() {
+        AcronymRequestScheduler scheduler = new AcronymRequestScheduler(2);
+        Intent clear = new Intent();
+        Intent request = new Intent();
+        scheduler.offer(clear, PRIORITY_INTERACTIVE, null);
+        scheduler.offer(request, PRIORITY_INTERACTIVE, "A");
+        Intent next = new Intent();
+        assertSame(request, scheduler.offer(next, PRIORITY_INTERACTIVE, "B"));
+
+        Intent last = new Intent();
+        assertSame(next, scheduler.offer(last, PRIORITY_INTERACTIVE, null));
+        // only barriers left: the new request is shed
+        Intent shed = new Intent();
+        assertSame(shed, scheduler.offer(shed, PRIORITY_INTERACTIVE, "C"));
+        assertSame(clear, scheduler.poll());
+        assertSame(last, scheduler.poll());
+    }
+
+    @Test
+    public void offer_aMergedRequestIsNeverShed() {
+        AcronymRequestScheduler scheduler = new AcronymRequestScheduler(1);
+        Intent first = new Intent();
+        scheduler.offer(first, PRIORITY_INTERACTIVE, "NASA");
+        // the queue is full, but the request is answered by the queued one
+        assertNull(scheduler.offer(new Intent(), PRIORITY_INTERACTIVE, "NASA"));
+        assertSame(first, scheduler.poll());
+    }
+
+    @Test
+    public void hasQueuedAbove_looksAtTheMostUrgentRequest() {
+        AcronymRequestScheduler scheduler = new AcronymRequestScheduler(10);
+        assertFalse(scheduler.hasQueuedAbove(PRIORITY_MAINTENANCE));
+        scheduler.offer(new Intent(), PRIORITY_MAINTENANCE, "m");
+        assertFalse(scheduler.hasQueuedAbove(PRIORITY_MAINTENANCE));
+        scheduler.offer(new Intent(), PRIORITY_PREFETCH, "p");
+        assertTrue(scheduler.hasQueuedAbove(PRIORITY_MAINTENANCE));
+        assertFalse(scheduler.hasQueuedAbove(PRIORITY_PREFETCH));
+        scheduler.poll();
+        assertFalse(scheduler.hasQueuedAbove(PRIORITY_MAINTENANCE));
+    }
+}